@@ -0,0 +1,115 @@
+package org.webbee.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webbee.model.Transaction;
+import org.webbee.model.User;
+import org.webbee.services.DirectoryReader;
+import org.webbee.services.LineParser;
+import org.webbee.services.UserLogsAggregator;
+
+/**
+ * Бенчмарк агрегации транзакций по пользователям.
+ *
+ * <p>Одна операция - обработка {@code files * linesPerFile} строк.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregateBenchmark {
+  @Param("1000")
+  public int users;
+
+  @Param("16")
+  public int files;
+
+  @Param("10000")
+  public int linesPerFile;
+
+  @Param("70:20:10")
+  public String mix;
+
+  @Param("1")
+  public int workers;
+
+  private Path root;
+  private List<Transaction> transactions;
+
+  /**
+   * Генерирует логи на диске и заранее разобранные транзакции.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    root = BenchmarkData.generateTree(users, mix, files, linesPerFile);
+    LogGenerator generator = new LogGenerator(users, mix, 1);
+    transactions = new ArrayList<>(files * linesPerFile);
+    for (int i = 0; i < files; i++) {
+      for (String line : generator.lines(i, linesPerFile)) {
+        transactions.add(LineParser.parseLine(line));
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    BenchmarkData.delete(root);
+  }
+
+  /**
+   * Применение заранее разобранных транзакций к пользователям
+   * через {@link User#transfer}, {@link User#withdraw} и {@link User#balanceInquiry}.
+   */
+  @Benchmark
+  public Map<String, User> applyParsed() {
+    Map<String, User> result = new HashMap<>();
+    for (Transaction transaction : transactions) {
+      User sender = result.computeIfAbsent(transaction.getSender(), User::new);
+      switch (transaction.getOperationType()) {
+        case WITHDREW:
+          sender.withdraw(transaction.getAmount());
+          break;
+        case BALANCE_INQUIRY:
+          sender.balanceInquiry(transaction.getAmount());
+          break;
+        case TRANSFERRED:
+          sender.transfer(transaction.getAmount(),
+              result.computeIfAbsent(transaction.getRecipient(), User::new));
+          break;
+        default:
+          throw new IllegalStateException("Unknown operation type");
+      }
+      sender.addTransaction(transaction);
+    }
+    return result;
+  }
+
+  /**
+   * Чтение, разбор и агрегация файлов через {@link UserLogsAggregator}.
+   */
+  @Benchmark
+  public Map<String, User> aggregateFiles() throws Exception {
+    try (DirectoryReader reader = new DirectoryReader(root.resolve("input").toString())) {
+      return new UserLogsAggregator(reader.getFileStream(), workers).getUsers();
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package org.webbee.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Вспомогательные методы для подготовки данных бенчмарков на диске.
+ */
+final class BenchmarkData {
+  private BenchmarkData() {
+  }
+
+  /**
+   * Создает временную директорию с деревом синтетических логов.
+   */
+  static Path generateTree(int users, String mix, int files, int linesPerFile)
+      throws IOException {
+    Path root = Files.createTempDirectory("logs_analyzer_bench");
+    new LogGenerator(users, mix, 1).writeTree(root.resolve("input"), files, linesPerFile);
+    return root;
+  }
+
+  /**
+   * Рекурсивно удаляет директорию.
+   */
+  static void delete(Path root) throws IOException {
+    if (root == null || Files.notExists(root)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package org.webbee.benchmarks;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запуск бенчмарков с профилировщиком GC и сводкой по строкам логов.
+ *
+ * <p>Принимает стандартные аргументы JMH, например
+ * {@code java -jar benchmarks.jar Parse -p lines=1000000}. После прогона печатает
+ * для каждого бенчмарка пропускную способность в строках в секунду и объем
+ * выделенной памяти в байтах на строку.
+ */
+public final class BenchmarkMain {
+  private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+  private BenchmarkMain() {
+  }
+
+  /**
+   * Точка входа.
+   *
+   * @param args аргументы командной строки JMH
+   * @throws Exception если запуск бенчмарков завершился ошибкой
+   */
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build();
+    Collection<RunResult> results = new Runner(options).run();
+
+    System.out.println();
+    System.out.printf("%-45s %15s %15s%n", "Benchmark", "lines/sec", "bytes/line");
+    for (RunResult result : results) {
+      BenchmarkParams params = result.getParams();
+      long lines = linesPerOperation(params);
+      System.out.printf("%-45s %15.0f %15.1f%n",
+          shortName(params.getBenchmark()),
+          operationsPerSecond(result.getPrimaryResult().getScore(), params) * lines,
+          allocatedBytes(result.getSecondaryResults()) / lines);
+    }
+  }
+
+  /**
+   * Определяет количество строк логов, обрабатываемых за одну операцию.
+   */
+  private static long linesPerOperation(BenchmarkParams params) {
+    String lines = params.getParam("lines");
+    if (lines != null) {
+      return Long.parseLong(lines);
+    }
+    return Long.parseLong(params.getParam("files"))
+        * Long.parseLong(params.getParam("linesPerFile"));
+  }
+
+  /**
+   * Переводит основной результат бенчмарка в операции в секунду.
+   */
+  private static double operationsPerSecond(double score, BenchmarkParams params) {
+    double unitSeconds = (double) params.getTimeUnit().toNanos(1) / TimeUnit.SECONDS.toNanos(1);
+    if (params.getMode() == Mode.Throughput) {
+      return score / unitSeconds;
+    }
+    return 1 / (score * unitSeconds);
+  }
+
+  private static double allocatedBytes(Map<String, Result> secondary) {
+    for (Map.Entry<String, Result> entry : secondary.entrySet()) {
+      if (entry.getKey().endsWith(ALLOCATION_METRIC)) {
+        return entry.getValue().getScore();
+      }
+    }
+    return Double.NaN;
+  }
+
+  private static String shortName(String benchmark) {
+    return benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+  }
+}
@@ -0,0 +1,122 @@
+package org.webbee.benchmarks;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webbee.model.Transaction;
+import org.webbee.model.User;
+import org.webbee.services.ConcurrentLedger;
+import org.webbee.services.DirectoryReader;
+import org.webbee.services.LineParser;
+import org.webbee.services.UserLogsAggregator;
+
+/**
+ * Нагрузочный бенчмарк {@link ConcurrentLedger}.
+ *
+ * <p>Одна операция - применение {@code lines} транзакций потоками {@code threads},
+ * каждый поток применяет свою часть транзакций. По умолчанию используются только
+ * переводы и списания, которые коммутативны, поэтому после каждой операции
+ * балансы сверяются с последовательной обработкой через {@link UserLogsAggregator};
+ * при расхождении бенчмарк завершается ошибкой.
+ *
+ * <p>Малое количество пользователей усиливает конкуренцию за одни и те же полосы блокировок.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LedgerBenchmark {
+  @Param("100")
+  public int users;
+
+  @Param("1000000")
+  public int lines;
+
+  @Param("80:20:0")
+  public String mix;
+
+  @Param("8")
+  public int threads;
+
+  private List<Transaction> transactions;
+  private Map<String, User> expected;
+  private ExecutorService executor;
+
+  /**
+   * Генерирует транзакции и вычисляет ожидаемые балансы последовательной обработкой.
+   */
+  @Setup
+  public void setUp() throws Exception {
+    Path root = BenchmarkData.generateTree(users, mix, 1, lines);
+    try (DirectoryReader reader = new DirectoryReader(root.resolve("input").toString())) {
+      expected = new UserLogsAggregator(reader.getFileStream()).getUsers();
+    } finally {
+      BenchmarkData.delete(root);
+    }
+    transactions = new ArrayList<>(lines);
+    for (String line : new LogGenerator(users, mix, 1).lines(0, lines)) {
+      transactions.add(LineParser.parseLine(line));
+    }
+    executor = Executors.newFixedThreadPool(threads);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Параллельное применение транзакций со сверкой балансов.
+   */
+  @Benchmark
+  public ConcurrentLedger applyConcurrently() throws Exception {
+    ConcurrentLedger ledger = new ConcurrentLedger();
+    List<Future<?>> futures = new ArrayList<>(threads);
+    for (int i = 0; i < threads; i++) {
+      List<Transaction> part = transactions.subList(i * transactions.size() / threads,
+          (i + 1) * transactions.size() / threads);
+      futures.add(executor.submit(() -> part.forEach(ledger::apply)));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    verify(ledger);
+    return ledger;
+  }
+
+  private void verify(ConcurrentLedger ledger) {
+    Map<String, BigDecimal> actual = ledger.snapshot();
+    if (actual.size() != expected.size()) {
+      throw new IllegalStateException("Expected " + expected.size() + " users, got "
+          + actual.size());
+    }
+    for (User user : expected.values()) {
+      BigDecimal balance = actual.get(user.getName());
+      if (balance == null || balance.compareTo(user.getBalance()) != 0) {
+        throw new IllegalStateException("Balance mismatch for " + user.getName()
+            + ": expected " + user.getBalance() + ", got " + balance);
+      }
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package org.webbee.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Генератор синтетических логов транзакций для бенчмарков.
+ *
+ * <p>Управляет количеством пользователей, файлов, строк в файле и долями
+ * операций. Время в каждом файле монотонно возрастает, как в реальных логах.
+ * При одинаковом seed генерируются одинаковые данные.
+ */
+public final class LogGenerator {
+  private static final DateTimeFormatter FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  private static final LocalDateTime START = LocalDateTime.of(2025, 5, 10, 0, 0, 0);
+
+  private final int users;
+  private final int transferPercent;
+  private final int withdrawPercent;
+  private final long seed;
+
+  /**
+   * Создает генератор.
+   *
+   * @param users количество пользователей
+   * @param mix   доли операций в процентах в формате
+   *              {@code transferred:withdrew:balance inquiry}, например {@code 70:20:10}
+   * @param seed  начальное значение генератора случайных чисел
+   * @throws IllegalArgumentException если параметры некорректны
+   */
+  public LogGenerator(int users, String mix, long seed) {
+    if (users < 1) {
+      throw new IllegalArgumentException("Users count must be positive");
+    }
+    String[] parts = mix.split(":");
+    if (parts.length != 3) {
+      throw new IllegalArgumentException("Mix must have format transfer:withdraw:inquiry");
+    }
+    int transfer = Integer.parseInt(parts[0]);
+    int withdraw = Integer.parseInt(parts[1]);
+    int inquiry = Integer.parseInt(parts[2]);
+    if (transfer < 0 || withdraw < 0 || inquiry < 0 || transfer + withdraw + inquiry != 100) {
+      throw new IllegalArgumentException("Mix percentages must be non-negative and sum to 100");
+    }
+    this.users = users;
+    this.transferPercent = transfer;
+    this.withdrawPercent = withdraw;
+    this.seed = seed;
+  }
+
+  /**
+   * Генерирует строки одного файла логов.
+   *
+   * @param fileIndex номер файла (влияет на случайную последовательность)
+   * @param count     количество строк
+   * @return строки лога в порядке возрастания времени
+   */
+  public List<String> lines(int fileIndex, int count) {
+    Random random = new Random(seed * 31 + fileIndex);
+    List<String> lines = new ArrayList<>(count);
+    LocalDateTime time = START.plusSeconds(random.nextInt(3600));
+    StringBuilder line = new StringBuilder(64);
+    for (int i = 0; i < count; i++) {
+      time = time.plusSeconds(random.nextInt(5));
+      line.setLength(0);
+      line.append('[').append(FORMATTER.format(time)).append("] ")
+          .append(userName(random.nextInt(users))).append(' ');
+      String amount = (1 + random.nextInt(5000)) + "." + (10 + random.nextInt(90));
+      int operation = random.nextInt(100);
+      if (operation < transferPercent) {
+        line.append("transferred ").append(amount)
+            .append(" to ").append(userName(random.nextInt(users)));
+      } else if (operation < transferPercent + withdrawPercent) {
+        line.append("withdrew ").append(amount);
+      } else {
+        line.append("balance inquiry ").append(amount);
+      }
+      lines.add(line.toString());
+    }
+    return lines;
+  }
+
+  /**
+   * Записывает дерево файлов логов.
+   *
+   * <p>Файлы распределяются по нескольким поддиректориям, чтобы обход был рекурсивным.
+   *
+   * @param root         корневая директория
+   * @param files        количество файлов
+   * @param linesPerFile количество строк в файле
+   * @return общий размер записанных файлов в байтах
+   * @throws IOException если не удалось записать файлы
+   */
+  public long writeTree(Path root, int files, int linesPerFile) throws IOException {
+    long bytes = 0;
+    for (int i = 0; i < files; i++) {
+      Path directory = root.resolve("part" + (i % 4));
+      Files.createDirectories(directory);
+      Path file = directory.resolve("log" + i + ".log");
+      try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+        for (String line : lines(i, linesPerFile)) {
+          writer.write(line);
+          writer.newLine();
+        }
+      }
+      bytes += Files.size(file);
+    }
+    return bytes;
+  }
+
+  private static String userName(int index) {
+    return String.format("user%06d", index);
+  }
+}
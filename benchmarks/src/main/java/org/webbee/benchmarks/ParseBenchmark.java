@@ -0,0 +1,86 @@
+package org.webbee.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.webbee.services.LineParser;
+
+/**
+ * Бенчмарк разбора строк логов {@link LineParser}.
+ *
+ * <p>Одна операция - разбор {@code lines} строк.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+  @Param("1000")
+  public int users;
+
+  @Param("100000")
+  public int lines;
+
+  @Param("70:20:10")
+  public String mix;
+
+  private List<String> textLines;
+  private ByteBuffer bytes;
+  private int[] lineStarts;
+
+  /**
+   * Генерирует строки и их представление в байтах.
+   */
+  @Setup
+  public void setUp() {
+    textLines = new LogGenerator(users, mix, 1).lines(0, lines);
+    byte[][] encoded = new byte[lines][];
+    int total = 0;
+    for (int i = 0; i < lines; i++) {
+      encoded[i] = textLines.get(i).getBytes(StandardCharsets.UTF_8);
+      total += encoded[i].length;
+    }
+    bytes = ByteBuffer.allocateDirect(total);
+    lineStarts = new int[lines + 1];
+    for (int i = 0; i < lines; i++) {
+      lineStarts[i] = bytes.position();
+      bytes.put(encoded[i]);
+    }
+    lineStarts[lines] = bytes.position();
+  }
+
+  /**
+   * Разбор строк, заданных объектами String.
+   */
+  @Benchmark
+  public void parseStrings(Blackhole blackhole) {
+    for (String line : textLines) {
+      blackhole.consume(LineParser.parseLine(line));
+    }
+  }
+
+  /**
+   * Разбор строк, заданных диапазонами байтов.
+   */
+  @Benchmark
+  public void parseBytes(Blackhole blackhole) {
+    for (int i = 0; i < lines; i++) {
+      blackhole.consume(LineParser.parseLine(bytes, lineStarts[i], lineStarts[i + 1]));
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package org.webbee.benchmarks;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webbee.services.DirectoryReader;
+import org.webbee.services.LogWriter;
+import org.webbee.services.UserLogsAggregator;
+
+/**
+ * Сквозной бенчмарк конвейера {@link org.webbee.Main}: обход директории,
+ * чтение, разбор, агрегация и запись логов пользователей.
+ *
+ * <p>Директория вывода находится вне дерева входных логов, чтобы повторные
+ * вызовы не обрабатывали результаты предыдущих.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PipelineBenchmark {
+  @Param("1000")
+  public int users;
+
+  @Param("16")
+  public int files;
+
+  @Param("10000")
+  public int linesPerFile;
+
+  @Param("70:20:10")
+  public String mix;
+
+  @Param("1")
+  public int workers;
+
+  private Path root;
+
+  @Setup
+  public void setUp() throws Exception {
+    root = BenchmarkData.generateTree(users, mix, files, linesPerFile);
+    LogWriter.initialize("transactions_by_users", root.toString());
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    BenchmarkData.delete(root);
+  }
+
+  @Benchmark
+  public void run() throws Exception {
+    try (DirectoryReader reader = new DirectoryReader(root.resolve("input").toString())) {
+      UserLogsAggregator aggregator = new UserLogsAggregator(reader.getFileStream(), workers);
+      LogWriter.writeUsers(aggregator.getUsers());
+    }
+  }
+}
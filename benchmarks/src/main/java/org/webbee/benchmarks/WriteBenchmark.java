@@ -0,0 +1,72 @@
+package org.webbee.benchmarks;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webbee.model.User;
+import org.webbee.services.DirectoryReader;
+import org.webbee.services.LogWriter;
+import org.webbee.services.UserLogsAggregator;
+
+/**
+ * Бенчмарк записи логов пользователей {@link LogWriter#writeUsers}.
+ *
+ * <p>Одна операция - запись логов всех пользователей, полученных из
+ * {@code files * linesPerFile} строк.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+  @Param("1000")
+  public int users;
+
+  @Param("16")
+  public int files;
+
+  @Param("10000")
+  public int linesPerFile;
+
+  @Param("70:20:10")
+  public String mix;
+
+  private Path root;
+  private Map<String, User> aggregated;
+
+  /**
+   * Генерирует и агрегирует логи, подготавливает директорию вывода.
+   */
+  @Setup
+  public void setUp() throws Exception {
+    root = BenchmarkData.generateTree(users, mix, files, linesPerFile);
+    try (DirectoryReader reader = new DirectoryReader(root.resolve("input").toString())) {
+      aggregated = new UserLogsAggregator(reader.getFileStream()).getUsers();
+    }
+    LogWriter.initialize("output", root.toString());
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    BenchmarkData.delete(root);
+  }
+
+  @Benchmark
+  public void writeUsers() {
+    LogWriter.writeUsers(aggregated);
+  }
+}
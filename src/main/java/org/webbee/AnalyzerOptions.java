@@ -0,0 +1,745 @@
+package org.webbee;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+import org.webbee.services.FileDiscovery;
+import org.webbee.services.StreamingPipeline;
+import org.webbee.services.TimeOrderedReplay;
+import org.webbee.services.UserShard;
+import org.webbee.services.VirtualThreads;
+
+/**
+ * Параметры запуска анализатора, разобранные из аргументов командной строки.
+ *
+ * <p>Первый аргумент - путь к директории с логами, далее следуют
+ * необязательные параметры в формате {@code --имя=значение} или флаги {@code --имя}:
+ * <ul>
+ *   <li>{@code --workers=N} - количество потоков обработки файлов</li>
+ *   <li>{@code --compact-storage} - компактное хранение истории транзакций</li>
+ *   <li>{@code --incremental} - обработка только новых и дописанных файлов
+ *       с использованием контрольной точки</li>
+ *   <li>{@code --follow} - режим слежения за дописываемыми логами</li>
+ *   <li>{@code --flush-interval-ms=N} - интервал записи логов в режиме слежения</li>
+ *   <li>{@code --poll-interval-ms=N} - интервал полного просмотра директорий
+ *       в режиме слежения</li>
+ *   <li>{@code --external-sort} - обработка без хранения истории транзакций в памяти</li>
+ *   <li>{@code --memory-budget=SIZE} - бюджет памяти внешней сортировки,
+ *       например {@code 512k}, {@code 64m}, {@code 1g}</li>
+ *   <li>{@code --output-layout=per-user|sharded} - размещение логов пользователей:
+ *       файл на пользователя (по умолчанию) или несколько общих файлов-шардов</li>
+ *   <li>{@code --shards=N} - количество файлов-шардов</li>
+ *   <li>{@code --time-ordered} - применение транзакций всех файлов в порядке времени</li>
+ *   <li>{@code --reorder-window=N} - окно исправления перестановок строк внутри файла
+ *       в режиме {@code --time-ordered}</li>
+ *   <li>{@code --progress-interval-ms=N} - интервал вывода строки прогресса в stderr</li>
+ *   <li>{@code --metrics-file=PATH} - файл для JSON-сводки метрик при завершении,
+ *       {@code -} - вывод в stderr</li>
+ *   <li>{@code --top-balances=N} - вывести N пользователей с наибольшим балансом</li>
+ *   <li>{@code --top-outgoing=N}, {@code --top-incoming=N} - вывести N пользователей
+ *       с наибольшей суммой исходящих или входящих переводов</li>
+ *   <li>{@code --history=USER} - вывести транзакции пользователя</li>
+ *   <li>{@code --counterparties=USER} - вывести переводы пользователя по контрагентам</li>
+ *   <li>{@code --from=TIME}, {@code --to=TIME} - интервал времени запросов {@code [from, to)}
+ *       в формате {@code yyyy-MM-dd} или {@code yyyy-MM-dd'T'HH:mm:ss}</li>
+ *   <li>{@code --write-snapshot=PATH} - сохранить двоичный снимок состояния после обработки</li>
+ *   <li>{@code --from-snapshot=PATH} - загрузить состояние из снимка вместо чтения логов</li>
+ *   <li>{@code --virtual-threads} - чтение файлов и запись логов в виртуальных потоках
+ *       (JDK 21+)</li>
+ *   <li>{@code --max-inflight-io=N} - ограничение одновременных операций чтения
+ *       и записи в режиме {@code --virtual-threads}</li>
+ *   <li>{@code --streaming} - потоковая обработка конвейером этапов с ограниченными
+ *       очередями</li>
+ *   <li>{@code --read-workers=N}, {@code --parse-workers=N}, {@code --write-workers=N} -
+ *       количество потоков этапов чтения, разбора и записи в режиме {@code --streaming}</li>
+ *   <li>{@code --queue-capacity=N} - емкость очередей между этапами</li>
+ *   <li>{@code --flush-partitions} - сбрасывать историю пользователей после каждой
+ *       поддиректории первого уровня (раздела по времени)</li>
+ *   <li>{@code --dedup} - отбрасывать повторы транзакций из пересекающихся файлов</li>
+ *   <li>{@code --dedup-window-s=N} - окно обнаружения повторов в секундах</li>
+ *   <li>{@code --include=GLOB}, {@code --exclude=GLOB} - шаблоны путей включаемых
+ *       и исключаемых файлов относительно директории с логами, можно указывать
+ *       несколько раз</li>
+ *   <li>{@code --max-depth=N} - наибольшая глубина вложенности файлов</li>
+ *   <li>{@code --symlinks=skip|files|follow} - обработка символических ссылок</li>
+ *   <li>{@code --discovery-threads=N} - количество потоков поиска файлов</li>
+ *   <li>{@code --shard=I/N} - обработать часть пользователей с номером I из N
+ *       (от {@code 0}) и сохранить ее результаты для объединения</li>
+ *   <li>{@code --merge-shards=N} - объединить результаты N частей без обработки логов</li>
+ *   <li>{@code --processes=N} - обработать логи N процессами по частям пользователей
+ *       и объединить результаты</li>
+ * </ul>
+ */
+public final class AnalyzerOptions {
+  /** Бюджет памяти внешней сортировки по умолчанию. */
+  private static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+  /** Интервалы режима слежения по умолчанию. */
+  private static final long DEFAULT_INTERVAL_MILLIS = 1000;
+  /** Количество файлов-шардов по умолчанию. */
+  private static final int DEFAULT_SHARDS = 16;
+  
+  private final String directory;
+  private int workers = 1;
+  private boolean compactStorage;
+  private boolean externalSort;
+  private boolean incremental;
+  private boolean follow;
+  private long flushIntervalMillis = DEFAULT_INTERVAL_MILLIS;
+  private long pollIntervalMillis = DEFAULT_INTERVAL_MILLIS;
+  private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+  private OutputLayoutType outputLayout = OutputLayoutType.PER_USER;
+  private int shards = DEFAULT_SHARDS;
+  private boolean timeOrdered;
+  private int reorderWindow = TimeOrderedReplay.DEFAULT_REORDER_WINDOW;
+  private long progressIntervalMillis;
+  private String metricsFile;
+  private int topBalances;
+  private int topOutgoing;
+  private int topIncoming;
+  private String historyUser;
+  private String counterpartiesUser;
+  private LocalDateTime from;
+  private LocalDateTime to;
+  private String writeSnapshot;
+  private String fromSnapshot;
+  private boolean virtualThreads;
+  private int maxInFlightIo = VirtualThreads.DEFAULT_MAX_IN_FLIGHT;
+  private boolean streaming;
+  private int readWorkers = StreamingPipeline.DEFAULT_READ_WORKERS;
+  private int parseWorkers = Runtime.getRuntime().availableProcessors();
+  private int writeWorkers = StreamingPipeline.DEFAULT_WRITE_WORKERS;
+  private int queueCapacity = StreamingPipeline.DEFAULT_QUEUE_CAPACITY;
+  private boolean flushPartitions;
+  private boolean dedup;
+  private long dedupWindowSeconds;
+  private final List<String> includes = new ArrayList<>();
+  private final List<String> excludes = new ArrayList<>();
+  private int maxDepth = FileDiscovery.UNLIMITED_DEPTH;
+  private FileDiscovery.SymlinkPolicy symlinks = FileDiscovery.SymlinkPolicy.FILES;
+  private int discoveryThreads = FileDiscovery.DEFAULT_PARALLELISM;
+  private UserShard shard;
+  private int mergeShards;
+  private int processes;
+
+  /**
+   * Размещение логов пользователей в директории вывода.
+   */
+  public enum OutputLayoutType {
+    PER_USER,
+    SHARDED
+  }
+
+  private AnalyzerOptions(String directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Разбирает аргументы командной строки.
+   *
+   * @param args аргументы командной строки
+   * @return разобранные параметры запуска
+   * @throws IllegalArgumentException если путь отсутствует или параметр некорректен
+   */
+  public static AnalyzerOptions parse(String[] args) {
+    if (args == null || args.length < 1) {
+      throw new IllegalArgumentException("Directory path is missing");
+    }
+    AnalyzerOptions options = new AnalyzerOptions(args[0]);
+    for (int i = 1; i < args.length; i++) {
+      String arg = args[i];
+      if (!arg.startsWith("--")) {
+        throw new IllegalArgumentException("Unknown argument: " + arg);
+      }
+      int separator = arg.indexOf('=');
+      if (separator < 0) {
+        options.apply(arg.substring(2), null);
+      } else {
+        options.apply(arg.substring(2, separator), arg.substring(separator + 1));
+      }
+    }
+    options.validate();
+    return options;
+  }
+
+  private void apply(String name, String value) {
+    switch (name) {
+      case "workers":
+        workers = parsePositiveInt(name, value);
+        break;
+      case "compact-storage":
+        compactStorage = parseFlag(name, value);
+        break;
+      case "external-sort":
+        externalSort = parseFlag(name, value);
+        break;
+      case "incremental":
+        incremental = parseFlag(name, value);
+        break;
+      case "follow":
+        follow = parseFlag(name, value);
+        break;
+      case "flush-interval-ms":
+        flushIntervalMillis = parsePositiveInt(name, value);
+        break;
+      case "poll-interval-ms":
+        pollIntervalMillis = parsePositiveInt(name, value);
+        break;
+      case "memory-budget":
+        memoryBudget = parseSize(name, value);
+        break;
+      case "output-layout":
+        outputLayout = parseOutputLayout(name, value);
+        break;
+      case "shards":
+        shards = parsePositiveInt(name, value);
+        break;
+      case "time-ordered":
+        timeOrdered = parseFlag(name, value);
+        break;
+      case "reorder-window":
+        reorderWindow = parsePositiveInt(name, value);
+        break;
+      case "progress-interval-ms":
+        progressIntervalMillis = parsePositiveInt(name, value);
+        break;
+      case "metrics-file":
+        metricsFile = parsePath(name, value);
+        break;
+      case "write-snapshot":
+        writeSnapshot = parsePath(name, value);
+        break;
+      case "from-snapshot":
+        fromSnapshot = parsePath(name, value);
+        break;
+      case "virtual-threads":
+        virtualThreads = parseFlag(name, value);
+        break;
+      case "max-inflight-io":
+        maxInFlightIo = parsePositiveInt(name, value);
+        break;
+      case "streaming":
+        streaming = parseFlag(name, value);
+        break;
+      case "read-workers":
+        readWorkers = parsePositiveInt(name, value);
+        break;
+      case "parse-workers":
+        parseWorkers = parsePositiveInt(name, value);
+        break;
+      case "write-workers":
+        writeWorkers = parsePositiveInt(name, value);
+        break;
+      case "queue-capacity":
+        queueCapacity = parsePositiveInt(name, value);
+        break;
+      case "flush-partitions":
+        flushPartitions = parseFlag(name, value);
+        break;
+      case "dedup":
+        dedup = parseFlag(name, value);
+        break;
+      case "dedup-window-s":
+        dedupWindowSeconds = parsePositiveInt(name, value);
+        break;
+      case "include":
+        includes.add(parsePattern(name, value));
+        break;
+      case "exclude":
+        excludes.add(parsePattern(name, value));
+        break;
+      case "max-depth":
+        maxDepth = parsePositiveInt(name, value);
+        break;
+      case "symlinks":
+        symlinks = parseSymlinks(name, value);
+        break;
+      case "discovery-threads":
+        discoveryThreads = parsePositiveInt(name, value);
+        break;
+      case "shard":
+        shard = parseShard(name, value);
+        break;
+      case "merge-shards":
+        mergeShards = parsePositiveInt(name, value);
+        break;
+      case "processes":
+        processes = parsePositiveInt(name, value);
+        break;
+      case "top-balances":
+        topBalances = parsePositiveInt(name, value);
+        break;
+      case "top-outgoing":
+        topOutgoing = parsePositiveInt(name, value);
+        break;
+      case "top-incoming":
+        topIncoming = parsePositiveInt(name, value);
+        break;
+      case "history":
+        historyUser = parseUserName(name, value);
+        break;
+      case "counterparties":
+        counterpartiesUser = parseUserName(name, value);
+        break;
+      case "from":
+        from = parseTime(name, value);
+        break;
+      case "to":
+        to = parseTime(name, value);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown option: --" + name);
+    }
+  }
+
+  private void validate() {
+    if (externalSort && workers > 1) {
+      throw new IllegalArgumentException(
+          "Option --external-sort cannot be combined with --workers");
+    }
+    if (externalSort && compactStorage) {
+      throw new IllegalArgumentException(
+          "Option --external-sort cannot be combined with --compact-storage");
+    }
+    if (follow && (externalSort || incremental || workers > 1)) {
+      throw new IllegalArgumentException(
+          "Option --follow cannot be combined with --external-sort, --incremental or --workers");
+    }
+    if (incremental && workers > 1) {
+      throw new IllegalArgumentException("Option --incremental cannot be combined with --workers");
+    }
+    if (externalSort && incremental) {
+      throw new IllegalArgumentException(
+          "Option --external-sort cannot be combined with --incremental");
+    }
+    if (timeOrdered && (externalSort || incremental || follow || workers > 1)) {
+      throw new IllegalArgumentException("Option --time-ordered cannot be combined"
+          + " with --external-sort, --incremental, --follow or --workers");
+    }
+    if (outputLayout == OutputLayoutType.SHARDED && (externalSort || incremental || follow)) {
+      throw new IllegalArgumentException("Option --output-layout=sharded cannot be combined"
+          + " with --external-sort, --incremental or --follow");
+    }
+    if (hasQueries() && (externalSort || follow)) {
+      throw new IllegalArgumentException(
+          "Query options cannot be combined with --external-sort or --follow");
+    }
+    if ((from != null || to != null) && !hasQueries()) {
+      throw new IllegalArgumentException("Options --from and --to require a query option");
+    }
+    if (writeSnapshot != null && (externalSort || follow)) {
+      throw new IllegalArgumentException(
+          "Option --write-snapshot cannot be combined with --external-sort or --follow");
+    }
+    if (fromSnapshot != null && (externalSort || incremental || follow || timeOrdered)) {
+      throw new IllegalArgumentException("Option --from-snapshot cannot be combined"
+          + " with --external-sort, --incremental, --follow or --time-ordered");
+    }
+    if (streaming && (externalSort || incremental || follow || timeOrdered || workers > 1
+        || compactStorage || virtualThreads || outputLayout == OutputLayoutType.SHARDED)) {
+      throw new IllegalArgumentException("Option --streaming cannot be combined with"
+          + " other processing modes, --workers, --compact-storage, --virtual-threads"
+          + " or --output-layout=sharded");
+    }
+    if (streaming && (hasQueries() || writeSnapshot != null || fromSnapshot != null)) {
+      throw new IllegalArgumentException(
+          "Option --streaming cannot be combined with query or snapshot options");
+    }
+    if (flushPartitions && !streaming) {
+      throw new IllegalArgumentException("Option --flush-partitions requires --streaming");
+    }
+    if (dedup && (workers > 1 || virtualThreads)) {
+      throw new IllegalArgumentException(
+          "Option --dedup cannot be combined with --workers or --virtual-threads");
+    }
+    if (dedupWindowSeconds > 0 && !dedup) {
+      throw new IllegalArgumentException("Option --dedup-window-s requires --dedup");
+    }
+    if ((shard != null ? 1 : 0) + (mergeShards > 0 ? 1 : 0) + (processes > 0 ? 1 : 0) > 1) {
+      throw new IllegalArgumentException(
+          "Options --shard, --merge-shards and --processes are mutually exclusive");
+    }
+    if ((shard != null || processes > 0) && (externalSort || incremental || follow
+        || fromSnapshot != null || writeSnapshot != null || hasQueries()
+        || outputLayout == OutputLayoutType.SHARDED)) {
+      throw new IllegalArgumentException("Options --shard and --processes cannot be combined"
+          + " with --external-sort, --incremental, --follow, snapshot or query options"
+          + " or --output-layout=sharded");
+    }
+    if (maxInFlightIo > VirtualThreads.MAX_IN_FLIGHT_LIMIT) {
+      throw new IllegalArgumentException("Option --max-inflight-io must not exceed "
+          + VirtualThreads.MAX_IN_FLIGHT_LIMIT);
+    }
+    if (from != null && to != null && !from.isBefore(to)) {
+      throw new IllegalArgumentException("Option --from must be before --to");
+    }
+  }
+  
+  private static String parsePath(String name, String value) {
+    if (value == null || value.isEmpty()) {
+      throw new IllegalArgumentException("Option --" + name + " requires a value");
+    }
+    return value;
+  }
+  
+  private static String parseUserName(String name, String value) {
+    if (value == null || value.isEmpty()) {
+      throw new IllegalArgumentException("Option --" + name + " requires a user name");
+    }
+    return value;
+  }
+  
+  private static LocalDateTime parseTime(String name, String value) {
+    if (value != null) {
+      try {
+        return value.length() == 10 ? LocalDate.parse(value).atStartOfDay()
+            : LocalDateTime.parse(value.replace(' ', 'T'));
+      } catch (DateTimeParseException e) {
+        // обрабатывается ниже
+      }
+    }
+    throw new IllegalArgumentException(
+        "Option --" + name + " must have format yyyy-MM-dd or yyyy-MM-dd'T'HH:mm:ss");
+  }
+  
+  private static String parsePattern(String name, String value) {
+    if (value == null || value.isEmpty()) {
+      throw new IllegalArgumentException("Option --" + name + " requires a glob pattern");
+    }
+    try {
+      FileDiscovery.validatePattern(value);
+    } catch (PatternSyntaxException e) {
+      throw new IllegalArgumentException(
+          "Option --" + name + " has invalid glob pattern: " + e.getDescription());
+    }
+    return value;
+  }
+  
+  private static UserShard parseShard(String name, String value) {
+    int separator = value == null ? -1 : value.indexOf('/');
+    if (separator > 0) {
+      try {
+        return new UserShard(Integer.parseInt(value.substring(0, separator)),
+            Integer.parseInt(value.substring(separator + 1)));
+      } catch (IllegalArgumentException e) {
+        // обрабатывается ниже
+      }
+    }
+    throw new IllegalArgumentException(
+        "Option --" + name + " must have format I/N with 0 <= I < N");
+  }
+  
+  private static FileDiscovery.SymlinkPolicy parseSymlinks(String name, String value) {
+    if ("skip".equals(value)) {
+      return FileDiscovery.SymlinkPolicy.SKIP;
+    }
+    if ("files".equals(value)) {
+      return FileDiscovery.SymlinkPolicy.FILES;
+    }
+    if ("follow".equals(value)) {
+      return FileDiscovery.SymlinkPolicy.FOLLOW;
+    }
+    throw new IllegalArgumentException("Option --" + name + " must be skip, files or follow");
+  }
+  
+  private static OutputLayoutType parseOutputLayout(String name, String value) {
+    if ("per-user".equals(value)) {
+      return OutputLayoutType.PER_USER;
+    }
+    if ("sharded".equals(value)) {
+      return OutputLayoutType.SHARDED;
+    }
+    throw new IllegalArgumentException("Option --" + name + " must be per-user or sharded");
+  }
+  
+  private static boolean parseFlag(String name, String value) {
+    if (value == null || "true".equals(value)) {
+      return true;
+    }
+    if ("false".equals(value)) {
+      return false;
+    }
+    throw new IllegalArgumentException("Option --" + name + " must be true or false");
+  }
+  
+  private static long parseSize(String name, String value) {
+    if (value != null && !value.isEmpty()) {
+      char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+      long multiplier = unit == 'k' ? 1L << 10
+          : unit == 'm' ? 1L << 20
+          : unit == 'g' ? 1L << 30
+          : 1;
+      String digits = multiplier == 1 ? value : value.substring(0, value.length() - 1);
+      try {
+        long result = Long.parseLong(digits);
+        if (result > 0 && result <= Long.MAX_VALUE / multiplier) {
+          return result * multiplier;
+        }
+      } catch (NumberFormatException e) {
+        // обрабатывается ниже
+      }
+    }
+    throw new IllegalArgumentException("Option --" + name + " must be a positive size");
+  }
+  
+  private static int parsePositiveInt(String name, String value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Option --" + name + " requires a value");
+    }
+    try {
+      int result = Integer.parseInt(value);
+      if (result > 0) {
+        return result;
+      }
+    } catch (NumberFormatException e) {
+      // обрабатывается ниже
+    }
+    throw new IllegalArgumentException("Option --" + name + " must be a positive integer");
+  }
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+  
+  public boolean isCompactStorage() {
+    return compactStorage;
+  }
+  
+  public boolean isExternalSort() {
+    return externalSort;
+  }
+  
+  public boolean isIncremental() {
+    return incremental;
+  }
+  
+  public boolean isFollow() {
+    return follow;
+  }
+  
+  public long getFlushIntervalMillis() {
+    return flushIntervalMillis;
+  }
+  
+  public long getPollIntervalMillis() {
+    return pollIntervalMillis;
+  }
+  
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+  
+  public OutputLayoutType getOutputLayout() {
+    return outputLayout;
+  }
+  
+  public int getShards() {
+    return shards;
+  }
+  
+  public boolean isTimeOrdered() {
+    return timeOrdered;
+  }
+  
+  public int getReorderWindow() {
+    return reorderWindow;
+  }
+  
+  /**
+   * Возвращает интервал вывода строки прогресса.
+   *
+   * @return интервал в миллисекундах или 0, если вывод отключен
+   */
+  public long getProgressIntervalMillis() {
+    return progressIntervalMillis;
+  }
+  
+  /**
+   * Возвращает путь к файлу JSON-сводки метрик.
+   *
+   * @return путь, {@code -} для вывода в stderr или {@code null}, если сводка не нужна
+   */
+  public String getMetricsFile() {
+    return metricsFile;
+  }
+  
+  /**
+   * Возвращает признак того, что указан хотя бы один запрос к результатам.
+   *
+   * @return {@code true}, если после обработки нужно выполнить запросы
+   */
+  public boolean hasQueries() {
+    return topBalances > 0 || topOutgoing > 0 || topIncoming > 0
+        || historyUser != null || counterpartiesUser != null;
+  }
+  
+  /**
+   * Возвращает количество пользователей в рейтинге по балансу.
+   *
+   * @return количество или 0, если рейтинг не нужен
+   */
+  public int getTopBalances() {
+    return topBalances;
+  }
+  
+  /**
+   * Возвращает количество пользователей в рейтинге по исходящим переводам.
+   *
+   * @return количество или 0, если рейтинг не нужен
+   */
+  public int getTopOutgoing() {
+    return topOutgoing;
+  }
+  
+  /**
+   * Возвращает количество пользователей в рейтинге по входящим переводам.
+   *
+   * @return количество или 0, если рейтинг не нужен
+   */
+  public int getTopIncoming() {
+    return topIncoming;
+  }
+  
+  public String getHistoryUser() {
+    return historyUser;
+  }
+  
+  public String getCounterpartiesUser() {
+    return counterpartiesUser;
+  }
+  
+  /**
+   * Возвращает начало интервала запросов.
+   *
+   * @return время включительно или {@code null}, если начало не ограничено
+   */
+  public LocalDateTime getFrom() {
+    return from;
+  }
+  
+  /**
+   * Возвращает конец интервала запросов.
+   *
+   * @return время исключительно или {@code null}, если конец не ограничен
+   */
+  public LocalDateTime getTo() {
+    return to;
+  }
+  
+  /**
+   * Возвращает путь, по которому нужно сохранить снимок состояния.
+   *
+   * @return путь или {@code null}, если снимок не нужен
+   */
+  public String getWriteSnapshot() {
+    return writeSnapshot;
+  }
+  
+  /**
+   * Возвращает путь к снимку, из которого загружается состояние вместо логов.
+   *
+   * @return путь или {@code null}, если обрабатываются логи
+   */
+  public String getFromSnapshot() {
+    return fromSnapshot;
+  }
+  
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+  
+  public int getMaxInFlightIo() {
+    return maxInFlightIo;
+  }
+  
+  public boolean isStreaming() {
+    return streaming;
+  }
+  
+  public int getReadWorkers() {
+    return readWorkers;
+  }
+  
+  public int getParseWorkers() {
+    return parseWorkers;
+  }
+  
+  public int getWriteWorkers() {
+    return writeWorkers;
+  }
+  
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+  
+  public boolean isFlushPartitions() {
+    return flushPartitions;
+  }
+  
+  public boolean isDedup() {
+    return dedup;
+  }
+  
+  /**
+   * Возвращает окно обнаружения повторов транзакций.
+   *
+   * @return окно в секундах или {@code 0}, если окно не ограничено
+   */
+  public long getDedupWindowSeconds() {
+    return dedupWindowSeconds;
+  }
+  
+  public List<String> getIncludes() {
+    return Collections.unmodifiableList(includes);
+  }
+  
+  public List<String> getExcludes() {
+    return Collections.unmodifiableList(excludes);
+  }
+  
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+  
+  public FileDiscovery.SymlinkPolicy getSymlinks() {
+    return symlinks;
+  }
+  
+  public int getDiscoveryThreads() {
+    return discoveryThreads;
+  }
+  
+  /**
+   * Возвращает часть пользователей, обрабатываемую этим процессом.
+   *
+   * @return часть или {@code null}, если обрабатываются все пользователи
+   */
+  public UserShard getShard() {
+    return shard;
+  }
+  
+  /**
+   * Возвращает количество частей, результаты которых нужно объединить.
+   *
+   * @return количество частей или {@code 0}, если объединение не требуется
+   */
+  public int getMergeShards() {
+    return mergeShards;
+  }
+  
+  /**
+   * Возвращает количество процессов обработки по частям пользователей.
+   *
+   * @return количество процессов или {@code 0} для обработки в этом процессе
+   */
+  public int getProcesses() {
+    return processes;
+  }
+}
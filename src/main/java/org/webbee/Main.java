@@ -2,11 +2,39 @@ package org.webbee;
 
 import static java.lang.System.exit;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import org.webbee.exceptions.DirectoryProcessingException;
 import org.webbee.exceptions.InitializationException;
+import org.webbee.metrics.AnalyzerMetrics;
+import org.webbee.metrics.ProgressReporter;
+import org.webbee.model.Transaction;
+import org.webbee.model.User;
+import org.webbee.query.RankedUser;
+import org.webbee.query.TransferGraph;
+import org.webbee.query.UserQueries;
 import org.webbee.services.DirectoryReader;
+import org.webbee.services.DuplicateFilter;
+import org.webbee.services.ExternalSortAggregator;
+import org.webbee.services.FileDiscovery;
+import org.webbee.services.IncrementalAggregator;
+import org.webbee.services.LogFollower;
 import org.webbee.services.LogWriter;
+import org.webbee.services.OutputLayout;
+import org.webbee.services.PerUserFileLayout;
+import org.webbee.services.ShardOutput;
+import org.webbee.services.ShardedBundleLayout;
+import org.webbee.services.StateSnapshot;
+import org.webbee.services.StreamingPipeline;
+import org.webbee.services.TimeOrderedReplay;
 import org.webbee.services.UserLogsAggregator;
+import org.webbee.services.VirtualThreads;
 
 /**
 * Главный класс приложения для обработки логов транзакций.
@@ -16,7 +44,22 @@ import org.webbee.services.UserLogsAggregator;
 *
 * <p>Пример использования:
 * <pre>
-* java -jar app.jar /path/to/logs
+* java -jar app.jar /path/to/logs [--workers=N] [--compact-storage]
+* [--incremental] [--external-sort [--memory-budget=64m]]
+* [--follow [--flush-interval-ms=1000] [--poll-interval-ms=1000]]
+* [--output-layout=per-user|sharded [--shards=16]]
+* [--time-ordered [--reorder-window=1024]]
+* [--progress-interval-ms=N] [--metrics-file=PATH|-]
+* [--top-balances=N] [--top-outgoing=N] [--top-incoming=N]
+* [--history=USER] [--counterparties=USER] [--from=TIME] [--to=TIME]
+* [--write-snapshot=PATH] [--from-snapshot=PATH]
+* [--virtual-threads [--max-inflight-io=64]]
+* [--streaming [--read-workers=N] [--parse-workers=N] [--write-workers=N]
+* [--queue-capacity=64] [--flush-partitions]]
+* [--dedup [--dedup-window-s=N]]
+* [--include=GLOB]... [--exclude=GLOB]... [--max-depth=N]
+* [--symlinks=skip|files|follow] [--discovery-threads=8]
+* [--shard=I/N | --merge-shards=N | --processes=N]
 * </pre>
 */
 public class Main {
@@ -25,36 +68,288 @@ public class Main {
   private static final String TRANSACTIONS_DIR_NAME = "transactions_by_users";
   /** Код завершения при ошибке. */
   private static final int ERROR_EXIT_CODE = 1;
+  /** Время ожидания записи изменений при завершении режима слежения. */
+  private static final long SHUTDOWN_TIMEOUT_MILLIS = 30_000;
   
   /**
    * Точка входа в приложение.
    *
    * @param args аргументы командной строки:
-   *             args[0] - путь к директории с исходными логами
+   *             args[0] - путь к директории с исходными логами,
+   *             далее - параметры {@link AnalyzerOptions}
    */
   public static void main(String[] args) {
-    validateArguments(args);
+    AnalyzerOptions options = parseArguments(args);
     try {
-      initializeLogWriter(args[0]);
+      initializeLogWriter(options.getDirectory());
     } catch (InitializationException e) {
       System.err.println("Initialization error: " + e.getMessage());
       System.exit(ERROR_EXIT_CODE);
     }
+    if (options.getProcesses() > 0 || options.getMergeShards() > 0) {
+      coordinate(args, options);
+      return;
+    }
+    Path outputDirectory = LogWriter.getOutputDirectory();
+    if (options.getShard() != null) {
+      try {
+        outputDirectory = ShardOutput.prepare(outputDirectory, options.getShard());
+      } catch (IOException e) {
+        System.err.println("Initialization error: " + e.getMessage());
+        System.exit(ERROR_EXIT_CODE);
+      }
+    }
     
-    try (DirectoryReader reader = new DirectoryReader(args[0])) {
-      UserLogsAggregator aggregator = new UserLogsAggregator(reader.getFileStream());
-      LogWriter.writeUsers(aggregator.getUsers());
+    AnalyzerMetrics metrics = AnalyzerMetrics.get();
+    metrics.registerMBean();
+    int exitCode = 0;
+    try (DirectoryReader reader = new DirectoryReader(options.getDirectory(),
+             createDiscovery(options));
+         OutputLayout layout = createOutputLayout(options, outputDirectory);
+         ProgressReporter progress = options.getProgressIntervalMillis() > 0
+             ? new ProgressReporter(metrics, options.getProgressIntervalMillis()) : null) {
+      if (progress != null) {
+        progress.start();
+      }
+      LogWriter.setLayout(layout);
+      process(options, reader, outputDirectory);
+      if (options.getShard() != null) {
+        ShardOutput.markComplete(LogWriter.getOutputDirectory(), options.getShard());
+      }
     } catch (DirectoryProcessingException e) {
       System.err.println("Error processing directory: " + e.getMessage());
-      System.exit(ERROR_EXIT_CODE);
+      exitCode = ERROR_EXIT_CODE;
     } catch (Exception e) {
       System.err.println("Error: " + e.getMessage());
-      System.exit(ERROR_EXIT_CODE);
+      exitCode = ERROR_EXIT_CODE;
+    }
+    if (metrics.getDuplicatesDropped() > 0) {
+      System.err.println(metrics.getDuplicatesDropped() + " duplicate transactions were dropped");
+    }
+    writeMetrics(metrics, options.getMetricsFile());
+    if (exitCode != 0) {
+      System.exit(exitCode);
     }
     System.out.println("Logs processed successfully");
     
   }
   
+  /**
+   * Обрабатывает логи в режиме, выбранном параметрами запуска.
+   *
+   * @param options         параметры запуска
+   * @param reader          источник лог-файлов
+   * @param outputDirectory директория логов пользователей
+   * @throws Exception если произошла ошибка обработки
+   */
+  private static void process(AnalyzerOptions options, DirectoryReader reader,
+                              Path outputDirectory) throws Exception {
+    VirtualThreads virtualThreads = null;
+    if (options.isVirtualThreads()) {
+      virtualThreads = VirtualThreads.create(options.getMaxInFlightIo());
+      if (virtualThreads == null) {
+        System.err.println("Virtual threads require Java 21 or newer, using platform threads");
+      }
+    }
+    DuplicateFilter duplicates = options.isDedup()
+        ? new DuplicateFilter(options.getDedupWindowSeconds()) : null;
+    if (options.isFollow()) {
+      follow(options, reader, virtualThreads, duplicates);
+    } else if (options.isExternalSort()) {
+      try (ExternalSortAggregator aggregator = new ExternalSortAggregator(
+          reader.getFileStream(), options.getMemoryBudget(), duplicates)) {
+        aggregator.writeUsers();
+      }
+    } else if (options.isStreaming()) {
+      new StreamingPipeline(reader, outputDirectory, options.getReadWorkers(),
+          options.getParseWorkers(), options.getWriteWorkers(), options.getQueueCapacity(),
+          options.isFlushPartitions(), duplicates, options.getShard()).run();
+    } else if (options.isIncremental()) {
+      IncrementalAggregator aggregator = new IncrementalAggregator(
+          reader.getDirectory(), LogWriter.getOutputDirectory(), options.isCompactStorage(),
+          duplicates);
+      aggregator.aggregate(reader.getFileStream());
+      LogWriter.writeUsers(aggregator.getChangedUsers(), virtualThreads);
+      aggregator.saveCheckpoint();
+      finish(options, aggregator.getUsers());
+    } else if (options.isTimeOrdered()) {
+      UserLogsAggregator aggregator = TimeOrderedReplay.aggregate(reader.getFileStream(),
+          options.isCompactStorage(), options.getReorderWindow(), duplicates,
+          options.getShard());
+      LogWriter.writeUsers(aggregator.getUsers(), virtualThreads);
+      finish(options, aggregator.getUsers());
+    } else if (options.getFromSnapshot() != null) {
+      UserLogsAggregator aggregator = StateSnapshot.load(Paths.get(options.getFromSnapshot()),
+          options.isCompactStorage());
+      LogWriter.writeUsers(aggregator.getUsers(), virtualThreads);
+      finish(options, aggregator.getUsers());
+    } else {
+      UserLogsAggregator aggregator = new UserLogsAggregator(reader.getFileStream(),
+          options.getWorkers(), options.isCompactStorage(), virtualThreads, duplicates,
+          options.getShard());
+      LogWriter.writeUsers(aggregator.getUsers(), virtualThreads);
+      finish(options, aggregator.getUsers());
+    }
+  }
+  
+  /**
+   * Сохраняет снимок состояния и выполняет запросы, указанные параметрами запуска.
+   *
+   * @param options параметры запуска
+   * @param users   пользователи после обработки логов
+   * @throws IOException если не удалось записать снимок
+   */
+  private static void finish(AnalyzerOptions options, Map<String, User> users)
+      throws IOException {
+    if (options.getWriteSnapshot() != null) {
+      StateSnapshot.write(Paths.get(options.getWriteSnapshot()), users);
+    }
+    printQueries(options, users);
+  }
+  
+  /**
+   * Выполняет запросы к результатам обработки, указанные параметрами запуска,
+   * и выводит их результаты в stdout.
+   *
+   * @param options параметры запуска
+   * @param users   пользователи после обработки логов
+   */
+  private static void printQueries(AnalyzerOptions options, Map<String, User> users) {
+    if (!options.hasQueries()) {
+      return;
+    }
+    UserQueries queries = new UserQueries(users);
+    LocalDateTime from = options.getFrom();
+    LocalDateTime to = options.getTo();
+    if (options.getTopBalances() > 0) {
+      printRanking("Top balances:", queries.topBalances(options.getTopBalances()));
+    }
+    if (options.getTopOutgoing() > 0) {
+      printRanking("Top outgoing transfers:",
+          queries.topOutgoingVolume(options.getTopOutgoing(), from, to));
+    }
+    if (options.getTopIncoming() > 0) {
+      printRanking("Top incoming transfers:",
+          queries.topIncomingVolume(options.getTopIncoming(), from, to));
+    }
+    if (options.getHistoryUser() != null) {
+      System.out.println("History of " + options.getHistoryUser() + ":");
+      for (Transaction transaction : queries.history(options.getHistoryUser(), from, to)) {
+        System.out.println("  " + transaction);
+      }
+    }
+    if (options.getCounterpartiesUser() != null) {
+      String user = options.getCounterpartiesUser();
+      TransferGraph graph = queries.transferGraph(from, to);
+      System.out.println("Counterparties of " + user + ":");
+      for (TransferGraph.Edge edge : graph.getRecipients(user).values()) {
+        System.out.println("  " + edge);
+      }
+      for (TransferGraph.Edge edge : graph.getSenders(user).values()) {
+        System.out.println("  " + edge);
+      }
+    }
+  }
+  
+  private static void printRanking(String title, List<RankedUser> ranking) {
+    System.out.println(title);
+    for (int i = 0; i < ranking.size(); i++) {
+      System.out.println("  " + (i + 1) + ". " + ranking.get(i));
+    }
+  }
+  
+  /**
+   * Создает поиск лог-файлов с параметрами запуска.
+   */
+  private static FileDiscovery createDiscovery(AnalyzerOptions options) {
+    return new FileDiscovery(options.getIncludes(), options.getExcludes(),
+        options.getMaxDepth(), options.getSymlinks(), options.getDiscoveryThreads());
+  }
+
+  /**
+   * Создает размещение логов пользователей, выбранное параметрами запуска.
+   */
+  private static OutputLayout createOutputLayout(AnalyzerOptions options, Path outputDirectory)
+      throws IOException {
+    if (options.getOutputLayout() == AnalyzerOptions.OutputLayoutType.SHARDED) {
+      return new ShardedBundleLayout(outputDirectory, options.getShards());
+    }
+    return new PerUserFileLayout(outputDirectory);
+  }
+  
+  /**
+   * Запускает части пользователей в отдельных процессах, если это требуется,
+   * и объединяет их результаты в директории вывода.
+   *
+   * @param args    аргументы командной строки
+   * @param options параметры запуска
+   */
+  private static void coordinate(String[] args, AnalyzerOptions options) {
+    int shards = options.getMergeShards();
+    try {
+      if (options.getProcesses() > 0) {
+        shards = options.getProcesses();
+        new ShardCoordinator(args, shards).run();
+      }
+      long merged = ShardOutput.merge(LogWriter.getOutputDirectory(), shards);
+      System.out.println("Merged " + merged + " user logs from " + shards + " shards");
+    } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(ERROR_EXIT_CODE);
+    } catch (InterruptedException e) {
+      System.err.println("Interrupted while waiting for shards");
+      System.exit(ERROR_EXIT_CODE);
+    }
+    System.out.println("Logs processed successfully");
+  }
+  
+  /**
+   * Запускает режим слежения до завершения процесса.
+   *
+   * <p>При завершении (например, по Ctrl+C) накопленные изменения записываются.
+   */
+  private static void follow(AnalyzerOptions options, DirectoryReader reader,
+                             VirtualThreads virtualThreads, DuplicateFilter duplicates)
+      throws Exception {
+    LogFollower follower = new LogFollower(reader, LogWriter.getOutputDirectory(),
+        options.getFlushIntervalMillis(), options.getPollIntervalMillis(),
+        options.isCompactStorage(), virtualThreads, duplicates);
+    Thread mainThread = Thread.currentThread();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      follower.stop();
+      try {
+        mainThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }));
+    System.out.println("Following " + reader.getDirectory() + ", press Ctrl+C to stop");
+    follower.run();
+  }
+  
+  /**
+   * Выводит JSON-сводку метрик в файл или в stderr.
+   *
+   * @param metrics     метрики
+   * @param metricsFile путь к файлу, {@code -} для stderr или {@code null}
+   */
+  private static void writeMetrics(AnalyzerMetrics metrics, String metricsFile) {
+    if (metricsFile == null) {
+      return;
+    }
+    String summary = metrics.getSummaryJson();
+    if ("-".equals(metricsFile)) {
+      System.err.println(summary);
+      return;
+    }
+    try {
+      Files.write(Paths.get(metricsFile), (summary + System.lineSeparator())
+          .getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      System.err.println("Failed to write metrics to " + metricsFile + ": " + e.getMessage());
+    }
+  }
+  
   private static void initializeLogWriter(String path) throws InitializationException {
     try {
       LogWriter.initialize(TRANSACTIONS_DIR_NAME, path);
@@ -63,10 +358,17 @@ public class Main {
     }
   }
   
-  private static void validateArguments(String[] args) {
+  private static AnalyzerOptions parseArguments(String[] args) {
     if (args.length < 1) {
       System.out.println("Отсутствует путь к директории.");
       exit(ERROR_EXIT_CODE);
     }
+    try {
+      return AnalyzerOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Некорректные аргументы: " + e.getMessage());
+      exit(ERROR_EXIT_CODE);
+      return null;
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package org.webbee;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запуск частей пользователей в отдельных JVM на этой машине.
+ *
+ * <p>Каждый процесс получает аргументы координатора без {@code --processes}
+ * и с добавленным {@code --shard=I/N}. Файл метрик каждого процесса получает
+ * суффикс {@code .shard-I}. Вывод процессов передается в вывод координатора.
+ */
+final class ShardCoordinator {
+  private static final String PROCESSES_OPTION = "--processes";
+  private static final String METRICS_FILE_OPTION = "--metrics-file=";
+  private static final long POLL_INTERVAL_MS = 100;
+
+  private final String[] args;
+  private final int processes;
+
+  /**
+   * Создает координатор.
+   *
+   * @param args      аргументы командной строки координатора
+   * @param processes количество процессов
+   */
+  ShardCoordinator(String[] args, int processes) {
+    this.args = args.clone();
+    this.processes = processes;
+  }
+
+  /**
+   * Запускает процессы и дожидается их завершения. Процессы опрашиваются
+   * все сразу: как только любой из них завершился с ошибкой, остальные
+   * процессы останавливаются.
+   *
+   * @throws IOException          если не удалось запустить процесс или процесс
+   *                              завершился с ошибкой
+   * @throws InterruptedException если ожидание прервано
+   */
+  void run() throws IOException, InterruptedException {
+    List<Process> started = new ArrayList<>(processes);
+    try {
+      for (int i = 0; i < processes; i++) {
+        started.add(new ProcessBuilder(command(i)).inheritIO().start());
+      }
+      List<Integer> running = new ArrayList<>(processes);
+      for (int i = 0; i < processes; i++) {
+        running.add(i);
+      }
+      while (!running.isEmpty()) {
+        // ждем первый из работающих, но не дольше интервала, чтобы заметить
+        // ошибку любого процесса, а не только первого по номеру
+        started.get(running.get(0)).waitFor(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        for (Iterator<Integer> it = running.iterator(); it.hasNext(); ) {
+          int i = it.next();
+          Process process = started.get(i);
+          if (process.isAlive()) {
+            continue;
+          }
+          int exitCode = process.exitValue();
+          if (exitCode != 0) {
+            throw new IOException("Shard " + i + "/" + processes
+                + " failed with exit code " + exitCode);
+          }
+          it.remove();
+        }
+      }
+    } finally {
+      for (Process process : started) {
+        if (process.isAlive()) {
+          process.destroy();
+        }
+      }
+    }
+  }
+
+  private List<String> command(int index) {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(Main.class.getName());
+    for (String arg : args) {
+      if (arg.equals(PROCESSES_OPTION) || arg.startsWith(PROCESSES_OPTION + "=")) {
+        continue;
+      }
+      if (arg.startsWith(METRICS_FILE_OPTION) && !arg.equals(METRICS_FILE_OPTION + "-")) {
+        arg = arg + ".shard-" + index;
+      }
+      command.add(arg);
+    }
+    command.add("--shard=" + index + "/" + processes);
+    return command;
+  }
+}
@@ -0,0 +1,318 @@
+package org.webbee.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.webbee.model.Transaction;
+
+/**
+ * Метрики работы анализатора: счетчики этапов, гистограммы времени и пиковые значения.
+ *
+ * <p>Счетчики основаны на {@link LongAdder}, поэтому обновление из нескольких потоков
+ * не создает конкуренции. Горячие циклы накапливают значения в локальных полях
+ * и передают их сюда один раз на файл или на пользователя.
+ *
+ * <p>Метрики доступны через {@link #get()} в пределах процесса, а также через JMX
+ * после вызова {@link #registerMBean()}.
+ */
+public final class AnalyzerMetrics implements AnalyzerMetricsMXBean {
+  /** Имя MBean метрик. */
+  public static final String OBJECT_NAME = "org.webbee:type=AnalyzerMetrics";
+  private static final Transaction.OperationType[] OPERATION_TYPES =
+      Transaction.OperationType.values();
+  private static final long NANOS_PER_MICRO = 1000;
+  private static final AnalyzerMetrics INSTANCE = new AnalyzerMetrics();
+
+  private final long startNanos = System.nanoTime();
+  private final LongAdder filesWalked = new LongAdder();
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder linesParsed = new LongAdder();
+  private final LongAdder linesRejected = new LongAdder();
+  private final LongAdder[] applied = new LongAdder[OPERATION_TYPES.length];
+  private final LongAdder failedTransactions = new LongAdder();
+  private final LongAdder duplicatesDropped = new LongAdder();
+  private final LongAdder usersWritten = new LongAdder();
+  private final AtomicLong peakUsers = new AtomicLong();
+  private final AtomicLong peakRetainedTransactions = new AtomicLong();
+  private final Log2Histogram fileParseNanos = new Log2Histogram();
+  private final Log2Histogram userWriteNanos = new Log2Histogram();
+  private final Map<String, QueueGauge> queues = new ConcurrentSkipListMap<>();
+
+  private AnalyzerMetrics() {
+    for (int i = 0; i < applied.length; i++) {
+      applied[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Возвращает метрики текущего процесса.
+   *
+   * @return общий экземпляр метрик
+   */
+  public static AnalyzerMetrics get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Регистрирует метрики в платформенном MBeanServer. Повторная регистрация игнорируется.
+   */
+  public void registerMBean() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(this, name);
+      }
+    } catch (JMException e) {
+      System.err.println("Failed to register metrics MBean: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Учитывает обработанный файл или его часть.
+   *
+   * @param fileStart  признак того, что обработка начиналась с начала файла;
+   *                   только такие вызовы увеличивают счетчик файлов
+   * @param bytes      количество прочитанных байтов
+   * @param parseNanos время обработки в наносекундах
+   */
+  public void recordFile(boolean fileStart, long bytes, long parseNanos) {
+    if (fileStart) {
+      filesWalked.increment();
+    }
+    bytesRead.add(bytes);
+    fileParseNanos.record(parseNanos);
+  }
+
+  /**
+   * Учитывает разобранные строки.
+   *
+   * @param parsed   количество непустых строк
+   * @param rejected количество строк, не распознанных как транзакции
+   */
+  public void addLines(long parsed, long rejected) {
+    linesParsed.add(parsed);
+    linesRejected.add(rejected);
+  }
+
+  /**
+   * Учитывает примененные транзакции.
+   *
+   * @param countsByType количества по {@link Transaction.OperationType#ordinal()}
+   * @param failed       количество транзакций, которые не удалось применить
+   */
+  public void addTransactions(long[] countsByType, long failed) {
+    for (int i = 0; i < countsByType.length; i++) {
+      if (countsByType[i] != 0) {
+        applied[i].add(countsByType[i]);
+      }
+    }
+    failedTransactions.add(failed);
+  }
+
+  /**
+   * Учитывает отброшенные повторы транзакций.
+   *
+   * @param dropped количество повторов
+   */
+  public void addDuplicates(long dropped) {
+    duplicatesDropped.add(dropped);
+  }
+
+  /**
+   * Учитывает запись лога одного пользователя.
+   *
+   * @param writeNanos время кодирования и записи в наносекундах
+   */
+  public void recordUserWrite(long writeNanos) {
+    usersWritten.increment();
+    userWriteNanos.record(writeNanos);
+  }
+
+  /**
+   * Обновляет пиковые значения количества пользователей и хранимых транзакций.
+   *
+   * @param users        текущее количество пользователей
+   * @param transactions текущее количество хранимых транзакций
+   */
+  public void observeRetained(long users, long transactions) {
+    peakUsers.accumulateAndGet(users, Math::max);
+    peakRetainedTransactions.accumulateAndGet(transactions, Math::max);
+  }
+
+  /**
+   * Регистрирует очередь между этапами конвейера для учета ее глубины.
+   *
+   * <p>Повторная регистрация этапа заменяет очередь, наибольшая глубина
+   * учитывается заново.
+   *
+   * @param stage имя этапа, читающего из очереди
+   * @param queue очередь
+   * @return показатель глубины очереди, в который этап передает наблюдения
+   */
+  public QueueGauge registerQueue(String stage, BlockingQueue<?> queue) {
+    QueueGauge gauge = new QueueGauge(queue);
+    queues.put(stage, gauge);
+    return gauge;
+  }
+
+  @Override
+  public Map<String, Long> getQueueDepths() {
+    Map<String, Long> depths = new TreeMap<>();
+    for (Map.Entry<String, QueueGauge> entry : queues.entrySet()) {
+      depths.put(entry.getKey(), entry.getValue().getDepth());
+    }
+    return depths;
+  }
+
+  @Override
+  public long getFilesWalked() {
+    return filesWalked.sum();
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  @Override
+  public long getLinesParsed() {
+    return linesParsed.sum();
+  }
+
+  @Override
+  public long getLinesRejected() {
+    return linesRejected.sum();
+  }
+
+  @Override
+  public long getTransfersApplied() {
+    return applied[Transaction.OperationType.TRANSFERRED.ordinal()].sum();
+  }
+
+  @Override
+  public long getWithdrawalsApplied() {
+    return applied[Transaction.OperationType.WITHDREW.ordinal()].sum();
+  }
+
+  @Override
+  public long getBalanceInquiriesApplied() {
+    return applied[Transaction.OperationType.BALANCE_INQUIRY.ordinal()].sum();
+  }
+
+  @Override
+  public long getFailedTransactions() {
+    return failedTransactions.sum();
+  }
+
+  @Override
+  public long getDuplicatesDropped() {
+    return duplicatesDropped.sum();
+  }
+
+  @Override
+  public long getUsersWritten() {
+    return usersWritten.sum();
+  }
+
+  @Override
+  public long getPeakUsers() {
+    return peakUsers.get();
+  }
+
+  @Override
+  public long getPeakRetainedTransactions() {
+    return peakRetainedTransactions.get();
+  }
+
+  @Override
+  public long getParseTimeP99Micros() {
+    return fileParseNanos.getPercentile(99) / NANOS_PER_MICRO;
+  }
+
+  @Override
+  public long getWriteTimeP99Micros() {
+    return userWriteNanos.getPercentile(99) / NANOS_PER_MICRO;
+  }
+
+  /**
+   * Возвращает время с момента запуска в миллисекундах.
+   *
+   * @return время работы
+   */
+  public long getElapsedMillis() {
+    return (System.nanoTime() - startNanos) / 1_000_000;
+  }
+
+  /**
+   * Формирует краткую строку прогресса.
+   *
+   * @return строка прогресса
+   */
+  public String progressLine() {
+    long elapsed = Math.max(1, getElapsedMillis());
+    long lines = getLinesParsed();
+    return String.format("[progress] %ds files=%d bytes=%d lines=%d rejected=%d lines/s=%d"
+            + " users=%d written=%d",
+        elapsed / 1000, getFilesWalked(), getBytesRead(), lines, getLinesRejected(),
+        lines * 1000 / elapsed, getPeakUsers(), getUsersWritten()) + queuesLine();
+  }
+
+  private String queuesLine() {
+    if (queues.isEmpty()) {
+      return "";
+    }
+    StringBuilder line = new StringBuilder(" queues=");
+    for (Map.Entry<String, QueueGauge> entry : queues.entrySet()) {
+      if (line.length() > " queues=".length()) {
+        line.append(',');
+      }
+      line.append(entry.getKey()).append(':').append(entry.getValue().getDepth())
+          .append('/').append(entry.getValue().getCapacity());
+    }
+    return line.toString();
+  }
+
+  @Override
+  public String getSummaryJson() {
+    StringBuilder json = new StringBuilder(512);
+    json.append("{\"elapsedMillis\":").append(getElapsedMillis())
+        .append(",\"filesWalked\":").append(getFilesWalked())
+        .append(",\"bytesRead\":").append(getBytesRead())
+        .append(",\"linesParsed\":").append(getLinesParsed())
+        .append(",\"linesRejected\":").append(getLinesRejected())
+        .append(",\"transactionsApplied\":{\"transferred\":").append(getTransfersApplied())
+        .append(",\"withdrew\":").append(getWithdrawalsApplied())
+        .append(",\"balanceInquiry\":").append(getBalanceInquiriesApplied())
+        .append("},\"failedTransactions\":").append(getFailedTransactions())
+        .append(",\"duplicatesDropped\":").append(getDuplicatesDropped())
+        .append(",\"usersWritten\":").append(getUsersWritten())
+        .append(",\"peakUsers\":").append(getPeakUsers())
+        .append(",\"peakRetainedTransactions\":").append(getPeakRetainedTransactions())
+        .append(",\"fileParseMicros\":");
+    fileParseNanos.appendJson(json, NANOS_PER_MICRO);
+    json.append(",\"userWriteMicros\":");
+    userWriteNanos.appendJson(json, NANOS_PER_MICRO);
+    if (!queues.isEmpty()) {
+      json.append(",\"queues\":{");
+      boolean first = true;
+      for (Map.Entry<String, QueueGauge> entry : queues.entrySet()) {
+        QueueGauge gauge = entry.getValue();
+        json.append(first ? "" : ",").append('"').append(entry.getKey())
+            .append("\":{\"depth\":").append(gauge.getDepth())
+            .append(",\"maxDepth\":").append(gauge.getMaxDepth())
+            .append(",\"capacity\":").append(gauge.getCapacity()).append('}');
+        first = false;
+      }
+      json.append('}');
+    }
+    return json.append('}').toString();
+  }
+}
@@ -0,0 +1,51 @@
+package org.webbee.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX-интерфейс метрик анализатора, регистрируется под именем
+ * {@value AnalyzerMetrics#OBJECT_NAME}.
+ */
+public interface AnalyzerMetricsMXBean {
+  long getFilesWalked();
+
+  long getBytesRead();
+
+  long getLinesParsed();
+
+  long getLinesRejected();
+
+  long getTransfersApplied();
+
+  long getWithdrawalsApplied();
+
+  long getBalanceInquiriesApplied();
+
+  long getFailedTransactions();
+
+  long getDuplicatesDropped();
+
+  long getUsersWritten();
+
+  long getPeakUsers();
+
+  long getPeakRetainedTransactions();
+
+  long getParseTimeP99Micros();
+
+  long getWriteTimeP99Micros();
+
+  /**
+   * Возвращает текущую глубину очередей между этапами потокового конвейера.
+   *
+   * @return глубина по имени этапа, пустая Map вне потокового режима
+   */
+  Map<String, Long> getQueueDepths();
+
+  /**
+   * Возвращает все метрики в формате JSON.
+   *
+   * @return JSON-сводка
+   */
+  String getSummaryJson();
+}
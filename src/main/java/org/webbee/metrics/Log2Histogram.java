@@ -0,0 +1,85 @@
+package org.webbee.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Потокобезопасная гистограмма неотрицательных значений с корзинами по степеням двойки.
+ *
+ * <p>Корзина {@code i} содержит значения из диапазона {@code [2^(i-1), 2^i)},
+ * корзина 0 - нули. Запись значения - несколько атомарных операций без блокировок,
+ * перцентили вычисляются с точностью до верхней границы корзины.
+ */
+public final class Log2Histogram {
+  private static final int BUCKETS = Long.SIZE;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Записывает значение. Отрицательные значения считаются нулем.
+   *
+   * @param value значение
+   */
+  public void record(long value) {
+    long normalized = Math.max(0, value);
+    buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(normalized));
+    count.increment();
+    sum.add(normalized);
+    max.accumulateAndGet(normalized, Math::max);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSum() {
+    return sum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Возвращает приближенное значение перцентиля.
+   *
+   * @param percentile перцентиль от 0 до 100
+   * @return верхняя граница корзины, в которую попадает перцентиль, но не больше максимума
+   */
+  public long getPercentile(double percentile) {
+    long total = getCount();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        long upper = i == 0 ? 0 : i >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+        return Math.min(upper, getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Записывает гистограмму в виде JSON-объекта.
+   *
+   * @param json   буфер для записи
+   * @param divisor делитель для перевода значений в единицы вывода
+   */
+  void appendJson(StringBuilder json, long divisor) {
+    json.append("{\"count\":").append(getCount())
+        .append(",\"sum\":").append(getSum() / divisor)
+        .append(",\"p50\":").append(getPercentile(50) / divisor)
+        .append(",\"p90\":").append(getPercentile(90) / divisor)
+        .append(",\"p99\":").append(getPercentile(99) / divisor)
+        .append(",\"max\":").append(getMax() / divisor)
+        .append('}');
+  }
+}
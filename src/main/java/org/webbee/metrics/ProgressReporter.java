@@ -0,0 +1,51 @@
+package org.webbee.metrics;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Периодический вывод строки прогресса в stderr из отдельного потока-демона.
+ */
+public class ProgressReporter implements Closeable {
+  private final AnalyzerMetrics metrics;
+  private final long intervalMillis;
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Создает вывод прогресса. Вывод начинается после вызова {@link #start()}.
+   *
+   * @param metrics        метрики для вывода
+   * @param intervalMillis интервал вывода в миллисекундах
+   * @throws IllegalArgumentException если интервал неположительный
+   */
+  public ProgressReporter(AnalyzerMetrics metrics, long intervalMillis) {
+    if (intervalMillis <= 0) {
+      throw new IllegalArgumentException("Progress interval must be positive");
+    }
+    this.metrics = metrics;
+    this.intervalMillis = intervalMillis;
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "progress-reporter");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Запускает периодический вывод прогресса.
+   */
+  public void start() {
+    scheduler.scheduleAtFixedRate(() -> System.err.println(metrics.progressLine()),
+        intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Останавливает вывод прогресса.
+   */
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+}
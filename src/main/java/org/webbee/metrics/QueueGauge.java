@@ -0,0 +1,40 @@
+package org.webbee.metrics;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Глубина очереди между этапами конвейера: текущая, наибольшая и емкость.
+ */
+public final class QueueGauge {
+  private final BlockingQueue<?> queue;
+  private final int capacity;
+  private final AtomicLong maxDepth = new AtomicLong();
+
+  QueueGauge(BlockingQueue<?> queue) {
+    this.queue = queue;
+    this.capacity = queue.size() + queue.remainingCapacity();
+  }
+
+  /**
+   * Учитывает текущую глубину очереди в наибольшей. Вызывается после добавления элемента.
+   */
+  public void observe() {
+    long depth = queue.size();
+    if (depth > maxDepth.get()) {
+      maxDepth.accumulateAndGet(depth, Math::max);
+    }
+  }
+
+  public long getDepth() {
+    return queue.size();
+  }
+
+  public long getMaxDepth() {
+    return maxDepth.get();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+}
@@ -0,0 +1,88 @@
+package org.webbee.model;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Кодирование сумм и типов операций в столбцы примитивов.
+ *
+ * <p>Общее для {@link TransactionColumns} и {@link CompactTransactionLog}, чтобы
+ * их столбцы можно было копировать друг в друга без перекодирования:
+ * <ul>
+ *   <li>сумма - целым числом минимальных единиц и масштабом; суммы, не помещающиеся
+ *       в long или с масштабом вне диапазона byte, хранятся в отдельном списке,
+ *       в столбце сумм - их номер, а вместо масштаба {@link #OVERFLOW_SCALE};</li>
+ *   <li>тип операции - порядковым номером {@link Transaction.OperationType}.</li>
+ * </ul>
+ */
+final class ColumnCodec {
+  /** Признак суммы, хранящейся в списке переполнения. */
+  static final byte OVERFLOW_SCALE = Byte.MIN_VALUE;
+  private static final Transaction.OperationType[] OPERATION_TYPES =
+      Transaction.OperationType.values();
+
+  private ColumnCodec() {
+  }
+
+  /**
+   * Записывает сумму в строку столбцов.
+   *
+   * @param amounts  столбец сумм
+   * @param scales   столбец масштабов
+   * @param index    номер строки
+   * @param amount   сумма
+   * @param overflow список переполнения или {@code null}, если он еще не создан
+   * @return список переполнения, созданный при необходимости
+   */
+  static List<BigDecimal> storeAmount(long[] amounts, byte[] scales, int index,
+                                      BigDecimal amount, List<BigDecimal> overflow) {
+    int scale = amount.scale();
+    if (amount.unscaledValue().bitLength() < Long.SIZE && scale > OVERFLOW_SCALE
+        && scale <= Byte.MAX_VALUE) {
+      amounts[index] = amount.unscaledValue().longValue();
+      scales[index] = (byte) scale;
+      return overflow;
+    }
+    List<BigDecimal> result = overflow == null ? new ArrayList<>() : overflow;
+    amounts[index] = result.size();
+    scales[index] = OVERFLOW_SCALE;
+    result.add(amount);
+    return result;
+  }
+
+  /**
+   * Читает сумму из строки столбцов.
+   *
+   * @param amounts  столбец сумм
+   * @param scales   столбец масштабов
+   * @param index    номер строки
+   * @param overflow список переполнения
+   * @return сумма
+   */
+  static BigDecimal loadAmount(long[] amounts, byte[] scales, int index,
+                               List<BigDecimal> overflow) {
+    if (scales[index] == OVERFLOW_SCALE) {
+      return overflow.get((int) amounts[index]);
+    }
+    return BigDecimal.valueOf(amounts[index], scales[index]);
+  }
+
+  static byte encodeOperation(Transaction.OperationType operationType) {
+    return (byte) operationType.ordinal();
+  }
+
+  /**
+   * Возвращает тип операции по порядковому номеру.
+   *
+   * @param operation порядковый номер
+   * @return тип операции
+   * @throws IllegalArgumentException если номер неизвестен
+   */
+  static Transaction.OperationType decodeOperation(int operation) {
+    if (operation < 0 || operation >= OPERATION_TYPES.length) {
+      throw new IllegalArgumentException("Unknown operation type: " + operation);
+    }
+    return OPERATION_TYPES[operation];
+  }
+}
@@ -0,0 +1,256 @@
+package org.webbee.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Компактное хранилище истории транзакций одного пользователя.
+ *
+ * <p>Транзакции хранятся в столбцовых массивах примитивов в порядке добавления:
+ * <ul>
+ *   <li>время - в секундах эпохи (UTC);</li>
+ *   <li>сумма - целым числом минимальных единиц и масштабом (см. {@link ColumnCodec});</li>
+ *   <li>тип операции - порядковым номером;</li>
+ *   <li>получатель - номером в {@link UserIdTable}.</li>
+ * </ul>
+ * Инициатор транзакций не хранится: им всегда является владелец журнала.
+ * Объекты {@link Transaction} создаются только при чтении.
+ */
+public class CompactTransactionLog {
+  /** Номер получателя для операций без получателя. */
+  private static final int NO_RECIPIENT = TransactionColumns.NO_RECIPIENT;
+  private static final int INITIAL_CAPACITY = 4;
+
+  private final UserIdTable userIds;
+  private long[] timestamps = new long[INITIAL_CAPACITY];
+  private long[] amounts = new long[INITIAL_CAPACITY];
+  private byte[] scales = new byte[INITIAL_CAPACITY];
+  private byte[] operations = new byte[INITIAL_CAPACITY];
+  private int[] recipients = new int[INITIAL_CAPACITY];
+  private List<BigDecimal> overflowAmounts;
+  private int size;
+
+  /**
+   * Создает пустой журнал.
+   *
+   * @param userIds таблица символов для номеров получателей
+   */
+  public CompactTransactionLog(UserIdTable userIds) {
+    if (userIds == null) {
+      throw new IllegalArgumentException("User id table cannot be null");
+    }
+    this.userIds = userIds;
+  }
+
+  /**
+   * Добавляет транзакцию в конец журнала.
+   *
+   * @param transaction транзакция для добавления
+   */
+  public void add(Transaction transaction) {
+    ensureCapacity(size + 1);
+    timestamps[size] = transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+    storeAmount(size, transaction.getAmount());
+    operations[size] = ColumnCodec.encodeOperation(transaction.getOperationType());
+    recipients[size] = transaction.getRecipient() == null
+        ? NO_RECIPIENT : userIds.intern(transaction.getRecipient());
+    size++;
+  }
+
+  /**
+   * Добавляет в конец журнала все записи другого журнала.
+   *
+   * @param other журнал с той же таблицей символов
+   * @throws IllegalArgumentException если журналы используют разные таблицы символов
+   */
+  public void addAll(CompactTransactionLog other) {
+    if (other.userIds != userIds) {
+      throw new IllegalArgumentException("Logs must share the same user id table");
+    }
+    ensureCapacity(size + other.size);
+    System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+    System.arraycopy(other.operations, 0, operations, size, other.size);
+    System.arraycopy(other.recipients, 0, recipients, size, other.size);
+    for (int i = 0; i < other.size; i++) {
+      storeAmount(size + i, other.amount(i));
+    }
+    size += other.size;
+  }
+
+  /**
+   * Добавляет в конец журнала транзакции в столбцовом представлении без создания
+   * объектов {@link Transaction}.
+   *
+   * @param columns столбцы, номера получателей в которых выданы таблицей символов журнала
+   */
+  public void addAll(TransactionColumns columns) {
+    int count = columns.size();
+    ensureCapacity(size + count);
+    System.arraycopy(columns.getEpochSeconds(), 0, timestamps, size, count);
+    System.arraycopy(columns.getOperations(), 0, operations, size, count);
+    System.arraycopy(columns.getRecipients(), 0, recipients, size, count);
+    if (columns.getOverflowAmounts().isEmpty()) {
+      System.arraycopy(columns.getAmounts(), 0, amounts, size, count);
+      System.arraycopy(columns.getScales(), 0, scales, size, count);
+    } else {
+      for (int i = 0; i < count; i++) {
+        storeAmount(size + i, columns.amount(i));
+      }
+    }
+    size += count;
+  }
+
+  UserIdTable getUserIds() {
+    return userIds;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Возвращает представление записи журнала в виде транзакции.
+   *
+   * @param index номер записи в порядке добавления
+   * @param sender инициатор транзакции (владелец журнала)
+   * @return транзакция
+   * @throws IndexOutOfBoundsException если номер вне диапазона
+   */
+  public Transaction get(int index, String sender) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+    return new Transaction(ColumnCodec.decodeOperation(operations[index]),
+        LocalDateTime.ofEpochSecond(timestamps[index], 0, ZoneOffset.UTC),
+        sender, amount(index),
+        recipients[index] == NO_RECIPIENT ? null : userIds.name(recipients[index]));
+  }
+
+  /**
+   * Возвращает транзакции журнала, отсортированные по времени.
+   *
+   * <p>Перед чтением записи журнала упорядочиваются устойчивой сортировкой,
+   * поэтому транзакции с одинаковым временем сохраняют порядок добавления.
+   *
+   * @param sender инициатор транзакций (владелец журнала)
+   * @return новый отсортированный список транзакций
+   */
+  public List<Transaction> toSortedList(String sender) {
+    sortByTime();
+    List<Transaction> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(get(i, sender));
+    }
+    return result;
+  }
+
+  /**
+   * Упорядочивает записи журнала по времени естественной сортировкой слиянием:
+   * уже упорядоченные участки сливаются попарно, пока не останется один.
+   * Упорядоченный журнал проверяется за один проход без выделения памяти.
+   */
+  private void sortByTime() {
+    int runEnd = runEnd(null, 0);
+    if (runEnd >= size) {
+      return;
+    }
+    int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    int[] merged = new int[size];
+    int runs;
+    do {
+      runs = 0;
+      int from = 0;
+      while (from < size) {
+        int middle = runEnd(order, from);
+        int to = middle < size ? runEnd(order, middle) : size;
+        merge(order, from, middle, to, merged);
+        runs++;
+        from = to;
+      }
+      int[] swap = order;
+      order = merged;
+      merged = swap;
+    } while (runs > 1);
+    permute(order);
+  }
+
+  /**
+   * Возвращает конец неубывающего по времени участка, начинающегося с {@code from}.
+   *
+   * @param order порядок записей или {@code null} для порядка добавления
+   */
+  private int runEnd(int[] order, int from) {
+    int i = from + 1;
+    while (i < size && timestamp(order, i - 1) <= timestamp(order, i)) {
+      i++;
+    }
+    return i;
+  }
+
+  private long timestamp(int[] order, int position) {
+    return timestamps[order == null ? position : order[position]];
+  }
+
+  /**
+   * Сливает соседние участки; при равном времени первой идет запись левого участка.
+   */
+  private void merge(int[] order, int from, int middle, int to, int[] target) {
+    int left = from;
+    int right = middle;
+    for (int i = from; i < to; i++) {
+      if (right >= to || left < middle && timestamps[order[left]] <= timestamps[order[right]]) {
+        target[i] = order[left++];
+      } else {
+        target[i] = order[right++];
+      }
+    }
+  }
+
+  private void permute(int[] order) {
+    long[] sortedTimestamps = new long[size];
+    long[] sortedAmounts = new long[size];
+    byte[] sortedScales = new byte[size];
+    byte[] sortedOperations = new byte[size];
+    int[] sortedRecipients = new int[size];
+    for (int i = 0; i < size; i++) {
+      int source = order[i];
+      sortedTimestamps[i] = timestamps[source];
+      sortedAmounts[i] = amounts[source];
+      sortedScales[i] = scales[source];
+      sortedOperations[i] = operations[source];
+      sortedRecipients[i] = recipients[source];
+    }
+    timestamps = sortedTimestamps;
+    amounts = sortedAmounts;
+    scales = sortedScales;
+    operations = sortedOperations;
+    recipients = sortedRecipients;
+  }
+
+  private BigDecimal amount(int index) {
+    return ColumnCodec.loadAmount(amounts, scales, index, overflowAmounts);
+  }
+
+  private void storeAmount(int index, BigDecimal amount) {
+    overflowAmounts = ColumnCodec.storeAmount(amounts, scales, index, amount, overflowAmounts);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= timestamps.length) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, timestamps.length + (timestamps.length >> 1));
+    timestamps = Arrays.copyOf(timestamps, newCapacity);
+    amounts = Arrays.copyOf(amounts, newCapacity);
+    scales = Arrays.copyOf(scales, newCapacity);
+    operations = Arrays.copyOf(operations, newCapacity);
+    recipients = Arrays.copyOf(recipients, newCapacity);
+  }
+}
@@ -101,23 +101,23 @@ public class Transaction implements Comparable<Transaction> {
    */
   @Override
   public String toString() {
-    String formattedTime = timestamp.format(formatter);
+    StringBuilder line = new StringBuilder(64)
+        .append('[').append(timestamp.format(formatter)).append("] ").append(sender);
     switch (operationType) {
       case BALANCE_INQUIRY:
-        return String.format("[%s] %s balance inquiry %s",
-            formattedTime, this.sender,
-            amount.stripTrailingZeros().toPlainString());
+        line.append(" balance inquiry ").append(amount.stripTrailingZeros().toPlainString());
+        break;
       case TRANSFERRED:
-        return String.format("[%s] %s transferred %s to %s",
-            formattedTime, this.sender,
-            amount.stripTrailingZeros().toPlainString(), recipient);
+        line.append(" transferred ").append(amount.stripTrailingZeros().toPlainString())
+            .append(" to ").append(recipient);
+        break;
       case WITHDREW:
-        return String.format("[%s] %s withdrew %s",
-            formattedTime, this.sender,
-            amount.stripTrailingZeros().toPlainString());
+        line.append(" withdrew ").append(amount.stripTrailingZeros().toPlainString());
+        break;
       default:
         throw new IllegalStateException("Unknown operation type");
     }
+    return line.toString();
   }
   
   @Override
@@ -0,0 +1,155 @@
+package org.webbee.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Столбцовое представление истории транзакций одного пользователя.
+ *
+ * <p>Используется для переноса истории без создания объектов {@link Transaction},
+ * например при сохранении и загрузке снимка состояния. Представление совпадает
+ * с хранением в {@link CompactTransactionLog} и задается {@link ColumnCodec}:
+ * <ul>
+ *   <li>время - в секундах эпохи (UTC);</li>
+ *   <li>сумма - целым числом минимальных единиц и масштабом; суммы, не помещающиеся
+ *       в long, хранятся отдельно, а вместо масштаба записывается {@link #OVERFLOW_SCALE};</li>
+ *   <li>тип операции - порядковым номером;</li>
+ *   <li>получатель - номером в {@link UserIdTable} или {@link #NO_RECIPIENT}.</li>
+ * </ul>
+ */
+public final class TransactionColumns {
+  /** Признак суммы, не помещающейся в long; в столбце сумм хранится ее номер. */
+  public static final byte OVERFLOW_SCALE = ColumnCodec.OVERFLOW_SCALE;
+  /** Номер получателя для операций без получателя. */
+  public static final int NO_RECIPIENT = -1;
+
+  private final long[] epochSeconds;
+  private final long[] amounts;
+  private final byte[] scales;
+  private final byte[] operations;
+  private final int[] recipients;
+  private final List<BigDecimal> overflowAmounts = new ArrayList<>();
+
+  /**
+   * Создает столбцы указанного размера для заполнения.
+   *
+   * @param size количество транзакций
+   */
+  public TransactionColumns(int size) {
+    epochSeconds = new long[size];
+    amounts = new long[size];
+    scales = new byte[size];
+    operations = new byte[size];
+    recipients = new int[size];
+  }
+
+  /**
+   * Переводит транзакции в столбцовое представление.
+   *
+   * @param transactions транзакции в порядке хранения
+   * @param userIds      таблица символов для номеров получателей
+   * @return столбцы транзакций
+   */
+  public static TransactionColumns of(Collection<Transaction> transactions, UserIdTable userIds) {
+    TransactionColumns columns = new TransactionColumns(transactions.size());
+    int index = 0;
+    for (Transaction transaction : transactions) {
+      columns.epochSeconds[index] = transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+      ColumnCodec.storeAmount(columns.amounts, columns.scales, index, transaction.getAmount(),
+          columns.overflowAmounts);
+      columns.operations[index] = ColumnCodec.encodeOperation(transaction.getOperationType());
+      columns.recipients[index] = transaction.getRecipient() == null
+          ? NO_RECIPIENT : userIds.intern(transaction.getRecipient());
+      index++;
+    }
+    return columns;
+  }
+
+  public int size() {
+    return epochSeconds.length;
+  }
+
+  /**
+   * Возвращает столбец времени. Массив не копируется и может заполняться напрямую.
+   *
+   * @return время транзакций в секундах эпохи (UTC)
+   */
+  public long[] getEpochSeconds() {
+    return epochSeconds;
+  }
+
+  /**
+   * Возвращает столбец сумм в минимальных единицах. Массив не копируется.
+   *
+   * @return суммы или номера сумм в {@link #getOverflowAmounts()}
+   */
+  public long[] getAmounts() {
+    return amounts;
+  }
+
+  /**
+   * Возвращает столбец масштабов сумм. Массив не копируется.
+   *
+   * @return масштабы сумм или {@link #OVERFLOW_SCALE}
+   */
+  public byte[] getScales() {
+    return scales;
+  }
+
+  /**
+   * Возвращает столбец типов операций. Массив не копируется.
+   *
+   * @return порядковые номера {@link Transaction.OperationType}
+   */
+  public byte[] getOperations() {
+    return operations;
+  }
+
+  /**
+   * Возвращает столбец получателей. Массив не копируется.
+   *
+   * @return номера получателей или {@link #NO_RECIPIENT}
+   */
+  public int[] getRecipients() {
+    return recipients;
+  }
+
+  /**
+   * Возвращает суммы, не поместившиеся в long, в порядке номеров.
+   *
+   * @return изменяемый список сумм
+   */
+  public List<BigDecimal> getOverflowAmounts() {
+    return overflowAmounts;
+  }
+
+  /**
+   * Возвращает сумму транзакции.
+   *
+   * @param index номер транзакции
+   * @return сумма
+   */
+  public BigDecimal amount(int index) {
+    return ColumnCodec.loadAmount(amounts, scales, index, overflowAmounts);
+  }
+
+  /**
+   * Создает транзакцию по строке столбцов.
+   *
+   * @param index   номер транзакции
+   * @param sender  инициатор транзакции
+   * @param userIds таблица символов, в которой выданы номера получателей
+   * @return транзакция
+   * @throws IllegalArgumentException если тип операции или номер получателя неизвестен
+   */
+  public Transaction get(int index, String sender, UserIdTable userIds) {
+    return new Transaction(ColumnCodec.decodeOperation(operations[index]),
+        LocalDateTime.ofEpochSecond(epochSeconds[index], 0, ZoneOffset.UTC),
+        sender, amount(index),
+        recipients[index] == NO_RECIPIENT ? null : userIds.name(recipients[index]));
+  }
+}
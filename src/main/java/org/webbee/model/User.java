@@ -1,17 +1,28 @@
 package org.webbee.model;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.List;
 
 /**
  * Класс, представляющий пользователя системы с историей транзакций и балансом.
+ *
+ * <p>История накапливается в массиве в порядке добавления и сортируется по времени
+ * один раз при чтении. Сортировка устойчивая и использует уже упорядоченные участки,
+ * поэтому почти отсортированная история упорядочивается за время, близкое к линейному,
+ * а транзакции с одинаковым временем сохраняют порядок добавления.
  */
 public class User {
   private final String name;
   private BigDecimal balance;
-  private final SortedSet<Transaction> transactions = new TreeSet<>();
+  private boolean balanceInquired;
+  private static final int INITIAL_CAPACITY = 4;
+  private static final Transaction[] EMPTY = new Transaction[0];
+  private Transaction[] transactions = EMPTY;
+  private int size;
+  private boolean sorted = true;
+  private final CompactTransactionLog compactLog;
   
   /**
    * Создает нового пользователя с нулевым балансом.
@@ -20,11 +31,44 @@ public class User {
    * @throws IllegalArgumentException если имя null или пустое
    */
   public User(String name) {
+    this(name, null);
+  }
+  
+  /**
+   * Создает нового пользователя с нулевым балансом и компактным хранением
+   * истории транзакций в {@link CompactTransactionLog}.
+   *
+   * @param name    имя пользователя (не может быть null или пустым)
+   * @param userIds таблица символов для номеров получателей;
+   *                {@code null} - хранение объектов транзакций
+   * @throws IllegalArgumentException если имя null или пустое
+   */
+  public User(String name, UserIdTable userIds) {
+    this(name, userIds, BigDecimal.ZERO, false);
+  }
+  
+  /**
+   * Создает пользователя с ранее вычисленным балансом, например при восстановлении
+   * состояния из контрольной точки.
+   *
+   * @param name            имя пользователя (не может быть null или пустым)
+   * @param userIds         таблица символов для номеров получателей;
+   *                        {@code null} - хранение объектов транзакций
+   * @param balance         баланс пользователя
+   * @param balanceInquired признак того, что баланс был установлен операцией balance inquiry
+   * @throws IllegalArgumentException если имя null или пустое либо баланс null
+   */
+  public User(String name, UserIdTable userIds, BigDecimal balance, boolean balanceInquired) {
+    if (balance == null) {
+      throw new IllegalArgumentException("Balance cannot be null");
+    }
     if (name == null || name.trim().isEmpty()) {
       throw new IllegalArgumentException("Name cannot be null or empty");
     }
     this.name = name;
-    balance = BigDecimal.ZERO;
+    this.balance = balance;
+    this.balanceInquired = balanceInquired;
+    compactLog = userIds == null ? null : new CompactTransactionLog(userIds);
   }
   
   public BigDecimal getBalance() {
@@ -36,13 +80,34 @@ public class User {
   }
   
   /**
-   * Возвращает неизменяемый набор транзакций пользователя.
-   * Транзакции отсортированы по времени выполнения.
+   * Возвращает признак того, что баланс был установлен операцией balance inquiry.
+   *
+   * @return {@code true}, если баланс не зависит от предыдущего состояния
+   */
+  public boolean isBalanceInquired() {
+    return balanceInquired;
+  }
+  
+  /**
+   * Возвращает неизменяемый список транзакций пользователя.
+   * Транзакции отсортированы по времени выполнения, транзакции с одинаковым
+   * временем - в порядке добавления.
    *
-   * @return неизменяемый набор транзакций
+   * <p>При первом вызове после добавления транзакций не по порядку история сортируется.
+   * При компактном хранении список создается из журнала при каждом вызове.
+   *
+   * @return неизменяемый список транзакций
    */
-  public SortedSet<Transaction> getTransactionLogs() {
-    return Collections.unmodifiableSortedSet(transactions);
+  public List<Transaction> getTransactionLogs() {
+    if (compactLog != null) {
+      return Collections.unmodifiableList(compactLog.toSortedList(name));
+    }
+    if (!sorted) {
+      // Arrays.sort для объектов - устойчивая сортировка слиянием серий (TimSort)
+      Arrays.sort(transactions, 0, size);
+      sorted = true;
+    }
+    return Collections.unmodifiableList(Arrays.asList(transactions).subList(0, size));
   }
   
   /**
@@ -56,6 +121,7 @@ public class User {
       throw new IllegalArgumentException("Amount cannot be null");
     }
     balance = amount;
+    balanceInquired = true;
   }
   
   /**
@@ -66,9 +132,7 @@ public class User {
    * @throws IllegalArgumentException если amount неположительный или recipient null
    */
   public void transfer(BigDecimal amount, User recipient) {
-    if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
-      throw new IllegalArgumentException("Amount must be positive");
-    }
+    requirePositive(amount);
     if (recipient == null) {
       throw new IllegalArgumentException("Recipient cannot be null");
     }
@@ -76,6 +140,29 @@ public class User {
     recipient.balance = recipient.balance.add(amount);
   }
   
+  /**
+   * Списывает перевод пользователю, состояние которого ведется в другом месте,
+   * например в другой части при разбиении по пользователям.
+   *
+   * @param amount сумма перевода (должна быть положительной)
+   * @throws IllegalArgumentException если amount неположительный
+   */
+  public void debit(BigDecimal amount) {
+    requirePositive(amount);
+    balance = balance.subtract(amount);
+  }
+  
+  /**
+   * Зачисляет перевод от пользователя, состояние которого ведется в другом месте.
+   *
+   * @param amount сумма перевода (должна быть положительной)
+   * @throws IllegalArgumentException если amount неположительный
+   */
+  public void credit(BigDecimal amount) {
+    requirePositive(amount);
+    balance = balance.add(amount);
+  }
+  
   /**
    * Выполняет снятие средств с баланса пользователя.
    *
@@ -89,11 +176,93 @@ public class User {
    * Добавляет транзакцию в историю операций пользователя.
    *
    * @param transaction транзакция для добавления
-   * @throws IllegalArgumentException если transaction null
+   * @throws IllegalArgumentException если transaction null или, при компактном
+   *                                  хранении, инициатор транзакции - другой пользователь
    */
   public void addTransaction(Transaction transaction) {
-    transactions.add(transaction);
+    if (compactLog == null) {
+      append(transaction);
+      return;
+    }
+    if (transaction == null || !name.equals(transaction.getSender())) {
+      throw new IllegalArgumentException("Transaction must be initiated by user " + name);
+    }
+    compactLog.add(transaction);
+  }
+  
+  /**
+   * Добавляет в историю транзакции пользователя в столбцовом представлении.
+   *
+   * <p>При компактном хранении столбцы копируются в журнал без создания
+   * объектов {@link Transaction}.
+   *
+   * @param columns столбцы транзакций, инициатор которых - этот пользователь
+   * @param userIds таблица символов, в которой выданы номера получателей; при компактном
+   *                хранении должна совпадать с таблицей журнала пользователя
+   * @throws IllegalArgumentException если при компактном хранении таблицы символов различаются
+   */
+  public void addTransactions(TransactionColumns columns, UserIdTable userIds) {
+    if (compactLog == null) {
+      for (int i = 0; i < columns.size(); i++) {
+        append(columns.get(i, name, userIds));
+      }
+    } else if (compactLog.getUserIds() == userIds) {
+      compactLog.addAll(columns);
+    } else {
+      throw new IllegalArgumentException("Columns must use the user id table of the log");
+    }
+  }
+  
+  /**
+   * Объединяет с пользователем частичное состояние, полученное из последующих файлов.
+   *
+   * <p>Если в частичном состоянии была операция balance inquiry, итоговый баланс
+   * берется из него, иначе изменения баланса суммируются. Транзакции добавляются
+   * после текущих, как при последовательной обработке.
+   *
+   * @param later состояние того же пользователя, накопленное после текущего
+   * @throws IllegalArgumentException если later null или принадлежит другому пользователю
+   */
+  public void mergeFrom(User later) {
+    if (later == null || !name.equals(later.name)) {
+      throw new IllegalArgumentException("Cannot merge state of another user");
+    }
+    if (later.balanceInquired) {
+      balance = later.balance;
+      balanceInquired = true;
+    } else {
+      balance = balance.add(later.balance);
+    }
+    if (compactLog != null && later.compactLog != null) {
+      compactLog.addAll(later.compactLog);
+    } else if (later.compactLog != null) {
+      for (Transaction transaction : later.getTransactionLogs()) {
+        addTransaction(transaction);
+      }
+    } else {
+      for (int i = 0; i < later.size; i++) {
+        addTransaction(later.transactions[i]);
+      }
+    }
   }
   
+  private static void requirePositive(BigDecimal amount) {
+    if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+      throw new IllegalArgumentException("Amount must be positive");
+    }
+  }
   
+  private void append(Transaction transaction) {
+    if (transaction == null) {
+      throw new IllegalArgumentException("Transaction cannot be null");
+    }
+    if (size == transactions.length) {
+      transactions = Arrays.copyOf(transactions,
+          Math.max(INITIAL_CAPACITY, size + (size >> 1)));
+    }
+    if (sorted && size > 0 && transaction.compareTo(transactions[size - 1]) < 0) {
+      sorted = false;
+    }
+    transactions[size++] = transaction;
+  }
 }
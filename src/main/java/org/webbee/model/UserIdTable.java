@@ -0,0 +1,72 @@
+package org.webbee.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Таблица символов, сопоставляющая идентификаторам пользователей целые номера.
+ *
+ * <p>Номера выдаются последовательно начиная с 0 и не меняются. Таблица
+ * потокобезопасна и может использоваться несколькими агрегаторами одновременно.
+ */
+public class UserIdTable {
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  private volatile String[] names = new String[16];
+  private int size;
+
+  /**
+   * Возвращает номер пользователя, регистрируя его при первом обращении.
+   *
+   * @param name идентификатор пользователя
+   * @return номер пользователя
+   * @throws IllegalArgumentException если name null
+   */
+  public int intern(String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("Name cannot be null");
+    }
+    Integer id = ids.get(name);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      id = ids.get(name);
+      if (id == null) {
+        String[] current = names;
+        if (size == current.length) {
+          current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = name;
+        names = current;
+        id = size++;
+        ids.put(name, id);
+      }
+      return id;
+    }
+  }
+
+  /**
+   * Возвращает идентификатор пользователя по номеру.
+   *
+   * @param id номер, выданный методом {@link #intern(String)}
+   * @return идентификатор пользователя
+   * @throws IllegalArgumentException если номер не выдавался
+   */
+  public String name(int id) {
+    String[] current = names;
+    if (id < 0 || id >= current.length || current[id] == null) {
+      throw new IllegalArgumentException("Unknown user id: " + id);
+    }
+    return current[id];
+  }
+
+  /**
+   * Возвращает количество зарегистрированных пользователей.
+   *
+   * @return количество пользователей
+   */
+  public int size() {
+    return ids.size();
+  }
+}
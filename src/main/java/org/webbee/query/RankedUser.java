@@ -0,0 +1,37 @@
+package org.webbee.query;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+
+/**
+ * Пользователь и значение, по которому он ранжирован.
+ */
+public final class RankedUser {
+  /**
+   * Порядок по значению, при равенстве - по имени в обратном порядке,
+   * чтобы в начале результата оказывались имена по алфавиту.
+   */
+  static final Comparator<RankedUser> ORDER = Comparator.comparing(RankedUser::getValue)
+      .thenComparing(RankedUser::getUserName, Comparator.reverseOrder());
+
+  private final String userName;
+  private final BigDecimal value;
+
+  RankedUser(String userName, BigDecimal value) {
+    this.userName = userName;
+    this.value = value;
+  }
+
+  public String getUserName() {
+    return userName;
+  }
+
+  public BigDecimal getValue() {
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return userName + " " + value.stripTrailingZeros().toPlainString();
+  }
+}
@@ -0,0 +1,62 @@
+package org.webbee.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Отбор N наибольших элементов с ограниченной кучей.
+ *
+ * <p>Хранит не более N элементов в куче с наименьшим элементом в вершине:
+ * добавление стоит O(log N), память - O(N) независимо от количества кандидатов.
+ *
+ * @param <T> тип элементов
+ */
+public final class TopN<T> {
+  private final int limit;
+  private final Comparator<? super T> order;
+  private final PriorityQueue<T> heap;
+
+  /**
+   * Создает отбор.
+   *
+   * @param limit количество сохраняемых элементов
+   * @param order порядок, в котором больший элемент предпочтительнее
+   * @throws IllegalArgumentException если limit меньше 1
+   */
+  public TopN(int limit, Comparator<? super T> order) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit must be positive");
+    }
+    this.limit = limit;
+    this.order = order;
+    this.heap = new PriorityQueue<>(Math.min(limit, 1024), order);
+  }
+
+  /**
+   * Предлагает элемент для отбора.
+   *
+   * @param candidate элемент
+   */
+  public void offer(T candidate) {
+    if (heap.size() < limit) {
+      heap.add(candidate);
+    } else if (order.compare(candidate, heap.peek()) > 0) {
+      heap.poll();
+      heap.add(candidate);
+    }
+  }
+
+  /**
+   * Возвращает отобранные элементы от наибольшего к наименьшему.
+   *
+   * @return новый список элементов
+   */
+  public List<T> result() {
+    List<T> result = new ArrayList<>(heap);
+    result.sort(Collections.reverseOrder(order));
+    return result;
+  }
+}
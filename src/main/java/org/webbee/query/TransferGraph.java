@@ -0,0 +1,109 @@
+package org.webbee.query;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.webbee.model.Transaction;
+
+/**
+ * Граф переводов: для каждой пары отправитель - получатель количество и сумма переводов.
+ *
+ * <p>Строится по записям TRANSFERRED из истории отправителей. Хранит прямые
+ * и обратные списки смежности, поэтому контрагенты пользователя в обе
+ * стороны находятся за O(1).
+ */
+public final class TransferGraph {
+  private final Map<String, Map<String, Edge>> outgoing = new HashMap<>();
+  private final Map<String, Map<String, Edge>> incoming = new HashMap<>();
+
+  /**
+   * Строит граф по индексам истории пользователей.
+   *
+   * @param indexes индексы истории пользователей
+   * @param from    начало интервала включительно или {@code null}
+   * @param to      конец интервала исключительно или {@code null}
+   * @return граф переводов за интервал
+   */
+  public static TransferGraph of(Collection<UserTimeIndex> indexes, LocalDateTime from,
+                                 LocalDateTime to) {
+    TransferGraph graph = new TransferGraph();
+    for (UserTimeIndex index : indexes) {
+      for (Transaction transaction : index.range(from, to)) {
+        if (transaction.getOperationType() == Transaction.OperationType.TRANSFERRED) {
+          graph.add(transaction.getSender(), transaction.getRecipient(),
+              transaction.getAmount());
+        }
+      }
+    }
+    return graph;
+  }
+
+  private void add(String sender, String recipient, BigDecimal amount) {
+    Edge edge = outgoing.computeIfAbsent(sender, name -> new TreeMap<>())
+        .computeIfAbsent(recipient, name -> new Edge(sender, recipient));
+    edge.count++;
+    edge.volume = edge.volume.add(amount);
+    incoming.computeIfAbsent(recipient, name -> new TreeMap<>()).put(sender, edge);
+  }
+
+  /**
+   * Возвращает получателей переводов пользователя.
+   *
+   * @param sender имя отправителя
+   * @return неизменяемая Map ребер графа, упорядоченная по имени получателя
+   */
+  public Map<String, Edge> getRecipients(String sender) {
+    return Collections.unmodifiableMap(outgoing.getOrDefault(sender, Collections.emptyMap()));
+  }
+
+  /**
+   * Возвращает отправителей переводов пользователю.
+   *
+   * @param recipient имя получателя
+   * @return неизменяемая Map ребер графа, упорядоченная по имени отправителя
+   */
+  public Map<String, Edge> getSenders(String recipient) {
+    return Collections.unmodifiableMap(incoming.getOrDefault(recipient, Collections.emptyMap()));
+  }
+
+  /**
+   * Переводы от одного пользователя другому.
+   */
+  public static final class Edge {
+    private final String sender;
+    private final String recipient;
+    private long count;
+    private BigDecimal volume = BigDecimal.ZERO;
+
+    Edge(String sender, String recipient) {
+      this.sender = sender;
+      this.recipient = recipient;
+    }
+
+    public String getSender() {
+      return sender;
+    }
+
+    public String getRecipient() {
+      return recipient;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public BigDecimal getVolume() {
+      return volume;
+    }
+
+    @Override
+    public String toString() {
+      return sender + " -> " + recipient + " " + count + " "
+          + volume.stripTrailingZeros().toPlainString();
+    }
+  }
+}
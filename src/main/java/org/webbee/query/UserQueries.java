@@ -0,0 +1,132 @@
+package org.webbee.query;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.webbee.model.Transaction;
+import org.webbee.model.User;
+
+/**
+ * Запросы к агрегированному состоянию пользователей без повторного чтения файлов.
+ *
+ * <p>Индексы истории по времени строятся лениво для каждого пользователя
+ * и переиспользуются последующими запросами. Интервалы времени задаются
+ * полуинтервалом {@code [from, to)}, {@code null} означает отсутствие границы.
+ */
+public class UserQueries {
+  private final Map<String, User> users;
+  private final Map<String, UserTimeIndex> indexes = new ConcurrentHashMap<>();
+
+  /**
+   * Создает запросы к состоянию пользователей.
+   *
+   * @param users Map пользователей, например результат агрегации
+   */
+  public UserQueries(Map<String, User> users) {
+    this.users = users;
+  }
+
+  /**
+   * Возвращает индекс истории пользователя.
+   *
+   * @param userName имя пользователя
+   * @return индекс или {@code null}, если пользователя нет
+   */
+  public UserTimeIndex index(String userName) {
+    User user = users.get(userName);
+    return user == null ? null : indexes.computeIfAbsent(userName, name -> UserTimeIndex.of(user));
+  }
+
+  /**
+   * Возвращает транзакции пользователя за интервал.
+   *
+   * @param userName имя пользователя
+   * @param from     начало интервала включительно или {@code null}
+   * @param to       конец интервала исключительно или {@code null}
+   * @return транзакции в порядке времени, пустой список для неизвестного пользователя
+   */
+  public List<Transaction> history(String userName, LocalDateTime from, LocalDateTime to) {
+    UserTimeIndex index = index(userName);
+    return index == null ? Collections.emptyList() : index.range(from, to);
+  }
+
+  /**
+   * Возвращает пользователей с наибольшим итоговым балансом.
+   *
+   * @param limit количество пользователей
+   * @return пользователи по убыванию баланса
+   */
+  public List<RankedUser> topBalances(int limit) {
+    TopN<RankedUser> top = new TopN<>(limit, RankedUser.ORDER);
+    for (User user : users.values()) {
+      top.offer(new RankedUser(user.getName(), user.getBalance()));
+    }
+    return top.result();
+  }
+
+  /**
+   * Возвращает пользователей с наибольшей суммой исходящих переводов за интервал.
+   *
+   * @param limit количество пользователей
+   * @param from  начало интервала включительно или {@code null}
+   * @param to    конец интервала исключительно или {@code null}
+   * @return пользователи по убыванию суммы переводов
+   */
+  public List<RankedUser> topOutgoingVolume(int limit, LocalDateTime from, LocalDateTime to) {
+    TopN<RankedUser> top = new TopN<>(limit, RankedUser.ORDER);
+    for (String userName : users.keySet()) {
+      BigDecimal volume = BigDecimal.ZERO;
+      for (Transaction transaction : history(userName, from, to)) {
+        if (transaction.getOperationType() == Transaction.OperationType.TRANSFERRED) {
+          volume = volume.add(transaction.getAmount());
+        }
+      }
+      if (volume.signum() > 0) {
+        top.offer(new RankedUser(userName, volume));
+      }
+    }
+    return top.result();
+  }
+
+  /**
+   * Возвращает пользователей с наибольшей суммой входящих переводов за интервал.
+   *
+   * @param limit количество пользователей
+   * @param from  начало интервала включительно или {@code null}
+   * @param to    конец интервала исключительно или {@code null}
+   * @return пользователи по убыванию суммы полученных переводов
+   */
+  public List<RankedUser> topIncomingVolume(int limit, LocalDateTime from, LocalDateTime to) {
+    Map<String, BigDecimal> volumes = new HashMap<>();
+    for (String userName : users.keySet()) {
+      for (Transaction transaction : history(userName, from, to)) {
+        if (transaction.getOperationType() == Transaction.OperationType.TRANSFERRED) {
+          volumes.merge(transaction.getRecipient(), transaction.getAmount(), BigDecimal::add);
+        }
+      }
+    }
+    TopN<RankedUser> top = new TopN<>(limit, RankedUser.ORDER);
+    for (Map.Entry<String, BigDecimal> entry : volumes.entrySet()) {
+      top.offer(new RankedUser(entry.getKey(), entry.getValue()));
+    }
+    return top.result();
+  }
+
+  /**
+   * Строит граф переводов за интервал.
+   *
+   * @param from начало интервала включительно или {@code null}
+   * @param to   конец интервала исключительно или {@code null}
+   * @return граф переводов
+   */
+  public TransferGraph transferGraph(LocalDateTime from, LocalDateTime to) {
+    for (String userName : users.keySet()) {
+      index(userName);
+    }
+    return TransferGraph.of(indexes.values(), from, to);
+  }
+}
@@ -0,0 +1,94 @@
+package org.webbee.query;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.webbee.model.Transaction;
+import org.webbee.model.User;
+
+/**
+ * Индекс истории одного пользователя по времени.
+ *
+ * <p>Транзакции хранятся в массиве в порядке возрастания времени рядом с массивом
+ * секунд эпохи (UTC), поэтому границы диапазона находятся двоичным поиском
+ * за O(log n), а результат возвращается представлением без копирования.
+ */
+public final class UserTimeIndex {
+  private final String userName;
+  private final long[] epochSeconds;
+  private final List<Transaction> transactions;
+
+  private UserTimeIndex(String userName, Collection<Transaction> sorted) {
+    this.userName = userName;
+    Transaction[] array = sorted.toArray(new Transaction[0]);
+    this.epochSeconds = new long[array.length];
+    for (int i = 0; i < array.length; i++) {
+      epochSeconds[i] = toEpochSecond(array[i].getTimestamp());
+    }
+    this.transactions = Collections.unmodifiableList(Arrays.asList(array));
+  }
+
+  /**
+   * Строит индекс истории пользователя.
+   *
+   * @param user пользователь
+   * @return индекс его транзакций
+   */
+  public static UserTimeIndex of(User user) {
+    return new UserTimeIndex(user.getName(), user.getTransactionLogs());
+  }
+
+  public String getUserName() {
+    return userName;
+  }
+
+  public int size() {
+    return transactions.size();
+  }
+
+  /**
+   * Возвращает все транзакции пользователя в порядке времени.
+   *
+   * @return неизменяемый список транзакций
+   */
+  public List<Transaction> getTransactions() {
+    return transactions;
+  }
+
+  /**
+   * Возвращает транзакции из полуинтервала времени {@code [from, to)}.
+   *
+   * @param from начало интервала включительно или {@code null} - без ограничения
+   * @param to   конец интервала исключительно или {@code null} - без ограничения
+   * @return неизменяемый список транзакций в порядке времени
+   */
+  public List<Transaction> range(LocalDateTime from, LocalDateTime to) {
+    int start = from == null ? 0 : lowerBound(toEpochSecond(from));
+    int end = to == null ? epochSeconds.length : lowerBound(toEpochSecond(to));
+    return start >= end ? Collections.emptyList() : transactions.subList(start, end);
+  }
+
+  /**
+   * Находит индекс первой транзакции со временем не раньше указанного.
+   */
+  private int lowerBound(long epochSecond) {
+    int low = 0;
+    int high = epochSeconds.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (epochSeconds[middle] < epochSecond) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private static long toEpochSecond(LocalDateTime timestamp) {
+    return timestamp.toEpochSecond(ZoneOffset.UTC);
+  }
+}
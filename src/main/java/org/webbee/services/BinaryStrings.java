@@ -0,0 +1,42 @@
+package org.webbee.services;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Строки во временных и индексных двоичных файлах: int длина в байтах,
+ * затем байты UTF-8.
+ *
+ * <p>В отличие от {@link DataOutput#writeUTF(String)}, длина строки не ограничена
+ * 65535 байтами, поэтому записи с очень длинными суммами или именами
+ * пользователей обрабатываются так же, как в основном режиме.
+ */
+final class BinaryStrings {
+  private BinaryStrings() {
+  }
+
+  static void write(DataOutput out, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Читает строку, записанную {@link #write(DataOutput, String)}.
+   *
+   * @param in источник
+   * @return прочитанная строка
+   * @throws IOException если длина отрицательна или данные закончились раньше
+   */
+  static String read(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Invalid string length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
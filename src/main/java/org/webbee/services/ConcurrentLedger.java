@@ -0,0 +1,270 @@
+package org.webbee.services;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import org.webbee.model.Transaction;
+
+/**
+ * Потокобезопасная таблица балансов пользователей для параллельного применения транзакций.
+ *
+ * <p>Пользователи хранятся в {@link ConcurrentHashMap}, а баланс каждого пользователя
+ * меняется и читается только под блокировкой его полосы:
+ * <ul>
+ *   <li>withdrew и balance inquiry захватывают полосу одного пользователя;</li>
+ *   <li>transferred захватывает полосы обоих участников в порядке возрастания номера,
+ *       поэтому взаимных блокировок нет, а перевод атомарен относительно любых
+ *       других операций над отправителем и получателем;</li>
+ *   <li>{@link #snapshot()} захватывает все полосы и видит согласованное состояние.</li>
+ * </ul>
+ *
+ * <p>Списания и переводы коммутативны, поэтому итоговые балансы совпадают
+ * с последовательной обработкой при любом чередовании потоков. Операция
+ * balance inquiry устанавливает баланс, и результат совпадает с последовательным,
+ * только если все операции с участием этого пользователя, включая входящие переводы,
+ * применяются одним потоком в исходном порядке.
+ *
+ * <p>Конвейеры приложения таблицу не используют: для файлов пользователей нужна
+ * история транзакций, которой таблица не хранит, а режим {@code --workers} обрабатывает
+ * диапазоны файлов независимыми агрегаторами и объединяет их в порядке обхода, что
+ * сохраняет семантику balance inquiry без блокировок. Таблица предназначена для
+ * встраивания там, где нужны только балансы.
+ */
+public class ConcurrentLedger {
+  /** Количество полос блокировок по умолчанию. */
+  public static final int DEFAULT_STRIPES = 256;
+
+  private final Map<String, Balance> balances = new ConcurrentHashMap<>();
+  private final ReentrantLock[] stripes;
+
+  /**
+   * Создает таблицу с количеством полос блокировок по умолчанию.
+   */
+  public ConcurrentLedger() {
+    this(DEFAULT_STRIPES);
+  }
+
+  /**
+   * Создает таблицу с указанным количеством полос блокировок.
+   *
+   * @param stripeCount количество полос, округляется вверх до степени двойки
+   * @throws IllegalArgumentException если stripeCount меньше 1
+   */
+  public ConcurrentLedger(int stripeCount) {
+    if (stripeCount < 1) {
+      throw new IllegalArgumentException("Stripe count must be positive");
+    }
+    int size = Integer.highestOneBit(stripeCount);
+    if (size < stripeCount) {
+      size <<= 1;
+    }
+    stripes = new ReentrantLock[size];
+    for (int i = 0; i < size; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Применяет транзакцию.
+   *
+   * @param transaction транзакция для применения
+   * @throws IllegalArgumentException если тип операции неизвестен или сумма перевода
+   *                                  неположительна
+   * @throws NullPointerException     если транзакция равна null
+   */
+  public void apply(Transaction transaction) {
+    Objects.requireNonNull(transaction, "Transaction cannot be null");
+    switch (transaction.getOperationType()) {
+      case WITHDREW:
+        withdraw(transaction.getSender(), transaction.getAmount());
+        break;
+      case BALANCE_INQUIRY:
+        balanceInquiry(transaction.getSender(), transaction.getAmount());
+        break;
+      case TRANSFERRED:
+        transfer(transaction.getSender(), transaction.getRecipient(), transaction.getAmount());
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown operation type: "
+            + transaction.getOperationType());
+    }
+  }
+
+  /**
+   * Списывает сумму с баланса пользователя.
+   *
+   * @param userName имя пользователя
+   * @param amount   сумма снятия
+   */
+  public void withdraw(String userName, BigDecimal amount) {
+    Balance account = account(userName);
+    ReentrantLock lock = stripes[stripe(userName)];
+    lock.lock();
+    try {
+      account.amount = account.amount.subtract(amount);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Устанавливает баланс пользователя.
+   *
+   * @param userName имя пользователя
+   * @param amount   новое значение баланса
+   * @throws IllegalArgumentException если amount null
+   */
+  public void balanceInquiry(String userName, BigDecimal amount) {
+    if (amount == null) {
+      throw new IllegalArgumentException("Amount cannot be null");
+    }
+    Balance account = account(userName);
+    ReentrantLock lock = stripes[stripe(userName)];
+    lock.lock();
+    try {
+      account.amount = amount;
+      account.inquired = true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Переводит сумму от одного пользователя другому.
+   *
+   * @param senderName    имя отправителя
+   * @param recipientName имя получателя
+   * @param amount        сумма перевода (должна быть положительной)
+   * @throws IllegalArgumentException если amount неположительный или получатель null
+   */
+  public void transfer(String senderName, String recipientName, BigDecimal amount) {
+    if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+      throw new IllegalArgumentException("Amount must be positive");
+    }
+    if (recipientName == null) {
+      throw new IllegalArgumentException("Recipient cannot be null");
+    }
+    Balance sender = account(senderName);
+    Balance recipient = account(recipientName);
+    int first = stripe(senderName);
+    int second = stripe(recipientName);
+    if (first > second) {
+      int swap = first;
+      first = second;
+      second = swap;
+    }
+    stripes[first].lock();
+    try {
+      if (second != first) {
+        stripes[second].lock();
+      }
+      try {
+        sender.amount = sender.amount.subtract(amount);
+        recipient.amount = recipient.amount.add(amount);
+      } finally {
+        if (second != first) {
+          stripes[second].unlock();
+        }
+      }
+    } finally {
+      stripes[first].unlock();
+    }
+  }
+
+  /**
+   * Возвращает баланс пользователя.
+   *
+   * @param userName имя пользователя
+   * @return баланс или {@code null}, если пользователь не встречался
+   */
+  public BigDecimal getBalance(String userName) {
+    Balance account = balances.get(userName);
+    if (account == null) {
+      return null;
+    }
+    ReentrantLock lock = stripes[stripe(userName)];
+    lock.lock();
+    try {
+      return account.amount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Возвращает признак того, что баланс пользователя установлен операцией balance inquiry.
+   *
+   * @param userName имя пользователя
+   * @return {@code true}, если у пользователя была операция balance inquiry
+   */
+  public boolean isBalanceInquired(String userName) {
+    Balance account = balances.get(userName);
+    if (account == null) {
+      return false;
+    }
+    ReentrantLock lock = stripes[stripe(userName)];
+    lock.lock();
+    try {
+      return account.inquired;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Возвращает копию балансов всех пользователей.
+   *
+   * <p>На время копирования захватываются все полосы, поэтому копия не содержит
+   * частично примененных переводов. Пользователи, впервые встреченные во время
+   * копирования, могут в нее не попасть.
+   *
+   * @return неизменяемая Map, где ключ - имя пользователя, значение - баланс
+   */
+  public Map<String, BigDecimal> snapshot() {
+    Map<String, BigDecimal> result = new HashMap<>();
+    int locked = 0;
+    try {
+      for (; locked < stripes.length; locked++) {
+        stripes[locked].lock();
+      }
+      for (Map.Entry<String, Balance> entry : balances.entrySet()) {
+        result.put(entry.getKey(), entry.getValue().amount);
+      }
+    } finally {
+      while (locked > 0) {
+        stripes[--locked].unlock();
+      }
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  public int size() {
+    return balances.size();
+  }
+
+  private Balance account(String userName) {
+    Objects.requireNonNull(userName, "User name cannot be null");
+    Balance account = balances.get(userName);
+    if (account == null) {
+      account = balances.computeIfAbsent(userName, name -> new Balance());
+    }
+    return account;
+  }
+
+  private int stripe(String userName) {
+    int hash = userName.hashCode();
+    return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+  }
+
+  /**
+   * Баланс пользователя, защищенный блокировкой полосы его имени.
+   */
+  private static final class Balance {
+    BigDecimal amount = BigDecimal.ZERO;
+    boolean inquired;
+  }
+}
@@ -10,9 +10,14 @@ import org.webbee.exceptions.DirectoryProcessingException;
 /**
  * Класс для рекурсивного чтения лог-файлов из указанной директории.
  * Реализует AutoCloseable для автоматического освобождения ресурсов.
+ *
+ * <p>Файлы ищутся через {@link FileDiscovery}. Директория вывода {@link LogWriter}
+ * не обходится, даже если находится внутри директории с логами, поэтому
+ * повторный запуск не обрабатывает результаты предыдущего.
  */
 public class DirectoryReader implements AutoCloseable {
   private final Path path;
+  private final FileDiscovery discovery;
   private Stream<Path> fileStream;
   
   /**
@@ -23,10 +28,27 @@ public class DirectoryReader implements AutoCloseable {
    * @throws IllegalArgumentException     если path равен null
    */
   public DirectoryReader(String path) throws DirectoryProcessingException {
+    this(path, new FileDiscovery());
+  }
+  
+  /**
+   * Создает новый экземпляр с указанными параметрами поиска файлов.
+   *
+   * @param path      путь к директории с лог-файлами
+   * @param discovery параметры поиска файлов
+   * @throws DirectoryProcessingException если путь не существует или не является директорией
+   * @throws IllegalArgumentException     если path или discovery равен null
+   */
+  public DirectoryReader(String path, FileDiscovery discovery)
+      throws DirectoryProcessingException {
     if (path == null) {
       throw new IllegalArgumentException("Path cannot be null");
     }
+    if (discovery == null) {
+      throw new IllegalArgumentException("Discovery cannot be null");
+    }
     this.path = Paths.get(path).toAbsolutePath();
+    this.discovery = discovery;
     if (!Files.exists(this.path)) {
       throw new DirectoryProcessingException("Directory does not exist: " + this.path);
     }
@@ -37,11 +59,37 @@ public class DirectoryReader implements AutoCloseable {
   }
   
   /**
-  * Возвращает StreamStream&lt;Path&gt; всех .log файлов в директории и поддиректориях.
+   * Возвращает абсолютный путь к директории с логами.
+   *
+   * @return путь к директории
+   */
+  public Path getDirectory() {
+    return path;
+  }
+  
+  FileDiscovery getDiscovery() {
+    return discovery;
+  }
+  
+  /**
+   * Проверяет, является ли файл лог-файлом: обычным ({@code .log})
+   * или сжатым при ротации ({@code .log.gz}).
+   *
+   * @param file путь к файлу
+   * @return {@code true}, если имя файла имеет расширение лога
+   */
+  public static boolean isLogFile(Path file) {
+    String name = file.toString();
+    return name.endsWith(".log") || name.endsWith(GzipLogReader.EXTENSION);
+  }
+  
+  /**
+  * Возвращает StreamStream&lt;Path&gt; всех .log и .log.gz файлов в директории и поддиректориях.
   *
   * <p>Каждый вызов метода закрывает предыдущий поток (если был открыт).
+  * Файлы выдаются по мере обнаружения, до завершения обхода всего дерева.
   *
-  * @return поток путей к файлам с расширением .log
+  * @return поток путей к файлам, отобранным параметрами поиска
   * @throws IOException при ошибках чтения файловой системы
   */
   
@@ -49,9 +97,7 @@ public class DirectoryReader implements AutoCloseable {
     if (fileStream != null) {
       fileStream.close();
     }
-    fileStream = Files.walk(this.path)
-        .filter(Files::isRegularFile)
-        .filter(p -> p.toString().endsWith(".log"));
+    fileStream = discovery.discover(this.path, LogWriter.getOutputDirectory());
     return fileStream;
   }
   
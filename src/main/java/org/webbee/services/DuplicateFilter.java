@@ -0,0 +1,293 @@
+package org.webbee.services;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.ZoneOffset;
+import org.webbee.model.Transaction;
+
+/**
+ * Отбрасывание повторов транзакций из пересекающихся лог-файлов.
+ *
+ * <p>Для каждой транзакции вычисляется 64-битный отпечаток времени, инициатора,
+ * типа операции, суммы и получателя. Отпечатки хранятся в хеш-таблице
+ * с открытой адресацией на массивах {@code long} вместе со временем транзакции,
+ * поэтому одна запись занимает 16 байтов без объектов. Сумма учитывается вместе
+ * с масштабом, как она записана в строке. Вероятность ложного совпадения
+ * отпечатков при миллиарде хранимых записей - порядка {@code 10^-2}.
+ *
+ * <p>Если задано окно, отпечатки транзакций, которые старше наибольшего
+ * встреченного времени больше чем на окно, удаляются перед увеличением таблицы,
+ * и повторы за пределами окна не обнаруживаются. Память тогда ограничена
+ * количеством транзакций в окне, а не объемом входных данных. Таблица не растет
+ * больше {@link #MAX_CAPACITY} ячеек, а без окна - больше
+ * {@link #UNBOUNDED_MAX_CAPACITY}: если хранимых отпечатков больше половины этого
+ * числа, проверка завершается ошибкой, и для больших входных данных окно нужно задать.
+ *
+ * <p>Отпечатки можно сохранить и загрузить в следующем запуске, чтобы повторы
+ * искались и среди ранее обработанных транзакций.
+ *
+ * <p>Фильтр не потокобезопасен: транзакции должны проверяться в порядке
+ * применения из одного потока.
+ */
+public final class DuplicateFilter {
+  /** Наибольшее количество ячеек таблицы (по 16 байтов) при заданном окне. */
+  public static final int MAX_CAPACITY = 1 << 30;
+  /** Наибольшее количество ячеек таблицы без окна - 2 ГБ. */
+  public static final int UNBOUNDED_MAX_CAPACITY = 1 << 27;
+  private static final int INITIAL_CAPACITY = 1 << 12;
+  /** Пустая ячейка; отпечаток с таким значением заменяется на {@link #ZERO_REPLACEMENT}. */
+  private static final long EMPTY = 0;
+  private static final long ZERO_REPLACEMENT = 1;
+  private static final long SEED = 0x9E3779B97F4A7C15L;
+  private static final long FNV_PRIME = 0x100000001B3L;
+
+  private final long windowSeconds;
+  private final int maxCapacity;
+  private long[] fingerprints = new long[INITIAL_CAPACITY];
+  private long[] epochSeconds = new long[INITIAL_CAPACITY];
+  private int size;
+  private long latestSecond = Long.MIN_VALUE;
+
+  /**
+   * Создает фильтр.
+   *
+   * @param windowSeconds окно обнаружения повторов в секундах, {@code 0} - без ограничения
+   * @throws IllegalArgumentException если окно отрицательное
+   */
+  public DuplicateFilter(long windowSeconds) {
+    this(windowSeconds, windowSeconds > 0 ? MAX_CAPACITY : UNBOUNDED_MAX_CAPACITY);
+  }
+
+  /**
+   * Создает фильтр с ограничением размера таблицы.
+   *
+   * @param windowSeconds окно обнаружения повторов в секундах, {@code 0} - без ограничения
+   * @param maxCapacity   наибольшее количество ячеек, степень двойки
+   * @throws IllegalArgumentException если окно отрицательное или размер не степень двойки
+   *                                  в пределах от начального до {@link #MAX_CAPACITY}
+   */
+  DuplicateFilter(long windowSeconds, int maxCapacity) {
+    if (windowSeconds < 0) {
+      throw new IllegalArgumentException("Window must not be negative");
+    }
+    if (maxCapacity < INITIAL_CAPACITY || maxCapacity > MAX_CAPACITY
+        || Integer.bitCount(maxCapacity) != 1) {
+      throw new IllegalArgumentException("Invalid maximum capacity: " + maxCapacity);
+    }
+    this.windowSeconds = windowSeconds;
+    this.maxCapacity = maxCapacity;
+  }
+
+  /**
+   * Проверяет, встречалась ли транзакция раньше, и запоминает ее.
+   *
+   * @param transaction транзакция
+   * @return {@code true}, если такая же транзакция уже была в пределах окна
+   * @throws IllegalStateException если таблица достигла наибольшего размера,
+   *                               а отпечатки в окне занимают больше ее половины
+   */
+  public boolean isDuplicate(Transaction transaction) {
+    long second = transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+    long fingerprint = fingerprint(second, transaction);
+    if (second > latestSecond) {
+      latestSecond = second;
+    }
+    return remember(fingerprint, second);
+  }
+
+  /**
+   * Возвращает количество хранимых отпечатков.
+   *
+   * @return количество отпечатков
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Записывает отпечатки, кроме устаревших, вместе со временем транзакций.
+   *
+   * @param out приемник
+   * @throws IOException если запись не удалась
+   */
+  void writeTo(DataOutput out) throws IOException {
+    int live = 0;
+    for (int i = 0; i < fingerprints.length; i++) {
+      if (fingerprints[i] != EMPTY && !isExpired(epochSeconds[i])) {
+        live++;
+      }
+    }
+    out.writeLong(latestSecond);
+    out.writeInt(live);
+    for (int i = 0; i < fingerprints.length; i++) {
+      if (fingerprints[i] != EMPTY && !isExpired(epochSeconds[i])) {
+        out.writeLong(fingerprints[i]);
+        out.writeLong(epochSeconds[i]);
+      }
+    }
+  }
+
+  /**
+   * Добавляет отпечатки, записанные {@link #writeTo(DataOutput)}.
+   *
+   * @param in источник
+   * @throws IOException           если данные повреждены или закончились раньше
+   * @throws IllegalStateException если отпечатки не помещаются в таблицу
+   */
+  void readFrom(DataInput in) throws IOException {
+    long latest = in.readLong();
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException("Invalid fingerprint count: " + count);
+    }
+    if (latest > latestSecond) {
+      latestSecond = latest;
+    }
+    for (int i = 0; i < count; i++) {
+      long fingerprint = in.readLong();
+      if (fingerprint == EMPTY) {
+        throw new IOException("Invalid fingerprint");
+      }
+      remember(fingerprint, in.readLong());
+    }
+  }
+
+  /**
+   * Удаляет все отпечатки.
+   */
+  void clear() {
+    fingerprints = new long[INITIAL_CAPACITY];
+    epochSeconds = new long[INITIAL_CAPACITY];
+    size = 0;
+    latestSecond = Long.MIN_VALUE;
+  }
+
+  /**
+   * Запоминает отпечаток с временем транзакции.
+   *
+   * @return {@code true}, если такой отпечаток уже хранился и не устарел
+   */
+  private boolean remember(long fingerprint, long second) {
+    int mask = fingerprints.length - 1;
+    for (int i = (int) fingerprint & mask; ; i = (i + 1) & mask) {
+      long stored = fingerprints[i];
+      if (stored == EMPTY) {
+        if (2L * (size + 1) > fingerprints.length) {
+          resize();
+          return remember(fingerprint, second);
+        }
+        fingerprints[i] = fingerprint;
+        epochSeconds[i] = second;
+        size++;
+        return false;
+      }
+      if (stored == fingerprint) {
+        boolean expired = isExpired(epochSeconds[i]);
+        epochSeconds[i] = second;
+        return !expired;
+      }
+    }
+  }
+
+  private boolean isExpired(long second) {
+    return windowSeconds > 0 && second < latestSecond - windowSeconds;
+  }
+
+  /**
+   * Удаляет устаревшие отпечатки и, если таблица осталась заполненной
+   * больше чем на четверть, увеличивает ее вдвое. После вызова в таблице
+   * есть место для еще одного отпечатка.
+   */
+  private void resize() {
+    long live = 0;
+    for (int i = 0; i < fingerprints.length; i++) {
+      if (fingerprints[i] != EMPTY && !isExpired(epochSeconds[i])) {
+        live++;
+      }
+    }
+    int capacity = fingerprints.length;
+    if (4 * (live + 1) > capacity) {
+      if (capacity < maxCapacity) {
+        capacity *= 2;
+      } else if (2 * (live + 1) > capacity) {
+        throw new IllegalStateException("Duplicate filter is full: " + live
+            + (windowSeconds > 0
+                ? " fingerprints within the window of " + windowSeconds
+                    + " seconds, use a smaller window"
+                : " fingerprints, set a window to bound memory"));
+      }
+    }
+    long[] oldFingerprints = fingerprints;
+    long[] oldSeconds = epochSeconds;
+    fingerprints = new long[capacity];
+    epochSeconds = new long[capacity];
+    size = 0;
+    int mask = capacity - 1;
+    for (int i = 0; i < oldFingerprints.length; i++) {
+      if (oldFingerprints[i] == EMPTY || isExpired(oldSeconds[i])) {
+        continue;
+      }
+      int slot = (int) oldFingerprints[i] & mask;
+      while (fingerprints[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      fingerprints[slot] = oldFingerprints[i];
+      epochSeconds[slot] = oldSeconds[i];
+      size++;
+    }
+  }
+
+  private static long fingerprint(long second, Transaction transaction) {
+    long hash = mix(second * SEED + transaction.getOperationType().ordinal());
+    hash = mix(hash ^ hash(transaction.getSender()));
+    hash = mix(hash ^ hash(transaction.getAmount()));
+    if (transaction.getRecipient() != null) {
+      hash = mix(hash ^ hash(transaction.getRecipient()) * SEED);
+    }
+    return hash == EMPTY ? ZERO_REPLACEMENT : hash;
+  }
+
+  /**
+   * 64-битный хеш FNV-1a символов строки.
+   */
+  private static long hash(String text) {
+    long hash = 0xCBF29CE484222325L;
+    for (int i = 0; i < text.length(); i++) {
+      hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * Хеш суммы по целому числу минимальных единиц и масштабу, как она записана в строке:
+   * значение, помещающееся в long, перемешивается целиком, большее - по байтам
+   * дополнительного кода.
+   */
+  private static long hash(BigDecimal amount) {
+    BigInteger unscaled = amount.unscaledValue();
+    long hash;
+    if (unscaled.bitLength() < Long.SIZE) {
+      hash = mix(unscaled.longValue());
+    } else {
+      hash = 0xCBF29CE484222325L;
+      for (byte b : unscaled.toByteArray()) {
+        hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+      }
+    }
+    return mix(hash ^ amount.scale() * SEED);
+  }
+
+  /**
+   * Перемешивание битов из финализатора MurmurHash3.
+   */
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xFF51AFD7ED558CCDL;
+    value ^= value >>> 33;
+    value *= 0xC4CEB93FE1A85B53L;
+    return value ^ (value >>> 33);
+  }
+}
@@ -0,0 +1,225 @@
+package org.webbee.services;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Растущий байтовый буфер для кодирования записей логов без промежуточных строк.
+ *
+ * <p>Предназначен для повторного использования одним потоком: перед кодированием
+ * очередного блока вызывается {@link #reset()}, выделенный массив сохраняется.
+ * Буфер также хранит последний записанный префикс времени: записи одного дня,
+ * минуты или секунды изменяют в нем только отличающиеся цифры.
+ */
+final class EncodeBuffer {
+  /** Наибольшее количество десятичных цифр в long. */
+  private static final int MAX_LONG_DIGITS = 19;
+  private static final long[] POWERS_OF_TEN = new long[MAX_LONG_DIGITS];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private byte[] bytes;
+  private int size;
+  private final byte[] timestamp = "[0000-00-00 00:00:00] ".getBytes(StandardCharsets.US_ASCII);
+  private int cachedDate = -1;
+  private int cachedMinute = -1;
+  private int cachedSecond = -1;
+
+  EncodeBuffer(int initialCapacity) {
+    bytes = new byte[initialCapacity];
+  }
+
+  void reset() {
+    size = 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Возвращает представление содержимого буфера без копирования.
+   */
+  ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(bytes, 0, size);
+  }
+
+  byte[] array() {
+    return bytes;
+  }
+
+  void write(byte b) {
+    ensureCapacity(size + 1);
+    bytes[size++] = b;
+  }
+
+  void write(byte[] data) {
+    ensureCapacity(size + data.length);
+    System.arraycopy(data, 0, bytes, size, data.length);
+    size += data.length;
+  }
+
+  /**
+   * Записывает строку в кодировке UTF-8, для ASCII - без промежуточного массива.
+   */
+  void write(String text) {
+    int length = text.length();
+    ensureCapacity(size + length);
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c >= 0x80) {
+        write(text.substring(i).getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      bytes[size++] = (byte) c;
+    }
+  }
+
+  /**
+   * Записывает префикс {@code [yyyy-MM-dd HH:mm:ss] }.
+   *
+   * @param year   год от 1 до 9999
+   * @param month  месяц
+   * @param day    день месяца
+   * @param hour   час
+   * @param minute минута
+   * @param second секунда
+   */
+  void writeTimestamp(int year, int month, int day, int hour, int minute, int second) {
+    int date = (year * 100 + month) * 100 + day;
+    if (date != cachedDate) {
+      putDigits(timestamp, 1, year, 4);
+      putDigits(timestamp, 6, month, 2);
+      putDigits(timestamp, 9, day, 2);
+      cachedDate = date;
+      cachedMinute = -1;
+    }
+    int minuteOfDay = hour * 60 + minute;
+    if (minuteOfDay != cachedMinute) {
+      putDigits(timestamp, 12, hour, 2);
+      putDigits(timestamp, 15, minute, 2);
+      cachedMinute = minuteOfDay;
+      cachedSecond = -1;
+    }
+    if (second != cachedSecond) {
+      putDigits(timestamp, 18, second, 2);
+      cachedSecond = second;
+    }
+    write(timestamp);
+  }
+
+  /**
+   * Записывает число так же, как {@code amount.stripTrailingZeros().toPlainString()}.
+   */
+  void writePlain(BigDecimal amount) {
+    int scale = amount.scale();
+    if (amount.signum() == 0) {
+      write((byte) '0');
+      return;
+    }
+    if (amount.precision() > MAX_LONG_DIGITS - 1) {
+      write(amount.stripTrailingZeros().toPlainString());
+      return;
+    }
+    long unscaled = amount.unscaledValue().longValue();
+    while (scale > 0 && unscaled % 10 == 0) {
+      unscaled /= 10;
+      scale--;
+    }
+    if (unscaled < 0) {
+      write((byte) '-');
+      unscaled = -unscaled;
+    }
+    writeScaled(unscaled, Math.max(scale, 0));
+    for (int i = scale; i < 0; i++) {
+      write((byte) '0');
+    }
+  }
+
+  /**
+   * Записывает число с шестью знаками после точки и округлением HALF_UP,
+   * как {@code String.format("%f", amount)} в локали с цифрами ASCII и точкой.
+   */
+  void writeFixed(BigDecimal amount) {
+    int scale = amount.scale();
+    if (amount.precision() > MAX_LONG_DIGITS - 1 || scale < -6 || scale > 6 + 17) {
+      writeFixedSlow(amount);
+      return;
+    }
+    long magnitude = Math.abs(amount.unscaledValue().longValue());
+    long scaled;
+    if (scale <= 6) {
+      long multiplier = POWERS_OF_TEN[6 - scale];
+      if (magnitude > Long.MAX_VALUE / multiplier) {
+        writeFixedSlow(amount);
+        return;
+      }
+      scaled = magnitude * multiplier;
+    } else {
+      long divisor = POWERS_OF_TEN[scale - 6];
+      scaled = magnitude / divisor;
+      if ((magnitude % divisor) * 2 >= divisor) {
+        scaled++;
+      }
+    }
+    if (amount.signum() < 0) {
+      write((byte) '-');
+    }
+    writeScaled(scaled, 6);
+  }
+
+  private void writeFixedSlow(BigDecimal amount) {
+    if (amount.signum() < 0) {
+      write((byte) '-');
+    }
+    write(amount.abs().setScale(6, RoundingMode.HALF_UP).toPlainString());
+  }
+
+  /**
+   * Записывает неотрицательное число {@code value / 10^scale} без лишних нулей
+   * в целой части и ровно с {@code scale} знаками после точки.
+   */
+  private void writeScaled(long value, int scale) {
+    int digits = 1;
+    while (digits < MAX_LONG_DIGITS && value >= POWERS_OF_TEN[digits]) {
+      digits++;
+    }
+    int integerDigits = Math.max(digits - scale, 1);
+    int length = integerDigits + (scale > 0 ? scale + 1 : 0);
+    ensureCapacity(size + length);
+    int position = size + length - 1;
+    for (int i = 0; i < scale; i++) {
+      bytes[position--] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    if (scale > 0) {
+      bytes[position--] = '.';
+    }
+    for (int i = 0; i < integerDigits; i++) {
+      bytes[position--] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    size += length;
+  }
+
+  private static void putDigits(byte[] target, int offset, int value, int width) {
+    for (int i = offset + width - 1; i >= offset; i--) {
+      target[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package org.webbee.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+import org.webbee.model.Transaction;
+import org.webbee.model.User;
+
+/**
+ * Агрегатор логов, не хранящий историю транзакций в памяти.
+ *
+ * <p>Балансы пользователей вычисляются так же, как в {@link UserLogsAggregator},
+ * а отформатированные записи накапливаются в буфере ограниченного размера.
+ * При переполнении буфер сортируется по пользователю и времени и сбрасывается
+ * во временный файл-серию. При записи результатов серии объединяются
+ * k-путевым слиянием, и файлы пользователей пишутся потоково.
+ *
+ * <p>Пиковое потребление памяти определяется бюджетом и числом пользователей,
+ * но не объемом входных данных.
+ */
+public class ExternalSortAggregator implements AutoCloseable {
+  /** Максимальное число серий, объединяемых за один проход слияния. */
+  private static final int MAX_FAN_IN = 64;
+  /** Минимальный размер буфера чтения одной серии при слиянии. */
+  private static final int MIN_READ_BUFFER = 8 * 1024;
+  /** Оценка служебных затрат памяти на одну запись в буфере. */
+  private static final int RECORD_OVERHEAD_BYTES = 96;
+
+  private final long memoryBudget;
+  private final Path tempDirectory;
+  private final List<Path> runs = new ArrayList<>();
+  private final List<SpillRecord> buffer = new ArrayList<>();
+  private final Map<String, User> users;
+  private long bufferedBytes;
+  private long sequence;
+
+  /**
+   * Создает агрегатор и сразу обрабатывает переданные файлы,
+   * сбрасывая записи во временные серии.
+   *
+   * @param paths        поток путей к файлам с логами транзакций
+   * @param memoryBudget бюджет памяти для буфера записей в байтах
+   * @param duplicates   фильтр повторов или {@code null}
+   * @throws IllegalArgumentException если бюджет неположительный
+   * @throws IOException              если не удалось создать временные файлы
+   */
+  public ExternalSortAggregator(Stream<Path> paths, long memoryBudget,
+                                DuplicateFilter duplicates) throws IOException {
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException("Memory budget must be positive");
+    }
+    this.memoryBudget = memoryBudget;
+    this.tempDirectory = Files.createTempDirectory("logs_analyzer_sort");
+    try {
+      this.users = new UserLogsAggregator(paths, this::record, duplicates).getUsers();
+      spill();
+    } catch (UncheckedIOException e) {
+      close();
+      throw e.getCause();
+    } catch (RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Объединяет серии и записывает логи всех пользователей через {@link LogWriter}.
+   *
+   * @throws IOException если произошла ошибка чтения серий или записи логов
+   */
+  public void writeUsers() throws IOException {
+    while (runs.size() > MAX_FAN_IN) {
+      List<Path> group = new ArrayList<>(runs.subList(0, MAX_FAN_IN));
+      runs.subList(0, MAX_FAN_IN).clear();
+      runs.add(mergeRuns(group));
+    }
+
+    Map<String, User> pending = new HashMap<>(users);
+    try (RunMerger merger = new RunMerger(runs, readBufferSize(runs.size()))) {
+      SpillRecord record = merger.next();
+      while (record != null) {
+        String userName = record.user;
+        try (BufferedWriter writer = LogWriter.newUserLogWriter(userName)) {
+          // Записи с одинаковым временем идут в порядке обработки
+          while (record != null && record.user.equals(userName)) {
+            writer.write(record.line);
+            writer.newLine();
+            record = merger.next();
+          }
+          LogWriter.writeFinalBalance(writer, userName, pending.remove(userName).getBalance());
+        }
+      }
+    }
+
+    for (User user : pending.values()) {
+      try (BufferedWriter writer = LogWriter.newUserLogWriter(user.getName())) {
+        LogWriter.writeFinalBalance(writer, user.getName(), user.getBalance());
+      }
+    }
+  }
+
+  /**
+   * Удаляет временные файлы-серии.
+   */
+  @Override
+  public void close() throws IOException {
+    try (Stream<Path> files = Files.list(tempDirectory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(tempDirectory);
+  }
+
+  /**
+   * Добавляет примененную транзакцию в буфер, сбрасывая его при превышении бюджета.
+   */
+  private void record(User user, Transaction transaction) {
+    String line = transaction.toString();
+    buffer.add(new SpillRecord(user.getName(),
+        transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC), sequence++, line));
+    bufferedBytes += RECORD_OVERHEAD_BYTES + 2L * line.length();
+    if (bufferedBytes >= memoryBudget) {
+      try {
+        spill();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Сортирует буфер и записывает его во временную серию.
+   */
+  private void spill() throws IOException {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    buffer.sort(SpillRecord.ORDER);
+    Path run = Files.createTempFile(tempDirectory, "run", ".bin");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(run)))) {
+      for (SpillRecord record : buffer) {
+        record.writeTo(out);
+      }
+    }
+    runs.add(run);
+    buffer.clear();
+    bufferedBytes = 0;
+  }
+
+  /**
+   * Объединяет группу серий в одну новую серию.
+   */
+  private Path mergeRuns(List<Path> group) throws IOException {
+    Path merged = Files.createTempFile(tempDirectory, "merged", ".bin");
+    try (RunMerger merger = new RunMerger(group, readBufferSize(group.size()));
+         DataOutputStream out = new DataOutputStream(
+             new BufferedOutputStream(Files.newOutputStream(merged)))) {
+      for (SpillRecord record = merger.next(); record != null; record = merger.next()) {
+        record.writeTo(out);
+      }
+    }
+    for (Path run : group) {
+      Files.delete(run);
+    }
+    return merged;
+  }
+
+  private int readBufferSize(int runCount) {
+    long perRun = memoryBudget / Math.max(1, runCount);
+    return (int) Math.max(MIN_READ_BUFFER, Math.min(perRun, 1 << 20));
+  }
+
+  /**
+   * Запись временной серии: пользователь, время, порядковый номер и строка лога.
+   */
+  private static final class SpillRecord {
+    static final Comparator<SpillRecord> ORDER = Comparator
+        .comparing((SpillRecord r) -> r.user)
+        .thenComparingLong(r -> r.epochSecond)
+        .thenComparingLong(r -> r.sequence);
+
+    final String user;
+    final long epochSecond;
+    final long sequence;
+    final String line;
+
+    SpillRecord(String user, long epochSecond, long sequence, String line) {
+      this.user = user;
+      this.epochSecond = epochSecond;
+      this.sequence = sequence;
+      this.line = line;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      out.writeBoolean(true);
+      BinaryStrings.write(out, user);
+      out.writeLong(epochSecond);
+      out.writeLong(sequence);
+      BinaryStrings.write(out, line);
+    }
+
+    static SpillRecord readFrom(DataInputStream in) throws IOException {
+      if (in.read() != 1) {
+        return null;
+      }
+      return new SpillRecord(BinaryStrings.read(in), in.readLong(), in.readLong(),
+          BinaryStrings.read(in));
+    }
+  }
+
+  /**
+   * K-путевое слияние отсортированных серий с помощью кучи.
+   */
+  private static final class RunMerger implements AutoCloseable {
+    private final List<DataInputStream> inputs = new ArrayList<>();
+    private final PriorityQueue<Head> heap;
+
+    RunMerger(List<Path> runs, int bufferSize) throws IOException {
+      heap = new PriorityQueue<>(Math.max(1, runs.size()),
+          (a, b) -> SpillRecord.ORDER.compare(a.record, b.record));
+      try {
+        for (Path run : runs) {
+          DataInputStream in = new DataInputStream(
+              new BufferedInputStream(Files.newInputStream(run), bufferSize));
+          inputs.add(in);
+          SpillRecord first = SpillRecord.readFrom(in);
+          if (first != null) {
+            heap.add(new Head(first, in));
+          }
+        }
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+
+    SpillRecord next() throws IOException {
+      Head head = heap.poll();
+      if (head == null) {
+        return null;
+      }
+      SpillRecord result = head.record;
+      SpillRecord following = SpillRecord.readFrom(head.input);
+      if (following != null) {
+        heap.add(new Head(following, head.input));
+      }
+      return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (DataInputStream in : inputs) {
+        in.close();
+      }
+    }
+  }
+
+  /**
+   * Текущая запись серии в куче слияния.
+   */
+  private static final class Head {
+    final SpillRecord record;
+    final DataInputStream input;
+
+    Head(SpillRecord record, DataInputStream input) {
+      this.record = record;
+      this.input = input;
+    }
+  }
+}
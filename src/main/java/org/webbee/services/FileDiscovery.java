@@ -0,0 +1,440 @@
+package org.webbee.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Параллельный поиск лог-файлов в дереве директорий.
+ *
+ * <p>Содержимое директорий читается задачами {@link ForkJoinPool}: задача директории
+ * читает ее записи и сразу запускает задачи поддиректорий, поэтому на сетевых файловых
+ * системах задержки чтения разных директорий перекрываются. Файлы выдаются лениво
+ * в том же порядке обхода в глубину, что и {@link Files#walk}: выдача ждет только
+ * чтения очередной директории, а не всего дерева, и обработка первых файлов начинается
+ * до завершения поиска. Порядок файлов не зависит от количества потоков.
+ *
+ * <p>Пути файлов и директорий сравниваются с шаблонами glob относительно корня поиска,
+ * {@code **} включает вложенные директории. Директория, подходящая под шаблон
+ * исключения, не читается. Файл выдается, если он подходит под один из шаблонов
+ * включения (по умолчанию - расширение лога) и ни под один шаблон исключения.
+ */
+public final class FileDiscovery {
+  /** Количество потоков чтения директорий по умолчанию. */
+  public static final int DEFAULT_PARALLELISM = 8;
+  /** Глубина без ограничения. */
+  public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+  /**
+   * Обработка символических ссылок.
+   */
+  public enum SymlinkPolicy {
+    /** Ссылки пропускаются. */
+    SKIP,
+    /** Ссылки на файлы обрабатываются, ссылки на директории не обходятся, как в Files.walk. */
+    FILES,
+    /** Ссылки на файлы и директории обрабатываются, циклы пропускаются. */
+    FOLLOW
+  }
+
+  private final List<PathMatcher> includes;
+  private final List<PathMatcher> excludes;
+  private final int maxDepth;
+  private final SymlinkPolicy symlinks;
+  private final int parallelism;
+
+  /**
+   * Создает поиск с параметрами по умолчанию: файлы {@code .log} и {@code .log.gz}
+   * на любой глубине, ссылки на директории не обходятся.
+   */
+  public FileDiscovery() {
+    this(Collections.<String>emptyList(), Collections.<String>emptyList(), UNLIMITED_DEPTH,
+        SymlinkPolicy.FILES, DEFAULT_PARALLELISM);
+  }
+
+  /**
+   * Создает поиск.
+   *
+   * @param includes    шаблоны glob включаемых файлов; пустой список - файлы
+   *                    с расширением лога
+   * @param excludes    шаблоны glob исключаемых файлов и директорий
+   * @param maxDepth    наибольшая глубина файлов относительно корня, файлы корня - глубина 1
+   * @param symlinks    обработка символических ссылок
+   * @param parallelism количество потоков чтения директорий
+   * @throws IllegalArgumentException если шаблон некорректен либо глубина
+   *                                  или количество потоков неположительные
+   */
+  public FileDiscovery(List<String> includes, List<String> excludes, int maxDepth,
+                       SymlinkPolicy symlinks, int parallelism) {
+    if (maxDepth < 1 || parallelism < 1) {
+      throw new IllegalArgumentException("Depth and parallelism must be positive");
+    }
+    this.includes = compile(includes);
+    this.excludes = compile(excludes);
+    this.maxDepth = maxDepth;
+    this.symlinks = Objects.requireNonNull(symlinks, "Symlink policy cannot be null");
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Проверяет синтаксис шаблона glob.
+   *
+   * @param pattern шаблон
+   * @throws IllegalArgumentException если шаблон некорректен
+   */
+  public static void validatePattern(String pattern) {
+    FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+  }
+
+  private static List<PathMatcher> compile(List<String> patterns) {
+    FileSystem fileSystem = FileSystems.getDefault();
+    List<PathMatcher> matchers = new ArrayList<>();
+    for (String pattern : patterns) {
+      matchers.add(fileSystem.getPathMatcher("glob:" + pattern));
+    }
+    return matchers;
+  }
+
+  /**
+   * Запускает поиск и возвращает поток найденных файлов.
+   *
+   * <p>Потоки чтения директорий завершаются после выдачи последнего файла
+   * или при закрытии возвращенного потока.
+   *
+   * @param root              корневая директория
+   * @param excludedDirectory директория, которая не обходится (например, директория
+   *                          вывода), или {@code null}
+   * @return поток абсолютных путей к файлам; ошибки чтения директорий
+   *         выбрасываются при чтении потока как {@link UncheckedIOException}
+   */
+  public Stream<Path> discover(Path root, Path excludedDirectory) {
+    Walk walk = new Walk(filter(root, excludedDirectory));
+    return StreamSupport.stream(walk, false).onClose(walk.pool::shutdownNow);
+  }
+
+  /**
+   * Создает проверку отдельных путей по тем же правилам, что и поиск, например
+   * для событий файловой системы в режиме слежения.
+   *
+   * @param root              корневая директория
+   * @param excludedDirectory директория, которая не обходится, или {@code null}
+   * @return проверка путей
+   */
+  Filter filter(Path root, Path excludedDirectory) {
+    return new Filter(root.toAbsolutePath(), excludedDirectory == null
+        ? null : excludedDirectory.toAbsolutePath().normalize());
+  }
+
+  private static Object fileKey(Path directory) {
+    if (directory == null) {
+      return null;
+    }
+    try {
+      return Files.readAttributes(directory, BasicFileAttributes.class).fileKey();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Запись директории: файл или поддиректория с задачей чтения ее содержимого.
+   */
+  private static final class Entry {
+    final Path path;
+    final Listing listing;
+
+    Entry(Path path, Listing listing) {
+      this.path = path;
+      this.listing = listing;
+    }
+  }
+
+  /**
+   * Правила отбора путей одного дерева: шаблоны, глубина, символические ссылки
+   * и исключенная директория.
+   */
+  final class Filter {
+    private final Path root;
+    private final Path excludedDirectory;
+    /** Ключ исключенной директории для распознавания ее по ссылкам. */
+    private final Object excludedKey;
+
+    Filter(Path root, Path excludedDirectory) {
+      this.root = root;
+      this.excludedDirectory = excludedDirectory;
+      this.excludedKey = symlinks == SymlinkPolicy.FOLLOW ? fileKey(excludedDirectory) : null;
+    }
+
+    /**
+     * Возвращает признак обхода ссылок на директории.
+     */
+    boolean followsLinks() {
+      return symlinks == SymlinkPolicy.FOLLOW;
+    }
+
+    /**
+     * Проверяет, выдал бы поиск этот файл.
+     *
+     * @param file путь к файлу внутри корня
+     * @return {@code true}, если файл и все директории на пути к нему проходят отбор
+     */
+    boolean acceptsFile(Path file) {
+      Path path = file.toAbsolutePath();
+      if (!acceptsParents(path)
+          || symlinks == SymlinkPolicy.SKIP && Files.isSymbolicLink(path)) {
+        return false;
+      }
+      return Files.isRegularFile(path) && isIncluded(path) && !isExcluded(path, false);
+    }
+
+    /**
+     * Проверяет, обошел бы поиск эту директорию.
+     *
+     * @param directory путь к директории внутри корня или сам корень
+     * @return {@code true}, если директория и все директории на пути к ней проходят отбор
+     */
+    boolean acceptsDirectory(Path directory) {
+      Path path = directory.toAbsolutePath();
+      if (path.normalize().equals(root.normalize())) {
+        return true;
+      }
+      return acceptsParents(path)
+          && acceptsDirectory(path, root.relativize(path).getNameCount());
+    }
+
+    private boolean acceptsParents(Path path) {
+      Path relative = root.relativize(path);
+      if (relative.startsWith("..")) {
+        return false;
+      }
+      Path directory = root;
+      for (int i = 0; i < relative.getNameCount() - 1; i++) {
+        directory = directory.resolve(relative.getName(i));
+        if (!acceptsDirectory(directory, i + 1)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Проверяет директорию на глубине depth так же, как при чтении ее родителя.
+     */
+    private boolean acceptsDirectory(Path directory, int depth) {
+      if (depth >= maxDepth || isExcluded(directory, true)) {
+        return false;
+      }
+      if (Files.isSymbolicLink(directory) && symlinks != SymlinkPolicy.FOLLOW) {
+        return false;
+      }
+      return excludedKey == null || !excludedKey.equals(fileKey(directory));
+    }
+
+    private boolean isExcluded(Path path, boolean directory) {
+      if (directory && excludedDirectory != null
+          && path.normalize().equals(excludedDirectory)) {
+        return true;
+      }
+      if (excludes.isEmpty()) {
+        return false;
+      }
+      Path relative = root.relativize(path);
+      for (PathMatcher matcher : excludes) {
+        if (matcher.matches(relative)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean isIncluded(Path file) {
+      if (includes.isEmpty()) {
+        return DirectoryReader.isLogFile(file);
+      }
+      Path relative = root.relativize(file);
+      for (PathMatcher matcher : includes) {
+        if (matcher.matches(relative)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Обход одного дерева: задачи чтения директорий и ленивая выдача файлов.
+   */
+  private final class Walk extends Spliterators.AbstractSpliterator<Path> {
+    final ForkJoinPool pool = new ForkJoinPool(parallelism);
+    final Filter filter;
+    private final Deque<Cursor> stack = new ArrayDeque<>();
+
+    Walk(Filter filter) {
+      super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT);
+      this.filter = filter;
+      Listing rootListing = new Listing(this, filter.root, 0, null);
+      pool.execute(rootListing);
+      stack.push(new Cursor(rootListing));
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Path> action) {
+      while (!stack.isEmpty()) {
+        Cursor cursor = stack.peek();
+        List<Entry> entries = cursor.entries();
+        if (cursor.next >= entries.size()) {
+          stack.pop();
+          continue;
+        }
+        Entry entry = entries.get(cursor.next++);
+        if (entry.listing != null) {
+          stack.push(new Cursor(entry.listing));
+        } else {
+          action.accept(entry.path);
+          return true;
+        }
+      }
+      pool.shutdown();
+      return false;
+    }
+  }
+
+  /**
+   * Позиция выдачи в содержимом директории.
+   */
+  private static final class Cursor {
+    private final Listing listing;
+    private List<Entry> entries;
+    int next;
+
+    Cursor(Listing listing) {
+      this.listing = listing;
+    }
+
+    List<Entry> entries() {
+      if (entries == null) {
+        listing.join();
+        if (listing.failure != null) {
+          throw new UncheckedIOException(listing.failure);
+        }
+        entries = listing.entries;
+      }
+      return entries;
+    }
+  }
+
+  /**
+   * Задача чтения содержимого директории. Запускает задачи поддиректорий,
+   * не дожидаясь их завершения.
+   */
+  private final class Listing extends RecursiveAction {
+    private final Walk walk;
+    private final Path directory;
+    private final int depth;
+    /** Директория, из которой найдена эта, для обнаружения циклов по ссылкам. */
+    private final Listing parent;
+    private Object fileKey;
+    List<Entry> entries;
+    IOException failure;
+
+    Listing(Walk walk, Path directory, int depth, Listing parent) {
+      this.walk = walk;
+      this.directory = directory;
+      this.depth = depth;
+      this.parent = parent;
+    }
+
+    @Override
+    protected void compute() {
+      List<Entry> result = new ArrayList<>();
+      try {
+        if (symlinks == SymlinkPolicy.FOLLOW) {
+          fileKey = Files.readAttributes(directory, BasicFileAttributes.class).fileKey();
+          if (fileKey != null && fileKey.equals(walk.filter.excludedKey)) {
+            entries = result;
+            return;
+          }
+          if (isLoop()) {
+            System.err.println("Skipping directory loop: " + directory);
+            entries = result;
+            return;
+          }
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+          for (Path child : children) {
+            Entry entry = toEntry(child);
+            if (entry != null) {
+              result.add(entry);
+            }
+          }
+        }
+      } catch (IOException e) {
+        failure = e;
+      }
+      entries = result;
+    }
+
+    private Entry toEntry(Path child) throws IOException {
+      BasicFileAttributes attributes =
+          Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+      boolean link = attributes.isSymbolicLink();
+      if (link) {
+        if (symlinks == SymlinkPolicy.SKIP) {
+          return null;
+        }
+        try {
+          attributes = Files.readAttributes(child, BasicFileAttributes.class);
+        } catch (IOException e) {
+          // Ссылка на отсутствующий файл
+          return null;
+        }
+      }
+      if (attributes.isDirectory()) {
+        if (link && symlinks != SymlinkPolicy.FOLLOW
+            || depth + 1 >= maxDepth || walk.filter.isExcluded(child, true)) {
+          return null;
+        }
+        Listing listing = new Listing(walk, child, depth + 1, this);
+        listing.fork();
+        return new Entry(child, listing);
+      }
+      if (attributes.isRegularFile() && walk.filter.isIncluded(child)
+          && !walk.filter.isExcluded(child, false)) {
+        return new Entry(child, null);
+      }
+      return null;
+    }
+
+    private boolean isLoop() {
+      if (fileKey == null) {
+        return false;
+      }
+      for (Listing ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+        if (fileKey.equals(ancestor.fileKey)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package org.webbee.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Построчное чтение сжатых gzip лог-файлов ({@code .log.gz}).
+ *
+ * <p>Распаковка выполняется в отдельном потоке и передается разбору через
+ * ограниченную очередь блоков, поэтому распаковка и разбор идут одновременно,
+ * а объем буферизованных данных не превышает
+ * {@code (QUEUE_CAPACITY + 2) * CHUNK_SIZE} байт на файл. Каждый блок заканчивается
+ * на границе строки, буферы блоков переиспользуются. Строки разделяются так же,
+ * как в {@link MappedLogReader}.
+ */
+public final class GzipLogReader {
+  /** Расширение сжатых лог-файлов. */
+  public static final String EXTENSION = ".log.gz";
+  private static final int CHUNK_SIZE = 1 << 20;
+  private static final int QUEUE_CAPACITY = 4;
+  private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+  private static final ExecutorService DECOMPRESSORS = Executors.newCachedThreadPool(
+      runnable -> {
+        Thread thread = new Thread(runnable,
+            "gzip-decompressor-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private GzipLogReader() {
+  }
+
+  /**
+   * Проверяет, является ли файл сжатым логом.
+   *
+   * @param file путь к файлу
+   * @return {@code true}, если имя файла заканчивается на {@value #EXTENSION}
+   */
+  public static boolean isCompressed(Path file) {
+    return file.toString().endsWith(EXTENSION);
+  }
+
+  /**
+   * Передает обработчику все строки сжатого файла.
+   *
+   * @param file    путь к файлу
+   * @param handler обработчик строк, вызывается в текущем потоке
+   * @throws IOException если произошла ошибка чтения или распаковки; непроверяемые
+   *                     исключения и ошибки потока распаковки передаются без изменений
+   */
+  public static void forEachLine(Path file, MappedLogReader.LineHandler handler)
+      throws IOException {
+    BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 2);
+    for (int i = 0; i < QUEUE_CAPACITY + 2; i++) {
+      free.add(new Chunk(new byte[CHUNK_SIZE]));
+    }
+    BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 2);
+    Future<?> decompressor = DECOMPRESSORS.submit(() -> decompress(file, free, full));
+    try {
+      while (true) {
+        Chunk chunk = full.take();
+        if (chunk.failure != null) {
+          throw rethrow(file, chunk.failure);
+        }
+        if (chunk.length < 0) {
+          return;
+        }
+        MappedLogReader.forEachLine(ByteBuffer.wrap(chunk.data), chunk.length, true, handler);
+        free.put(chunk);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading " + file, e);
+    } finally {
+      decompressor.cancel(true);
+    }
+  }
+
+  /**
+   * Распаковывает файл в блоки, заканчивающиеся на границе строки.
+   *
+   * <p>Незавершенная строка в конце блока переносится в начало следующего;
+   * если строка не помещается в блок, блок увеличивается. Любое исключение или ошибка,
+   * включая нехватку памяти при увеличении блока, передается разбору вместо
+   * очередного блока, чтобы разбор не ждал данных бесконечно.
+   */
+  private static void decompress(Path file, BlockingQueue<Chunk> free,
+                                 BlockingQueue<Chunk> full) {
+    Chunk result = Chunk.END;
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(file), INPUT_BUFFER_SIZE)) {
+      byte[] carry = new byte[CHUNK_SIZE];
+      int carryLength = 0;
+      while (true) {
+        Chunk chunk = free.take();
+        if (chunk.data.length < carryLength * 2) {
+          chunk.data = new byte[carryLength * 2];
+        }
+        System.arraycopy(carry, 0, chunk.data, 0, carryLength);
+        int length = carryLength;
+        int read = 0;
+        while (length < chunk.data.length
+            && (read = in.read(chunk.data, length, chunk.data.length - length)) > 0) {
+          length += read;
+        }
+        if (read < 0) {
+          chunk.length = length;
+          full.put(chunk);
+          break;
+        }
+        int cut = lastLineEnd(chunk.data, length);
+        carryLength = length - cut;
+        if (carry.length < carryLength) {
+          carry = new byte[carryLength];
+        }
+        System.arraycopy(chunk.data, cut, carry, 0, carryLength);
+        chunk.length = cut;
+        full.put(chunk);
+      }
+    } catch (InterruptedException e) {
+      // Разбор завершен досрочно
+      Thread.currentThread().interrupt();
+      return;
+    } catch (Throwable e) {
+      result = new Chunk(null);
+      result.failure = e;
+    }
+    try {
+      full.put(result);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Возвращает ошибку потока распаковки для выброса в потоке разбора.
+   */
+  private static IOException rethrow(Path file, Throwable failure) {
+    if (failure instanceof IOException) {
+      return (IOException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    return new IOException("Failed to decompress " + file, failure);
+  }
+
+  /**
+   * Находит позицию после последнего перевода строки, не разрывая пару {@code \r\n}.
+   *
+   * @return позиция конца завершенных строк или 0, если их нет
+   */
+  private static int lastLineEnd(byte[] data, int length) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (data[i] == '\n') {
+        return i + 1;
+      }
+      if (data[i] == '\r' && i + 1 < length) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Блок распакованных данных.
+   */
+  private static final class Chunk {
+    static final Chunk END = new Chunk(new byte[0]);
+
+    byte[] data;
+    int length = -1;
+    Throwable failure;
+
+    Chunk(byte[] data) {
+      this.data = data;
+    }
+  }
+}
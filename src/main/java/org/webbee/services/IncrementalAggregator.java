@@ -0,0 +1,404 @@
+package org.webbee.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.webbee.model.User;
+
+/**
+ * Агрегатор, обрабатывающий только новые и дописанные файлы с прошлого запуска.
+ *
+ * <p>Контрольная точка хранится рядом с директорией вывода в файле
+ * {@code <директория вывода>.checkpoint} и содержит:
+ * <ul>
+ *   <li>для каждого обработанного файла - относительный путь, размер,
+ *       время изменения, 64-битный хеш содержимого и хеш последних
+ *       {@value #TAIL_SIZE} байтов;</li>
+ *   <li>номера сегментов состояния - файлов {@code <контрольная точка>.N}
+ *       в формате {@link StateSnapshot};</li>
+ *   <li>при отбрасывании повторов - отпечатки {@link DuplicateFilter}, чтобы
+ *       повторы искались и среди транзакций прошлых запусков.</li>
+ * </ul>
+ *
+ * <p>Каждый запуск дописывает сегмент только с изменениями - состоянием, накопленным
+ * по новым данным, - поэтому запись контрольной точки пропорциональна новым данным.
+ * При загрузке сегменты применяются по порядку. Когда сегментов становится больше
+ * {@value #MAX_SEGMENTS}, они заменяются одним снимком полного состояния.
+ *
+ * <p>Файл считается неизменным, если совпадают размер и время изменения либо хеш.
+ * Если файл вырос, его прежняя часть заканчивается переводом строки и совпадает хеш
+ * ее последних байтов, обрабатывается только дописанная часть, а хеш содержимого
+ * продолжается с сохраненного значения по дописанным байтам. Новые данные
+ * применяются после ранее обработанных. Если файл удален, укорочен или переписан,
+ * вклад его прежнего содержимого нельзя отменить, поэтому все файлы обрабатываются
+ * заново. Изменение сжатого файла всегда считается перезаписью. Все файлы
+ * обрабатываются заново и тогда, когда повторы отбрасываются, а контрольная точка
+ * записана без отпечатков.
+ */
+public class IncrementalAggregator {
+  /** Расширение файла контрольной точки. */
+  public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+  private static final int MAGIC = 0x4C41434B;
+  private static final int VERSION = 3;
+  private static final int HASH_BUFFER_SIZE = 64 * 1024;
+  /** Количество последних байтов обработанной части, проверяемых у дописанного файла. */
+  private static final int TAIL_SIZE = 4096;
+  /** Наибольшее количество сегментов состояния до их объединения. */
+  private static final int MAX_SEGMENTS = 16;
+  private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+  private static final long FNV_PRIME = 0x100000001B3L;
+
+  private final Path root;
+  private final Path outputDirectory;
+  private final Path checkpointFile;
+  private final boolean compactStorage;
+  private final DuplicateFilter duplicates;
+  private final Map<String, FileState> files = new LinkedHashMap<>();
+  /** Номера сегментов состояния в порядке применения. */
+  private final List<Long> segments = new ArrayList<>();
+  private UserLogsAggregator state;
+  /** Состояние, накопленное по новым данным этого запуска. */
+  private UserLogsAggregator delta;
+  private Map<String, User> changedUsers = Collections.emptyMap();
+  private boolean fullRebuild;
+
+  /**
+   * Создает агрегатор.
+   *
+   * @param root            корневая директория с логами
+   * @param outputDirectory директория вывода логов пользователей
+   * @param compactStorage  признак компактного хранения транзакций
+   * @param duplicates      фильтр повторов или {@code null}
+   */
+  public IncrementalAggregator(Path root, Path outputDirectory, boolean compactStorage,
+                               DuplicateFilter duplicates) {
+    this.root = root.toAbsolutePath();
+    this.outputDirectory = outputDirectory.toAbsolutePath();
+    this.checkpointFile = this.outputDirectory.resolveSibling(
+        this.outputDirectory.getFileName() + CHECKPOINT_SUFFIX);
+    this.compactStorage = compactStorage;
+    this.duplicates = duplicates;
+  }
+
+  /**
+   * Загружает контрольную точку и обрабатывает изменения относительно нее.
+   *
+   * <p>Файлы внутри директории вывода не обрабатываются.
+   *
+   * @param paths поток путей к файлам с логами
+   * @throws IOException если произошла ошибка чтения файлов или контрольной точки
+   */
+  public void aggregate(Stream<Path> paths) throws IOException {
+    List<Path> current = paths
+        .map(Path::toAbsolutePath)
+        .filter(path -> !path.startsWith(outputDirectory))
+        .collect(Collectors.toList());
+    fullRebuild = !loadCheckpoint();
+
+    Map<Path, Long> changes = fullRebuild ? null : findDelta(current);
+    if (changes == null) {
+      fullRebuild = true;
+      files.clear();
+      segments.clear();
+      if (duplicates != null) {
+        duplicates.clear();
+      }
+      state = new UserLogsAggregator(compactStorage, duplicates);
+      changes = new LinkedHashMap<>();
+      for (Path path : current) {
+        changes.put(path, 0L);
+      }
+    }
+
+    delta = state.newPartial();
+    for (Map.Entry<Path, Long> entry : changes.entrySet()) {
+      // Размер фиксируется до чтения, чтобы данные, дописанные во время
+      // обработки, попали в следующий запуск
+      Path path = entry.getKey();
+      long offset = entry.getValue();
+      String name = relativeName(path);
+      FileState previous = offset > 0 ? files.get(name) : null;
+      long size = Files.size(path);
+      FileState processed = new FileState(size, Files.getLastModifiedTime(path).toMillis(),
+          hash(path, offset, size, previous != null ? previous.hash : FNV_OFFSET_BASIS),
+          tailHash(path, size));
+      delta.processFile(path, offset, size);
+      files.put(name, processed);
+    }
+    state.mergeFrom(delta);
+
+    Map<String, User> users = state.getUsers();
+    changedUsers = new HashMap<>();
+    for (User user : users.values()) {
+      if (fullRebuild || delta.getUsers().containsKey(user.getName())
+          || Files.notExists(outputDirectory.resolve(user.getName() + ".log"))) {
+        changedUsers.put(user.getName(), user);
+      }
+    }
+  }
+
+  /**
+   * Возвращает всех пользователей с актуальным состоянием.
+   *
+   * @return неизменяемая Map пользователей
+   */
+  public Map<String, User> getUsers() {
+    return state.getUsers();
+  }
+
+  /**
+   * Возвращает пользователей, логи которых нужно перезаписать.
+   *
+   * @return неизменяемая Map измененных пользователей
+   */
+  public Map<String, User> getChangedUsers() {
+    return Collections.unmodifiableMap(changedUsers);
+  }
+
+  /**
+   * Возвращает признак того, что все файлы были обработаны заново.
+   *
+   * @return {@code true}, если контрольная точка отсутствовала или была неприменима
+   */
+  public boolean isFullRebuild() {
+    return fullRebuild;
+  }
+
+  /**
+   * Атомарно сохраняет контрольную точку.
+   *
+   * <p>Вызывается после записи логов пользователей, чтобы при сбое записи
+   * изменения были обработаны повторно. Сначала записывается новый сегмент,
+   * затем описание контрольной точки со ссылкой на него; сегменты, на которые
+   * описание больше не ссылается, удаляются последними.
+   *
+   * @throws IOException если не удалось записать файл
+   */
+  public void saveCheckpoint() throws IOException {
+    List<Long> obsolete = new ArrayList<>();
+    long next = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+    if (segments.size() >= MAX_SEGMENTS) {
+      obsolete.addAll(segments);
+      segments.clear();
+      StateSnapshot.write(segmentFile(next), state.getUsers());
+      segments.add(next);
+    } else if (!delta.getUsers().isEmpty() || segments.isEmpty()) {
+      StateSnapshot.write(segmentFile(next), delta.getUsers());
+      segments.add(next);
+    }
+
+    Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(files.size());
+      for (Map.Entry<String, FileState> entry : files.entrySet()) {
+        out.writeUTF(entry.getKey());
+        entry.getValue().writeTo(out);
+      }
+      out.writeInt(segments.size());
+      for (long segment : segments) {
+        out.writeLong(segment);
+      }
+      out.writeBoolean(duplicates != null);
+      if (duplicates != null) {
+        duplicates.writeTo(out);
+      }
+    }
+    Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    for (long segment : obsolete) {
+      Files.deleteIfExists(segmentFile(segment));
+    }
+  }
+
+  /**
+   * Загружает контрольную точку и применяет ее сегменты состояния.
+   *
+   * @return {@code false}, если контрольной точки нет, ее формат не поддерживается
+   *         или в ней нет отпечатков, нужных фильтру повторов
+   */
+  private boolean loadCheckpoint() throws IOException {
+    files.clear();
+    segments.clear();
+    state = new UserLogsAggregator(compactStorage, duplicates);
+    if (Files.notExists(checkpointFile)) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return false;
+      }
+      int fileCount = in.readInt();
+      for (int i = 0; i < fileCount; i++) {
+        files.put(in.readUTF(), FileState.readFrom(in));
+      }
+      int segmentCount = in.readInt();
+      for (int i = 0; i < segmentCount; i++) {
+        segments.add(in.readLong());
+      }
+      boolean hasFingerprints = in.readBoolean();
+      if (duplicates != null) {
+        if (!hasFingerprints) {
+          return false;
+        }
+        duplicates.readFrom(in);
+      }
+    }
+    for (long segment : segments) {
+      StateSnapshot.mergeInto(segmentFile(segment), state);
+    }
+    return true;
+  }
+
+  private Path segmentFile(long segment) {
+    return checkpointFile.resolveSibling(checkpointFile.getFileName() + "." + segment);
+  }
+
+  /**
+   * Сравнивает текущие файлы с контрольной точкой.
+   *
+   * @return файлы для обработки и смещения, с которых нужно начинать,
+   *         или {@code null}, если требуется полная переобработка
+   */
+  private Map<Path, Long> findDelta(List<Path> current) throws IOException {
+    Map<Path, Long> changes = new LinkedHashMap<>();
+    Set<String> seen = new HashSet<>();
+    for (Path path : current) {
+      String name = relativeName(path);
+      seen.add(name);
+      FileState previous = files.get(name);
+      if (previous == null) {
+        changes.put(path, 0L);
+        continue;
+      }
+      long size = Files.size(path);
+      long modified = Files.getLastModifiedTime(path).toMillis();
+      if (size == previous.size && modified == previous.modified) {
+        continue;
+      }
+      if (size == previous.size
+          && hash(path, 0, size, FNV_OFFSET_BASIS) == previous.hash) {
+        files.put(name, new FileState(size, modified, previous.hash, previous.tailHash));
+        continue;
+      }
+      if (size > previous.size && !GzipLogReader.isCompressed(path)
+          && endsWithLineBreak(path, previous.size)
+          && tailHash(path, previous.size) == previous.tailHash) {
+        changes.put(path, previous.size);
+        continue;
+      }
+      return null;
+    }
+    if (!seen.containsAll(files.keySet())) {
+      return null;
+    }
+    return changes;
+  }
+
+  private String relativeName(Path path) {
+    return root.relativize(path).toString();
+  }
+
+  /**
+   * Проверяет, что первые {@code length} байтов файла заканчиваются переводом строки,
+   * то есть последняя обработанная строка была завершена.
+   */
+  private static boolean endsWithLineBreak(Path path, long length) throws IOException {
+    if (length == 0) {
+      return true;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer last = ByteBuffer.allocate(1);
+      if (channel.read(last, length - 1) != 1) {
+        return false;
+      }
+      return last.get(0) == '\n' || last.get(0) == '\r';
+    }
+  }
+
+  /**
+   * Вычисляет хеш последних {@value #TAIL_SIZE} байтов из первых {@code length}.
+   */
+  private static long tailHash(Path path, long length) throws IOException {
+    long start = Math.max(0, length - TAIL_SIZE);
+    return hash(path, start, length, FNV_OFFSET_BASIS);
+  }
+
+  /**
+   * Продолжает 64-битный хеш FNV-1a байтами файла в диапазоне {@code [start, end)}.
+   *
+   * <p>Состояние FNV-1a - само значение хеша, поэтому хеш дописанного файла
+   * вычисляется по дописанным байтам, начиная с хеша прежней части.
+   *
+   * @param hash хеш предшествующих байтов или начальное значение FNV-1a
+   */
+  private static long hash(Path path, long start, long end, long hash) throws IOException {
+    byte[] bytes = new byte[HASH_BUFFER_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long position = start;
+      while (position < end) {
+        buffer.clear();
+        buffer.limit((int) Math.min(bytes.length, end - position));
+        int read = channel.read(buffer, position);
+        if (read < 0) {
+          break;
+        }
+        for (int i = 0; i < read; i++) {
+          hash = (hash ^ (bytes[i] & 0xFF)) * FNV_PRIME;
+        }
+        position += read;
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Сохраненное состояние обработанного файла.
+   */
+  private static final class FileState {
+    final long size;
+    final long modified;
+    final long hash;
+    final long tailHash;
+
+    FileState(long size, long modified, long hash, long tailHash) {
+      this.size = size;
+      this.modified = modified;
+      this.hash = hash;
+      this.tailHash = tailHash;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      out.writeLong(size);
+      out.writeLong(modified);
+      out.writeLong(hash);
+      out.writeLong(tailHash);
+    }
+
+    static FileState readFrom(DataInputStream in) throws IOException {
+      return new FileState(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+    }
+  }
+}
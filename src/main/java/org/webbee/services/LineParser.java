@@ -1,7 +1,11 @@
 package org.webbee.services;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
 import java.time.format.DateTimeFormatter;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -32,14 +36,87 @@ public class LineParser {
       "^\\[(.+?)] (.+?) (balance inquiry|transferred|withdrew) (\\d+\\.?\\d*) ?(?:to (.+))?$"
   );
   
+  /** Длина префикса {@code [yyyy-MM-dd HH:mm:ss] }. */
+  private static final int TIMESTAMP_PREFIX_LENGTH = 22;
+  /** Максимальное число цифр суммы, которое гарантированно помещается в long. */
+  private static final int MAX_LONG_DIGITS = 18;
+  
+  private static final String BALANCE_INQUIRY = "balance inquiry ";
+  private static final String TRANSFERRED = "transferred ";
+  private static final String WITHDREW = "withdrew ";
+  private static final String TO = " to ";
+  
   /**
    * Парсит строку лога в объект Transaction.
    *
+   * <p>Строки канонического вида {@code [yyyy-MM-dd HH:mm:ss] user op amount [to user]}
+   * разбираются за один проход по позициям символов без регулярного выражения
+   * и {@link DateTimeFormatter}. Остальные строки, начинающиеся с {@code '['},
+   * разбираются через {@link #LOG_PATTERN}, поэтому результат для любой строки
+   * совпадает с {@link #parseLineWithPattern(String)}.
+   *
    * @param line строка лога для парсинга
    * @return объект Transaction или {@code null}, если строка не соответствует формату
    * @throws IllegalArgumentException если строка содержит некорректные данные
    */
   public static Transaction parseLine(String line) {
+    if (line.isEmpty() || line.charAt(0) != '[') {
+      return null;
+    }
+    Transaction transaction = parseCanonical(new StringLine(line));
+    return transaction != null ? transaction : parseLineWithPattern(line);
+  }
+  
+  /**
+   * Парсит строку лога, заданную диапазоном байтов в кодировке UTF-8.
+   *
+   * <p>Строки канонического вида разбираются непосредственно по байтам,
+   * объекты String создаются только для идентификаторов пользователей.
+   * Остальные строки декодируются и разбираются через {@link #parseLine(String)}.
+   *
+   * @param buffer буфер с содержимым лога
+   * @param from   индекс первого байта строки
+   * @param to     индекс байта после конца строки (без символов перевода строки)
+   * @return объект Transaction или {@code null}, если строка не соответствует формату
+   * @throws IllegalArgumentException если строка содержит некорректные данные
+   */
+  public static Transaction parseLine(ByteBuffer buffer, int from, int to) {
+    return parseLine(buffer, from, to, null);
+  }
+  
+  /**
+   * Парсит строку лога, заданную диапазоном байтов, разрешая идентификаторы
+   * пользователей через таблицу символов.
+   *
+   * <p>Для пользователей, уже встречавшихся в таблице, строки не создаются.
+   *
+   * @param buffer  буфер с содержимым лога
+   * @param from    индекс первого байта строки
+   * @param to      индекс байта после конца строки (без символов перевода строки)
+   * @param symbols таблица символов или {@code null}
+   * @return объект Transaction или {@code null}, если строка не соответствует формату
+   * @throws IllegalArgumentException если строка содержит некорректные данные
+   */
+  static Transaction parseLine(ByteBuffer buffer, int from, int to, UserSymbolTable symbols) {
+    if (from == to || buffer.get(from) != '[') {
+      return null;
+    }
+    ByteLine line = new ByteLine(buffer, from, to, symbols);
+    Transaction transaction = parseCanonical(line);
+    return transaction != null ? transaction : parseLineWithPattern(line.substring(0, to - from));
+  }
+  
+  /**
+   * Парсит строку лога с помощью регулярного выражения {@link #LOG_PATTERN}.
+   *
+   * <p>Эталонная реализация формата, используется для строк, которые
+   * не удалось разобрать быстрым способом.
+   *
+   * @param line строка лога для парсинга
+   * @return объект Transaction или {@code null}, если строка не соответствует формату
+   * @throws IllegalArgumentException если строка содержит некорректные данные
+   */
+  static Transaction parseLineWithPattern(String line) {
     Matcher matcher = LOG_PATTERN.matcher(line);
     if (!matcher.find()) {
       return null;
@@ -64,5 +141,299 @@ public class LineParser {
     }
   }
   
+  /**
+   * Разбирает строку канонического вида по позициям символов.
+   *
+   * @param line строка лога
+   * @return объект Transaction или {@code null}, если строка не канонического вида
+   */
+  private static Transaction parseCanonical(LineView line) {
+    int length = line.length();
+    if (length <= TIMESTAMP_PREFIX_LENGTH
+        || line.charAt(20) != ']' || line.charAt(21) != ' ') {
+      return null;
+    }
+    LocalDateTime timestamp = parseTimestamp(line);
+    if (timestamp == null) {
+      return null;
+    }
+    
+    int userEnd = line.indexOf(' ', TIMESTAMP_PREFIX_LENGTH);
+    if (userEnd <= TIMESTAMP_PREFIX_LENGTH || !line.isPlainText(TIMESTAMP_PREFIX_LENGTH, userEnd)) {
+      return null;
+    }
+    
+    Transaction.OperationType operationType;
+    int amountStart = userEnd + 1;
+    if (line.startsWith(TRANSFERRED, amountStart)) {
+      operationType = Transaction.OperationType.TRANSFERRED;
+      amountStart += TRANSFERRED.length();
+    } else if (line.startsWith(WITHDREW, amountStart)) {
+      operationType = Transaction.OperationType.WITHDREW;
+      amountStart += WITHDREW.length();
+    } else if (line.startsWith(BALANCE_INQUIRY, amountStart)) {
+      operationType = Transaction.OperationType.BALANCE_INQUIRY;
+      amountStart += BALANCE_INQUIRY.length();
+    } else {
+      return null;
+    }
+    
+    int amountEnd = scanAmount(line, amountStart);
+    if (amountEnd < 0) {
+      return null;
+    }
+    String recipient = null;
+    if (amountEnd != length) {
+      int recipientStart = amountEnd + TO.length();
+      if (!line.startsWith(TO, amountEnd) || recipientStart >= length
+          || !line.isPlainText(recipientStart, length)) {
+        return null;
+      }
+      recipient = line.userId(recipientStart, length);
+    }
+    
+    String userId = line.userId(TIMESTAMP_PREFIX_LENGTH, userEnd);
+    BigDecimal amount = parseAmount(line, amountStart, amountEnd);
+    return new Transaction(operationType, timestamp, userId, amount, recipient);
+  }
+  
+  /**
+   * Разбирает метку времени {@code yyyy-MM-dd HH:mm:ss} в позициях 1-19.
+   *
+   * @return метка времени или {@code null}, если формат или значения полей некорректны
+   */
+  private static LocalDateTime parseTimestamp(LineView line) {
+    if (line.charAt(5) != '-' || line.charAt(8) != '-' || line.charAt(11) != ' '
+        || line.charAt(14) != ':' || line.charAt(17) != ':') {
+      return null;
+    }
+    int year = parseDigits(line, 1, 5);
+    int month = parseDigits(line, 6, 8);
+    int day = parseDigits(line, 9, 11);
+    int hour = parseDigits(line, 12, 14);
+    int minute = parseDigits(line, 15, 17);
+    int second = parseDigits(line, 18, 20);
+    if (year < 1 || month < 1 || month > 12 || day < 1
+        || day > Month.of(month).length(Year.isLeap(year))
+        || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return null;
+    }
+    return LocalDateTime.of(year, month, day, hour, minute, second);
+  }
   
+  /**
+   * Разбирает число из цифр ASCII в диапазоне [from, to).
+   *
+   * @return значение числа или -1, если встретился символ, отличный от цифры
+   */
+  private static int parseDigits(LineView line, int from, int to) {
+    int value = 0;
+    for (int i = from; i < to; i++) {
+      int digit = line.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+  
+  /**
+   * Находит конец суммы вида {@code \d+\.?\d*}.
+   *
+   * @return индекс символа после суммы или -1, если сумма не начинается с цифры
+   */
+  private static int scanAmount(LineView line, int from) {
+    int i = skipDigits(line, from);
+    if (i == from) {
+      return -1;
+    }
+    if (i < line.length() && line.charAt(i) == '.') {
+      i = skipDigits(line, i + 1);
+    }
+    return i;
+  }
+  
+  private static int skipDigits(LineView line, int from) {
+    int i = from;
+    while (i < line.length() && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+      i++;
+    }
+    return i;
+  }
+  
+  /**
+   * Преобразует сумму в BigDecimal через целое число с фиксированным масштабом.
+   *
+   * <p>Масштаб равен количеству цифр после точки, как у {@code new BigDecimal(String)}.
+   */
+  private static BigDecimal parseAmount(LineView line, int from, int to) {
+    if (to - from > MAX_LONG_DIGITS) {
+      return new BigDecimal(line.substring(from, to));
+    }
+    long unscaled = 0;
+    int scale = 0;
+    boolean fraction = false;
+    for (int i = from; i < to; i++) {
+      int c = line.charAt(i);
+      if (c == '.') {
+        fraction = true;
+      } else {
+        unscaled = unscaled * 10 + (c - '0');
+        if (fraction) {
+          scale++;
+        }
+      }
+    }
+    return BigDecimal.valueOf(unscaled, scale);
+  }
+  
+  /**
+   * Представление строки лога для посимвольного разбора.
+   */
+  private abstract static class LineView {
+    abstract int length();
+    
+    abstract int charAt(int index);
+    
+    abstract String substring(int from, int to);
+    
+    /**
+     * Возвращает идентификатор пользователя в диапазоне, проверенном {@link #isPlainText}.
+     */
+    String userId(int from, int to) {
+      return substring(from, to);
+    }
+    
+    /**
+     * Проверяет, что в диапазоне нет символов, которые не совпадают
+     * с {@code .} в регулярном выражении.
+     */
+    abstract boolean isPlainText(int from, int to);
+    
+    int indexOf(int ch, int from) {
+      for (int i = from; i < length(); i++) {
+        if (charAt(i) == ch) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    
+    boolean startsWith(String prefix, int offset) {
+      if (offset + prefix.length() > length()) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length(); i++) {
+        if (charAt(offset + i) != prefix.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+  
+  /**
+   * Строка лога, заданная объектом String.
+   */
+  private static final class StringLine extends LineView {
+    private final String line;
+    
+    StringLine(String line) {
+      this.line = line;
+    }
+    
+    @Override
+    int length() {
+      return line.length();
+    }
+    
+    @Override
+    int charAt(int index) {
+      return line.charAt(index);
+    }
+    
+    @Override
+    String substring(int from, int to) {
+      return line.substring(from, to);
+    }
+    
+    @Override
+    int indexOf(int ch, int from) {
+      return line.indexOf(ch, from);
+    }
+    
+    @Override
+    boolean startsWith(String prefix, int offset) {
+      return line.startsWith(prefix, offset);
+    }
+    
+    @Override
+    boolean isPlainText(int from, int to) {
+      for (int i = from; i < to; i++) {
+        char c = line.charAt(i);
+        if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+  
+  /**
+   * Строка лога, заданная диапазоном байтов UTF-8.
+   *
+   * <p>Быстрый разбор допускается только для ASCII: строки с многобайтовыми
+   * символами декодируются и разбираются как String.
+   */
+  private static final class ByteLine extends LineView {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+    private final UserSymbolTable symbols;
+    
+    ByteLine(ByteBuffer buffer, int from, int to, UserSymbolTable symbols) {
+      this.buffer = buffer;
+      this.offset = from;
+      this.length = to - from;
+      this.symbols = symbols;
+    }
+    
+    @Override
+    int length() {
+      return length;
+    }
+    
+    @Override
+    int charAt(int index) {
+      return buffer.get(offset + index);
+    }
+    
+    @Override
+    String substring(int from, int to) {
+      byte[] bytes = new byte[to - from];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = buffer.get(offset + from + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    String userId(int from, int to) {
+      // isPlainText гарантирует ASCII, поэтому таблица может сравнивать байты
+      return symbols == null ? substring(from, to)
+          : symbols.resolve(buffer, offset + from, offset + to);
+    }
+    
+    @Override
+    boolean isPlainText(int from, int to) {
+      for (int i = from; i < to; i++) {
+        byte b = buffer.get(offset + i);
+        if (b < 0 || b == '\n' || b == '\r') {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
 }
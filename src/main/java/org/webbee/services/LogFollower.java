@@ -0,0 +1,356 @@
+package org.webbee.services;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.webbee.model.User;
+
+/**
+ * Режим слежения: непрерывно обрабатывает строки, дописываемые в лог-файлы.
+ *
+ * <p>Для каждого файла хранится смещение после последней обработанной строки,
+ * при изменении файла разбираются только новые завершенные строки. Балансы
+ * затронутых пользователей обновляются инкрементально, а их логи
+ * перезаписываются пакетно не чаще одного раза за интервал сброса.
+ *
+ * <p>Изменения отслеживаются через {@link WatchService}. Если он недоступен,
+ * а также по истечении интервала опроса без событий, дерево директорий
+ * просматривается целиком и размеры файлов сравниваются со смещениями.
+ * Отслеживаемые директории и файлы из событий отбираются по тем же правилам
+ * {@link FileDiscovery}, что и при просмотре: шаблоны, глубина и символические ссылки.
+ *
+ * <p>Если файл стал короче обработанного смещения (например, при ротации),
+ * он обрабатывается заново с начала; ранее примененные строки не отменяются.
+ *
+ * <p>Сжатые файлы ({@code .log.gz}) обрабатываются целиком только при первом
+ * просмотре. Появившиеся позже сжатые файлы пропускаются: при ротации в них
+ * попадают уже прочитанные строки, и повторная обработка исказила бы балансы.
+ */
+public class LogFollower {
+  private final DirectoryReader reader;
+  private final Path outputDirectory;
+  private final long flushIntervalMillis;
+  private final long pollIntervalMillis;
+  private final UserLogsAggregator state;
+  private final FileDiscovery.Filter filter;
+  private final VirtualThreads virtualThreads;
+  private final Map<Path, Long> offsets = new HashMap<>();
+  private final Set<String> dirtyUsers = new HashSet<>();
+  private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+  private WatchService watchService;
+  private long lastFullScan;
+  private boolean initialScanDone;
+  private volatile boolean running = true;
+
+  /**
+   * Создает обработчик режима слежения.
+   *
+   * @param reader              источник списка лог-файлов
+   * @param outputDirectory     директория вывода, изменения в которой игнорируются
+   * @param flushIntervalMillis интервал пакетной записи логов пользователей
+   * @param pollIntervalMillis  интервал полного просмотра директорий без событий
+   * @param compactStorage      признак компактного хранения транзакций
+   * @param virtualThreads      режим записи логов в виртуальных потоках или {@code null}
+   * @param duplicates          фильтр повторов или {@code null}
+   * @throws IllegalArgumentException если интервалы неположительные
+   */
+  public LogFollower(DirectoryReader reader, Path outputDirectory, long flushIntervalMillis,
+                     long pollIntervalMillis, boolean compactStorage,
+                     VirtualThreads virtualThreads, DuplicateFilter duplicates) {
+    if (flushIntervalMillis <= 0 || pollIntervalMillis <= 0) {
+      throw new IllegalArgumentException("Intervals must be positive");
+    }
+    this.reader = reader;
+    this.outputDirectory = outputDirectory.toAbsolutePath();
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.state = new UserLogsAggregator(compactStorage, duplicates);
+    this.virtualThreads = virtualThreads;
+    this.filter = reader.getDiscovery().filter(reader.getDirectory(), this.outputDirectory);
+  }
+
+  /**
+   * Обрабатывает существующие файлы и следит за изменениями до вызова {@link #stop()}.
+   *
+   * <p>Перед возвратом записывает все накопленные изменения.
+   *
+   * @throws IOException если произошла ошибка чтения файлов или записи логов
+   */
+  public void run() throws IOException {
+    openWatchService();
+    try {
+      scanAll();
+      initialScanDone = true;
+      flush();
+      long nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+      while (running) {
+        Set<Path> changed = awaitChanges(
+            Math.min(pollIntervalMillis, Math.max(1, nextFlush - System.currentTimeMillis())));
+        if (changed == null) {
+          scanAll();
+        } else {
+          for (Path file : changed) {
+            processAppended(file);
+          }
+        }
+        if (System.currentTimeMillis() >= nextFlush) {
+          flush();
+          nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+        }
+      }
+    } finally {
+      if (watchService != null) {
+        watchService.close();
+      }
+      flush();
+    }
+  }
+
+  /**
+   * Останавливает слежение. Может вызываться из другого потока.
+   */
+  public void stop() {
+    running = false;
+    WatchService service = watchService;
+    if (service != null) {
+      try {
+        service.close();
+      } catch (IOException e) {
+        System.err.println("Failed to close watch service: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Возвращает текущее состояние пользователей.
+   *
+   * @return неизменяемая Map пользователей
+   */
+  public Map<String, User> getUsers() {
+    return state.getUsers();
+  }
+
+  private void openWatchService() {
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+      registerTree(reader.getDirectory(), null);
+    } catch (IOException | UnsupportedOperationException e) {
+      System.err.println("WatchService is unavailable, falling back to polling: "
+          + e.getMessage());
+      watchService = null;
+    }
+  }
+
+  /**
+   * Регистрирует директории дерева, которые обходит поиск файлов.
+   *
+   * @param directory корень регистрируемого дерева
+   * @param files     множество для найденных подходящих файлов или {@code null}
+   */
+  private void registerTree(Path directory, Set<Path> files) throws IOException {
+    Set<FileVisitOption> options = filter.followsLinks()
+        ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : Collections.<FileVisitOption>emptySet();
+    Files.walkFileTree(directory, options, Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes)
+          throws IOException {
+        if (!filter.acceptsDirectory(dir)) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        watchedDirectories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+        if (files != null && filter.acceptsFile(file)) {
+          files.add(file.toAbsolutePath());
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+        if (e instanceof FileSystemLoopException) {
+          return FileVisitResult.CONTINUE;
+        }
+        throw e;
+      }
+    });
+  }
+
+  /**
+   * Ожидает события файловой системы.
+   *
+   * @return измененные файлы или {@code null}, если нужен полный просмотр:
+   *         WatchService недоступен, события потеряны или событий не было
+   *         дольше интервала опроса
+   */
+  private Set<Path> awaitChanges(long timeoutMillis) throws IOException {
+    if (watchService == null) {
+      sleep(timeoutMillis);
+      return null;
+    }
+    WatchKey key;
+    try {
+      key = watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      running = false;
+      return new HashSet<>();
+    }
+    if (key == null) {
+      return System.currentTimeMillis() - lastFullScan >= pollIntervalMillis
+          ? null : new HashSet<>();
+    }
+    Set<Path> changed = new LinkedHashSet<>();
+    for (; key != null; key = watchService.poll()) {
+      Path directory = watchedDirectories.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW || directory == null) {
+          key.reset();
+          return null;
+        }
+        Path path = directory.resolve((Path) event.context());
+        if (Files.isDirectory(path)) {
+          if (event.kind() == ENTRY_CREATE) {
+            registerTree(path, changed);
+          }
+        } else if (filter.acceptsFile(path)) {
+          changed.add(path.toAbsolutePath());
+        }
+      }
+      if (!key.reset()) {
+        watchedDirectories.remove(key);
+      }
+    }
+    return changed;
+  }
+
+  private void scanAll() throws IOException {
+    lastFullScan = System.currentTimeMillis();
+    for (Path file : reader.getFileStream().collect(Collectors.toList())) {
+      processAppended(file.toAbsolutePath());
+    }
+  }
+
+  /**
+   * Обрабатывает завершенные строки, дописанные в файл после сохраненного смещения.
+   */
+  private void processAppended(Path file) throws IOException {
+    if (file.startsWith(outputDirectory) || !Files.isRegularFile(file)) {
+      return;
+    }
+    if (GzipLogReader.isCompressed(file)) {
+      if (!initialScanDone && !offsets.containsKey(file)) {
+        processCompressed(file);
+      }
+      return;
+    }
+    long offset = offsets.getOrDefault(file, 0L);
+    long end;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < offset) {
+        System.err.println("File was truncated, reading from start: " + file);
+        offset = 0;
+      }
+      end = lastLineEnd(channel, offset, size);
+    }
+    if (end <= offset) {
+      offsets.put(file, offset);
+      return;
+    }
+    UserLogsAggregator partial = state.newPartial();
+    partial.processFile(file, offset, end);
+    state.mergeFrom(partial);
+    dirtyUsers.addAll(partial.getUsers().keySet());
+    offsets.put(file, end);
+  }
+
+  private void processCompressed(Path file) throws IOException {
+    long size = Files.size(file);
+    UserLogsAggregator partial = state.newPartial();
+    partial.processFile(file, 0, size);
+    state.mergeFrom(partial);
+    dirtyUsers.addAll(partial.getUsers().keySet());
+    offsets.put(file, size);
+  }
+
+  /**
+   * Находит смещение после последнего перевода строки в диапазоне,
+   * чтобы не обрабатывать строку, запись которой еще не завершена.
+   */
+  private static long lastLineEnd(FileChannel channel, long from, long to) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(8192);
+    long position = to;
+    while (position > from) {
+      int length = (int) Math.min(buffer.capacity(), position - from);
+      buffer.clear().limit(length);
+      long start = position - length;
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, start + buffer.position()) < 0) {
+          break;
+        }
+      }
+      for (int i = length - 1; i >= 0; i--) {
+        byte b = buffer.get(i);
+        if (b == '\n' || b == '\r') {
+          return start + i + 1;
+        }
+      }
+      position = start;
+    }
+    return from;
+  }
+
+  /**
+   * Перезаписывает логи пользователей, измененных с последнего сброса.
+   */
+  private void flush() {
+    if (dirtyUsers.isEmpty()) {
+      return;
+    }
+    Map<String, User> users = state.getUsers();
+    Map<String, User> changed = new HashMap<>();
+    for (String name : dirtyUsers) {
+      changed.put(name, users.get(name));
+    }
+    LogWriter.writeUsers(changed, virtualThreads);
+    dirtyUsers.clear();
+  }
+
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+}
@@ -8,12 +8,21 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.webbee.exceptions.InitializationException;
+import org.webbee.metrics.AnalyzerMetrics;
 import org.webbee.model.Transaction;
 import org.webbee.model.User;
 
@@ -25,6 +34,24 @@ public class LogWriter {
   private static Path outputDirectory;
   private static final DateTimeFormatter TIMESTAMP_FORMATTER =
       DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  /** Количество пользователей в одной задаче записи. */
+  private static final int USERS_PER_BATCH = 64;
+  /** Размер очереди пула записи в задачах на поток. */
+  private static final int QUEUED_BATCHES_PER_THREAD = 2;
+  /** Начальный размер буфера кодирования потока. */
+  private static final int ENCODE_BUFFER_SIZE = 1 << 20;
+  /** Буфер большего размера не сохраняется между задачами. */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 16 << 20;
+  private static final ThreadLocal<EncodeBuffer> ENCODE_BUFFER =
+      ThreadLocal.withInitial(() -> new EncodeBuffer(ENCODE_BUFFER_SIZE));
+  /**
+   * Буферы кодирования задач в виртуальных потоках: ThreadLocal бесполезен, так как
+   * поток создается на каждую задачу. Количество буферов ограничено семафором
+   * {@link VirtualThreads}.
+   */
+  private static final Queue<EncodeBuffer> POOLED_BUFFERS = new ConcurrentLinkedQueue<>();
+  private static volatile OutputLayout layout;
+  private static ExecutorService writerPool;
   
   private LogWriter() {
   }
@@ -47,6 +74,7 @@ public class LogWriter {
     
     Path directoryPath = Paths.get(pathOfDir).toAbsolutePath();
     outputDirectory = directoryPath.resolve(destinationPath).toAbsolutePath();
+    layout = null;
     try {
       if (!Files.notExists(outputDirectory.getParent()) && Files.notExists(outputDirectory)) {
         Files.createDirectories(outputDirectory);
@@ -57,36 +85,177 @@ public class LogWriter {
   }
   
   /**
-   * Асинхронно записывает логи всех пользователей.
+   * Возвращает директорию вывода, заданную при инициализации.
+   *
+   * @return директория вывода или {@code null}, если LogWriter не инициализирован
+   */
+  public static Path getOutputDirectory() {
+    return outputDirectory;
+  }
+  
+  /**
+   * Задает размещение логов пользователей в директории вывода.
+   *
+   * <p>По умолчанию используется {@link PerUserFileLayout}. Закрытие
+   * размещения остается за вызывающим кодом.
    *
-   * <p>Использует пул потоков для параллельной записи файлов.
+   * @param outputLayout размещение логов
+   * @throws IllegalArgumentException если outputLayout равен null
+   */
+  public static void setLayout(OutputLayout outputLayout) {
+    if (outputLayout == null) {
+      throw new IllegalArgumentException("Output layout cannot be null");
+    }
+    layout = outputLayout;
+  }
+  
+  /**
+   * Записывает логи всех пользователей.
    *
-   * <p>Каждый Future асинхронно обрабатывает запись логов для одного пользователя из Map.
+   * <p>Пользователи разбиваются на пакеты по {@value #USERS_PER_BATCH}, пакеты
+   * выполняются общим пулом потоков с ограниченной очередью: если очередь
+   * заполнена, пакет выполняет вызывающий поток. Каждый поток кодирует записи
+   * сразу в байты в собственном переиспользуемом буфере и передает лог
+   * пользователя в {@link OutputLayout} одним блоком.
    *
    * @param users Map пользователей для записи
    * @throws RuntimeException если произошла ошибка записи
    */
-  
   public static void writeUsers(Map<String, User> users) {
-    ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime()
-        .availableProcessors());
+    writeUsers(users, null);
+  }
+  
+  /**
+   * Записывает логи всех пользователей, при заданном режиме {@link VirtualThreads} -
+   * лог каждого пользователя в отдельном виртуальном потоке с ограничением
+   * количества одновременных записей.
+   *
+   * @param users          Map пользователей для записи
+   * @param virtualThreads режим виртуальных потоков или {@code null} для пула потоков
+   * @throws RuntimeException если произошла ошибка записи
+   */
+  public static void writeUsers(Map<String, User> users, VirtualThreads virtualThreads) {
+    OutputLayout target = currentLayout();
+    if (virtualThreads != null) {
+      writeUsers(users, target, virtualThreads);
+      return;
+    }
+    List<Future<?>> batches = new ArrayList<>();
+    List<User> batch = new ArrayList<>(USERS_PER_BATCH);
+    for (User user : users.values()) {
+      batch.add(user);
+      if (batch.size() == USERS_PER_BATCH) {
+        batches.add(submitBatch(batch, target));
+        batch = new ArrayList<>(USERS_PER_BATCH);
+      }
+    }
+    if (!batch.isEmpty()) {
+      batches.add(submitBatch(batch, target));
+    }
+    
+    RuntimeException failure = null;
+    for (Future<?> future : batches) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof RuntimeException
+              ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while writing user logs", e);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+  
+  private static void writeUsers(Map<String, User> users, OutputLayout target,
+                                 VirtualThreads virtualThreads) {
+    VirtualThreads.TaskGroup group = virtualThreads.newGroup();
     try {
-      CompletableFuture<?>[] futures = users.entrySet().parallelStream()
-          .map(entry -> CompletableFuture.runAsync(() -> {
-            try {
-              String filename = entry.getKey() + ".log";
-              LogWriter.writeUserLogs(filename, entry.getValue().getTransactionLogs(),
-                  entry.getValue().getBalance());
-            } catch (IOException e) {
-              throw new RuntimeException("Failed to write logs for user " + entry.getKey(), e);
-            }
-          }, executor))
-          .toArray(CompletableFuture[]::new);
-      
-      CompletableFuture.allOf(futures).join();
-    } finally {
-      executor.shutdown();
+      for (User user : users.values()) {
+        group.submit(() -> {
+          EncodeBuffer buffer = POOLED_BUFFERS.poll();
+          if (buffer == null) {
+            buffer = new EncodeBuffer(ENCODE_BUFFER_SIZE);
+          }
+          writeUser(user, target, buffer, AnalyzerMetrics.get());
+          if (buffer.array().length <= MAX_RETAINED_BUFFER_SIZE) {
+            POOLED_BUFFERS.offer(buffer);
+          }
+        });
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while writing user logs", e);
     }
+    group.await();
+  }
+  
+  private static Future<?> submitBatch(List<User> batch, OutputLayout target) {
+    return writerPool().submit(() -> {
+      EncodeBuffer buffer = ENCODE_BUFFER.get();
+      AnalyzerMetrics metrics = AnalyzerMetrics.get();
+      for (User user : batch) {
+        writeUser(user, target, buffer, metrics);
+      }
+      if (buffer.array().length > MAX_RETAINED_BUFFER_SIZE) {
+        ENCODE_BUFFER.remove();
+      }
+    });
+  }
+  
+  /**
+   * Кодирует лог пользователя в буфер и передает его в размещение.
+   */
+  private static void writeUser(User user, OutputLayout target, EncodeBuffer buffer,
+                                AnalyzerMetrics metrics) {
+    long started = System.nanoTime();
+    buffer.reset();
+    TransactionEncoder.encodeUserLog(user.getName(), user.getTransactionLogs(),
+        user.getBalance(), LocalDateTime.now(), buffer);
+    try {
+      target.write(user.getName(), user.getBalance(), buffer.asByteBuffer());
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to write logs for user " + user.getName(), e);
+    }
+    metrics.recordUserWrite(System.nanoTime() - started);
+  }
+  
+  private static OutputLayout currentLayout() {
+    OutputLayout current = layout;
+    if (current == null) {
+      if (outputDirectory == null) {
+        throw new IllegalStateException("LogWriter is not initialized");
+      }
+      current = new PerUserFileLayout(outputDirectory);
+      layout = current;
+    }
+    return current;
+  }
+  
+  /**
+   * Возвращает общий пул потоков записи, создавая его при первом обращении.
+   *
+   * <p>Потоки пула - демоны, поэтому пул не требует явного завершения.
+   */
+  private static synchronized ExecutorService writerPool() {
+    if (writerPool == null) {
+      int threads = Runtime.getRuntime().availableProcessors();
+      AtomicInteger counter = new AtomicInteger();
+      writerPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(threads * QUEUED_BATCHES_PER_THREAD),
+          runnable -> {
+            Thread thread = new Thread(runnable, "log-writer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          },
+          new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    return writerPool;
   }
   
   /**
@@ -111,14 +280,39 @@ public class LogWriter {
         writer.newLine();
       }
       
-      // Запись итогового баланса
-      String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMATTER);
-      String balanceEntry = String.format("[%s] %s final balance %f",
-          timestamp, userName, finalBalance);
-      writer.write(balanceEntry);
-      writer.newLine();
+      writeFinalBalance(writer, userName, finalBalance);
     }
     
   }
   
+  /**
+   * Открывает файл логов пользователя в директории вывода.
+   *
+   * @param userName имя пользователя
+   * @return writer для записи логов пользователя
+   * @throws IOException если не удалось создать файл
+   */
+  static BufferedWriter newUserLogWriter(String userName) throws IOException {
+    return Files.newBufferedWriter(outputDirectory.resolve(userName + ".log"));
+  }
+  
+  /**
+   * Записывает строку с итоговым балансом пользователя и текущим временем.
+   *
+   * @param writer       writer файла логов пользователя
+   * @param userName     имя пользователя
+   * @param finalBalance итоговый баланс
+   * @throws IOException если произошла ошибка записи
+   */
+  static void writeFinalBalance(BufferedWriter writer, String userName, BigDecimal finalBalance)
+      throws IOException {
+    String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMATTER);
+    writer.write('[');
+    writer.write(timestamp);
+    writer.write("] ");
+    writer.write(userName);
+    writer.write(" final balance ");
+    writer.write(TransactionEncoder.formatBalance(finalBalance));
+    writer.newLine();
+  }
 }
@@ -0,0 +1,112 @@
+package org.webbee.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Построчное чтение лог-файлов через отображение в память.
+ *
+ * <p>Файл отображается окнами размером не более {@value #WINDOW_SIZE} байт,
+ * границы строк ищутся непосредственно в байтах, и обработчику передаются
+ * диапазоны байтов без декодирования в String. Файлы больше 2 ГБ читаются
+ * последовательными окнами, начало следующего окна выравнивается по началу
+ * незавершенной строки.
+ *
+ * <p>Строки разделяются так же, как в {@link java.io.BufferedReader#readLine()}:
+ * символами {@code '\n'}, {@code '\r'} или парой {@code "\r\n"}.
+ */
+public final class MappedLogReader {
+  /** Максимальный размер одного окна отображения. */
+  static final int WINDOW_SIZE = 1 << 30;
+
+  private MappedLogReader() {
+  }
+
+  /**
+   * Обработчик строки, заданной диапазоном байтов.
+   */
+  @FunctionalInterface
+  public interface LineHandler {
+    /**
+     * Обрабатывает одну строку.
+     *
+     * @param buffer буфер с содержимым окна файла
+     * @param from   индекс первого байта строки
+     * @param to     индекс байта после конца строки
+     */
+    void onLine(ByteBuffer buffer, int from, int to);
+  }
+
+  /**
+   * Передает обработчику все строки файла.
+   *
+   * @param file    путь к файлу
+   * @param handler обработчик строк
+   * @throws IOException если произошла ошибка чтения или строка длиннее окна отображения
+   */
+  public static void forEachLine(Path file, LineHandler handler) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      forEachLine(channel, 0, channel.size(), handler);
+    }
+  }
+
+  /**
+   * Передает обработчику строки из диапазона байтов файла.
+   *
+   * <p>Диапазон должен начинаться с начала строки; последняя строка диапазона
+   * может не иметь символа перевода строки.
+   *
+   * @param channel канал открытого файла
+   * @param start   смещение начала диапазона
+   * @param end     смещение конца диапазона
+   * @param handler обработчик строк
+   * @throws IOException если произошла ошибка чтения или строка длиннее окна отображения
+   */
+  public static void forEachLine(FileChannel channel, long start, long end, LineHandler handler)
+      throws IOException {
+    long position = start;
+    while (position < end) {
+      int size = (int) Math.min(WINDOW_SIZE, end - position);
+      boolean last = position + size == end;
+      MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+      int consumed = forEachLine(window, size, last, handler);
+      if (consumed == 0) {
+        throw new IOException("Line at offset " + position + " exceeds "
+            + WINDOW_SIZE + " bytes");
+      }
+      position += consumed;
+    }
+  }
+
+  /**
+   * Передает обработчику завершенные строки буфера.
+   *
+   * @param buffer  буфер с содержимым
+   * @param limit   количество байтов в буфере
+   * @param last    признак того, что за буфером данных нет, и последняя строка завершена
+   * @param handler обработчик строк
+   * @return количество обработанных байтов, включая символы перевода строки
+   */
+  static int forEachLine(ByteBuffer buffer, int limit, boolean last, LineHandler handler) {
+    int lineStart = 0;
+    for (int i = 0; i < limit; i++) {
+      byte b = buffer.get(i);
+      if (b == '\n' || b == '\r') {
+        handler.onLine(buffer, lineStart, i);
+        if (b == '\r' && i + 1 < limit && buffer.get(i + 1) == '\n') {
+          i++;
+        }
+        lineStart = i + 1;
+      }
+    }
+    if (last && lineStart < limit) {
+      handler.onLine(buffer, lineStart, limit);
+      lineStart = limit;
+    }
+    return lineStart;
+  }
+}
@@ -0,0 +1,35 @@
+package org.webbee.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+/**
+ * Способ размещения логов пользователей в директории вывода.
+ *
+ * <p>Реализации должны допускать одновременные вызовы {@link #write} из
+ * нескольких потоков для разных пользователей.
+ */
+public interface OutputLayout extends Closeable {
+  /**
+   * Записывает полный лог одного пользователя.
+   *
+   * <p>Лог каждого пользователя передается целиком за один вызов. Повторная
+   * запись лога того же пользователя поддерживается не всеми реализациями.
+   *
+   * @param userName     имя пользователя
+   * @param finalBalance итоговый баланс пользователя, записанный в конце лога
+   * @param data         закодированный в UTF-8 лог пользователя
+   * @throws IOException если произошла ошибка записи
+   */
+  void write(String userName, BigDecimal finalBalance, ByteBuffer data) throws IOException;
+
+  /**
+   * Завершает запись и освобождает ресурсы. Повторные вызовы безопасны.
+   *
+   * @throws IOException если произошла ошибка записи
+   */
+  @Override
+  void close() throws IOException;
+}
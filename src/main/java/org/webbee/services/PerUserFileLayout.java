@@ -0,0 +1,51 @@
+package org.webbee.services;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Размещение по умолчанию: отдельный файл {@code <пользователь>.log} на каждого пользователя.
+ */
+public class PerUserFileLayout implements OutputLayout {
+  private final Path outputDirectory;
+
+  /**
+   * Создает размещение в указанной директории.
+   *
+   * @param outputDirectory директория вывода
+   */
+  public PerUserFileLayout(Path outputDirectory) {
+    this.outputDirectory = outputDirectory;
+  }
+
+  @Override
+  public void write(String userName, BigDecimal finalBalance, ByteBuffer data) throws IOException {
+    append(userName, data, true);
+  }
+
+  /**
+   * Дописывает блок в конец лога пользователя.
+   *
+   * @param userName имя пользователя
+   * @param data     закодированные строки лога
+   * @param truncate признак первого блока: существующий файл перезаписывается
+   * @throws IOException если не удалось записать файл
+   */
+  void append(String userName, ByteBuffer data, boolean truncate) throws IOException {
+    try (FileChannel channel = FileChannel.open(outputDirectory.resolve(userName + ".log"),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        truncate ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND)) {
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,123 @@
+package org.webbee.services;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Промежуточные результаты частей пользователей и их объединение.
+ *
+ * <p>Процесс части записывает логи своих пользователей в собственную директорию
+ * {@code .shards/shard-I-of-N} внутри директории вывода и после успешного
+ * завершения создает в ней файл-отметку. Объединение проверяет, что все части
+ * завершены, и переносит логи в директорию вывода. Логи частей не пересекаются,
+ * а итоговый баланс пользователя записан в конце его лога, поэтому объединение
+ * не читает содержимое файлов. Директория вывода может находиться в общей
+ * файловой системе, тогда части выполняются на разных машинах.
+ */
+public final class ShardOutput {
+  private static final String STAGING_DIR_NAME = ".shards";
+  private static final String COMPLETE_MARKER = "COMPLETE";
+
+  private ShardOutput() {
+  }
+
+  /**
+   * Возвращает директорию промежуточных результатов части.
+   *
+   * @param outputDirectory директория вывода
+   * @param shard           часть пользователей
+   * @return директория части
+   */
+  public static Path stagingDirectory(Path outputDirectory, UserShard shard) {
+    return stagingDirectory(outputDirectory, shard.getIndex(), shard.getCount());
+  }
+
+  private static Path stagingDirectory(Path outputDirectory, int index, int count) {
+    return outputDirectory.resolve(STAGING_DIR_NAME)
+        .resolve("shard-" + index + "-of-" + count);
+  }
+
+  /**
+   * Создает пустую директорию промежуточных результатов части, удаляя результаты
+   * предыдущего запуска этой части.
+   *
+   * @param outputDirectory директория вывода
+   * @param shard           часть пользователей
+   * @return директория части
+   * @throws IOException если не удалось очистить или создать директорию
+   */
+  public static Path prepare(Path outputDirectory, UserShard shard) throws IOException {
+    Path directory = stagingDirectory(outputDirectory, shard);
+    if (Files.isDirectory(directory)) {
+      deleteFiles(directory);
+    }
+    return Files.createDirectories(directory);
+  }
+
+  /**
+   * Отмечает результаты части как завершенные.
+   *
+   * @param outputDirectory директория вывода
+   * @param shard           часть пользователей
+   * @throws IOException если не удалось создать отметку
+   */
+  public static void markComplete(Path outputDirectory, UserShard shard) throws IOException {
+    Files.write(stagingDirectory(outputDirectory, shard).resolve(COMPLETE_MARKER),
+        new byte[0]);
+  }
+
+  /**
+   * Переносит логи пользователей всех частей в директорию вывода и удаляет
+   * промежуточные директории.
+   *
+   * <p>Перед переносом проверяется, что все части завершены, поэтому при ошибке
+   * любой части директория вывода не изменяется.
+   *
+   * @param outputDirectory директория вывода
+   * @param count           количество частей
+   * @return количество перенесенных логов пользователей
+   * @throws IOException если часть не завершена или не удалось перенести файлы
+   */
+  public static long merge(Path outputDirectory, int count) throws IOException {
+    List<Path> directories = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Path directory = stagingDirectory(outputDirectory, i, count);
+      if (!Files.exists(directory.resolve(COMPLETE_MARKER))) {
+        throw new IOException("Shard " + i + "/" + count + " has not completed: " + directory);
+      }
+      directories.add(directory);
+    }
+    long merged = 0;
+    for (Path directory : directories) {
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.log")) {
+        for (Path file : files) {
+          Files.move(file, outputDirectory.resolve(file.getFileName()),
+              StandardCopyOption.REPLACE_EXISTING);
+          merged++;
+        }
+      }
+      deleteFiles(directory);
+      Files.delete(directory);
+    }
+    Path stagingRoot = outputDirectory.resolve(STAGING_DIR_NAME);
+    try (DirectoryStream<Path> remaining = Files.newDirectoryStream(stagingRoot)) {
+      if (!remaining.iterator().hasNext()) {
+        Files.delete(stagingRoot);
+      }
+    }
+    return merged;
+  }
+
+  private static void deleteFiles(Path directory) throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Files.delete(file);
+      }
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package org.webbee.services;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Размещение логов всех пользователей в небольшом числе больших файлов-шардов.
+ *
+ * <p>Пользователь относится к шарду {@code shard-NNN.bundle} по хешу имени так же,
+ * как к части пользователей при распределенной обработке ({@link UserShard#indexOf}).
+ * Логи пользователей дописываются в конец шарда целыми блоками, запись
+ * в каждый шард выполняется под собственной блокировкой. Повторная запись
+ * лога того же пользователя не заменяет предыдущую, поэтому размещение
+ * подходит только для однократной выгрузки всех пользователей.
+ *
+ * <p>При закрытии рядом с каждым шардом записывается индекс
+ * {@code shard-NNN.index}:
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    количество шардов
+ * int    количество записей
+ * записи: строка имя пользователя, long смещение, int длина, строка итоговый баланс
+ * </pre>
+ * Строка записывается как int длина и байты UTF-8. Индекс читается {@link ShardedBundleReader}.
+ */
+public class ShardedBundleLayout implements OutputLayout {
+  static final int INDEX_MAGIC = 0x4C414258;
+  static final int INDEX_VERSION = 3;
+
+  private final Path outputDirectory;
+  private final FileChannel[] shards;
+  private final List<List<IndexEntry>> indexes;
+  private boolean closed;
+
+  /**
+   * Создает размещение и открывает файлы шардов, очищая их содержимое.
+   *
+   * @param outputDirectory директория вывода
+   * @param shardCount      количество шардов
+   * @throws IllegalArgumentException если shardCount меньше 1
+   * @throws IOException              если не удалось открыть файлы шардов
+   */
+  public ShardedBundleLayout(Path outputDirectory, int shardCount) throws IOException {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("Shard count must be positive");
+    }
+    this.outputDirectory = outputDirectory;
+    this.shards = new FileChannel[shardCount];
+    this.indexes = new ArrayList<>(shardCount);
+    try {
+      for (int i = 0; i < shardCount; i++) {
+        Files.deleteIfExists(indexFile(outputDirectory, i));
+        shards[i] = FileChannel.open(bundleFile(outputDirectory, i), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        indexes.add(new ArrayList<>());
+      }
+    } catch (IOException e) {
+      closeChannels();
+      throw e;
+    }
+  }
+
+  /**
+   * Возвращает номер шарда пользователя.
+   *
+   * @param userName   имя пользователя
+   * @param shardCount количество шардов
+   * @return номер шарда
+   */
+  public static int shardOf(String userName, int shardCount) {
+    return UserShard.indexOf(userName, shardCount);
+  }
+
+  @Override
+  public void write(String userName, BigDecimal finalBalance, ByteBuffer data)
+      throws IOException {
+    int shard = shardOf(userName, shards.length);
+    FileChannel channel = shards[shard];
+    synchronized (channel) {
+      long offset = channel.position();
+      int length = data.remaining();
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+      indexes.get(shard).add(new IndexEntry(userName, offset, length, finalBalance));
+    }
+  }
+
+  /**
+   * Записывает индексы шардов и закрывает файлы.
+   *
+   * @throws IOException если не удалось записать индексы или закрыть файлы
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      for (int i = 0; i < shards.length; i++) {
+        synchronized (shards[i]) {
+          shards[i].force(false);
+          writeIndex(i, indexes.get(i));
+        }
+      }
+    } finally {
+      closeChannels();
+    }
+  }
+
+  static Path bundleFile(Path outputDirectory, int shard) {
+    return outputDirectory.resolve(String.format("shard-%03d.bundle", shard));
+  }
+
+  static Path indexFile(Path outputDirectory, int shard) {
+    return outputDirectory.resolve(String.format("shard-%03d.index", shard));
+  }
+
+  /**
+   * Записывает индекс шарда во временный файл и атомарно переименовывает его,
+   * чтобы читатель не увидел недописанный индекс.
+   */
+  private void writeIndex(int shard, List<IndexEntry> entries) throws IOException {
+    Path index = indexFile(outputDirectory, shard);
+    Path temporary = index.resolveSibling(index.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(INDEX_VERSION);
+      out.writeInt(shards.length);
+      out.writeInt(entries.size());
+      for (IndexEntry entry : entries) {
+        BinaryStrings.write(out, entry.userName);
+        out.writeLong(entry.offset);
+        out.writeInt(entry.length);
+        BinaryStrings.write(out, entry.finalBalance.toString());
+      }
+    }
+    Files.move(temporary, index, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void closeChannels() throws IOException {
+    IOException failure = null;
+    for (FileChannel channel : shards) {
+      if (channel == null) {
+        continue;
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Положение лога пользователя в шарде.
+   */
+  private static final class IndexEntry {
+    final String userName;
+    final long offset;
+    final int length;
+    final BigDecimal finalBalance;
+
+    IndexEntry(String userName, long offset, int length, BigDecimal finalBalance) {
+      this.userName = userName;
+      this.offset = offset;
+      this.length = length;
+      this.finalBalance = finalBalance;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package org.webbee.services;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.webbee.model.Transaction;
+
+/**
+ * Чтение логов отдельных пользователей из файлов, записанных {@link ShardedBundleLayout}.
+ *
+ * <p>Индекс шарда загружается при первом обращении к его пользователю,
+ * лог пользователя читается одним позиционным чтением.
+ */
+public class ShardedBundleReader {
+  private final Path outputDirectory;
+  private final int shardCount;
+  private final Map<Integer, Map<String, Location>> indexes = new HashMap<>();
+
+  /**
+   * Создает читателя шардов в указанной директории.
+   *
+   * @param outputDirectory директория вывода с файлами шардов и индексами
+   * @throws IOException если индекс первого шарда отсутствует или поврежден
+   */
+  public ShardedBundleReader(Path outputDirectory) throws IOException {
+    this.outputDirectory = outputDirectory;
+    Map<String, Location> first = new HashMap<>();
+    this.shardCount = readIndex(0, first);
+    indexes.put(0, first);
+  }
+
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  /**
+   * Читает лог пользователя.
+   *
+   * @param userName имя пользователя
+   * @return история транзакций и итоговый баланс или {@code null},
+   *         если пользователя нет в индексе
+   * @throws IOException если не удалось прочитать шард или индекс
+   */
+  public synchronized UserLog read(String userName) throws IOException {
+    int shard = ShardedBundleLayout.shardOf(userName, shardCount);
+    Map<String, Location> index = indexes.get(shard);
+    if (index == null) {
+      index = new HashMap<>();
+      if (readIndex(shard, index) != shardCount) {
+        throw new IOException("Shard count mismatch in index of shard " + shard);
+      }
+      indexes.put(shard, index);
+    }
+    Location location = index.get(userName);
+    if (location == null) {
+      return null;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(location.length);
+    try (FileChannel channel = FileChannel.open(
+        ShardedBundleLayout.bundleFile(outputDirectory, shard), StandardOpenOption.READ)) {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, location.offset + buffer.position()) < 0) {
+          throw new IOException("Shard " + shard + " is shorter than its index");
+        }
+      }
+    }
+    String[] lines = new String(buffer.array(), StandardCharsets.UTF_8).split("\\R");
+    // Последняя строка - итоговый баланс, он берется из индекса без учета локали
+    List<Transaction> transactions = new ArrayList<>(Math.max(0, lines.length - 1));
+    for (int i = 0; i < lines.length - 1; i++) {
+      Transaction transaction = LineParser.parseLine(lines[i]);
+      if (transaction == null) {
+        throw new IOException("Malformed record for user " + userName + ": " + lines[i]);
+      }
+      transactions.add(transaction);
+    }
+    return new UserLog(userName, transactions, location.finalBalance);
+  }
+
+  /**
+   * Загружает индекс шарда.
+   *
+   * @return количество шардов, записанное в индексе
+   */
+  private int readIndex(int shard, Map<String, Location> index) throws IOException {
+    Path file = ShardedBundleLayout.indexFile(outputDirectory, shard);
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != ShardedBundleLayout.INDEX_MAGIC
+          || in.readInt() != ShardedBundleLayout.INDEX_VERSION) {
+        throw new IOException("Unsupported shard index format: " + file);
+      }
+      int count = in.readInt();
+      int entries = in.readInt();
+      for (int i = 0; i < entries; i++) {
+        String userName = BinaryStrings.read(in);
+        long offset = in.readLong();
+        int length = in.readInt();
+        index.put(userName, new Location(offset, length,
+            new BigDecimal(BinaryStrings.read(in))));
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Лог одного пользователя, прочитанный из шарда.
+   */
+  public static final class UserLog {
+    private final String userName;
+    private final List<Transaction> transactions;
+    private final BigDecimal finalBalance;
+
+    UserLog(String userName, List<Transaction> transactions, BigDecimal finalBalance) {
+      this.userName = userName;
+      this.transactions = Collections.unmodifiableList(transactions);
+      this.finalBalance = finalBalance;
+    }
+
+    public String getUserName() {
+      return userName;
+    }
+
+    /**
+     * Возвращает историю транзакций в порядке записи (по времени).
+     *
+     * @return неизменяемый список транзакций
+     */
+    public List<Transaction> getTransactions() {
+      return transactions;
+    }
+
+    public BigDecimal getFinalBalance() {
+      return finalBalance;
+    }
+  }
+
+  private static final class Location {
+    final long offset;
+    final int length;
+    final BigDecimal finalBalance;
+
+    Location(long offset, int length, BigDecimal finalBalance) {
+      this.offset = offset;
+      this.length = length;
+      this.finalBalance = finalBalance;
+    }
+  }
+}
@@ -0,0 +1,390 @@
+package org.webbee.services;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import org.webbee.model.TransactionColumns;
+import org.webbee.model.User;
+import org.webbee.model.UserIdTable;
+
+/**
+ * Двоичный снимок агрегированного состояния пользователей.
+ *
+ * <p>Позволяет восстановить балансы и историю транзакций без повторного разбора
+ * текстовых логов. Формат файла (все числа big-endian):
+ * <ul>
+ *   <li>заголовок - {@link #MAGIC} и {@link #VERSION};</li>
+ *   <li>блок на каждого пользователя: номер имени в словаре, признак balance inquiry,
+ *       баланс, количество транзакций и столбцы {@link TransactionColumns} - время,
+ *       суммы, масштабы, типы операций, номера получателей, затем суммы,
+ *       не поместившиеся в long;</li>
+ *   <li>блок словаря - имена пользователей и получателей в порядке номеров;</li>
+ *   <li>окончание - смещение словаря, количество пользователей, количество транзакций
+ *       и {@link #MAGIC}.</li>
+ * </ul>
+ * Каждый блок предваряется длиной и завершается CRC32 своего содержимого.
+ *
+ * <p>Файл читается через отображение в память окнами, столбцы копируются в массивы
+ * целиком. При компактном хранении транзакции попадают в журналы пользователей
+ * без создания объектов {@link org.webbee.model.Transaction}.
+ */
+public final class StateSnapshot {
+  /** Сигнатура файла снимка. */
+  public static final int MAGIC = 0x4C41534E;
+  /** Версия формата снимка. */
+  public static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int FOOTER_SIZE = 24;
+  /** Байтов на транзакцию в столбцах: время, сумма, масштаб, операция, получатель. */
+  private static final int RECORD_SIZE = 8 + 8 + 1 + 1 + 4;
+  private static final long WINDOW_SIZE = 64L << 20;
+
+  private StateSnapshot() {
+  }
+
+  /**
+   * Атомарно записывает снимок состояния пользователей.
+   *
+   * @param file  путь к файлу снимка
+   * @param users пользователи с балансами и историей транзакций
+   * @throws IOException если не удалось записать файл
+   */
+  public static void write(Path file, Map<String, User> users) throws IOException {
+    UserIdTable dictionary = new UserIdTable();
+    for (String name : users.keySet()) {
+      dictionary.intern(name);
+    }
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    CRC32 checksum = new CRC32();
+    long records = 0;
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      long position = HEADER_SIZE;
+      for (User user : users.values()) {
+        TransactionColumns columns =
+            TransactionColumns.of(user.getTransactionLogs(), dictionary);
+        position += writeBlock(out, encodeUser(user, dictionary, columns), checksum);
+        records += columns.size();
+      }
+      long dictionaryOffset = position;
+      writeBlock(out, encodeDictionary(dictionary), checksum);
+      out.writeLong(dictionaryOffset);
+      out.writeInt(users.size());
+      out.writeLong(records);
+      out.writeInt(MAGIC);
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Загружает снимок состояния пользователей.
+   *
+   * @param file           путь к файлу снимка
+   * @param compactStorage признак компактного хранения транзакций
+   * @return агрегатор с восстановленным состоянием
+   * @throws IOException если файл не удалось прочитать, он поврежден
+   *                     или его формат не поддерживается
+   */
+  public static UserLogsAggregator load(Path file, boolean compactStorage) throws IOException {
+    UserLogsAggregator state = new UserLogsAggregator(compactStorage);
+    mergeInto(file, state);
+    return state;
+  }
+
+  /**
+   * Применяет снимок к состоянию так, как если бы транзакции снимка были обработаны
+   * после уже примененных: балансы пользователей снимка без balance inquiry
+   * прибавляются к текущим, история дописывается.
+   *
+   * @param file  путь к файлу снимка
+   * @param state состояние, к которому применяется снимок
+   * @throws IOException если файл не удалось прочитать, он поврежден
+   *                     или его формат не поддерживается
+   */
+  static void mergeInto(Path file, UserLogsAggregator state) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE + FOOTER_SIZE) {
+        throw new SnapshotFormatException("file is too short");
+      }
+      Window window = new Window(channel, size - FOOTER_SIZE);
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+        throw new IOException("Unsupported snapshot format: " + file);
+      }
+      ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, size - FOOTER_SIZE,
+          FOOTER_SIZE);
+      long dictionaryOffset = footer.getLong();
+      int userCount = footer.getInt();
+      footer.getLong();
+      if (footer.getInt() != MAGIC || dictionaryOffset < HEADER_SIZE
+          || dictionaryOffset > size - FOOTER_SIZE || userCount < 0) {
+        throw new SnapshotFormatException("invalid footer");
+      }
+
+      CRC32 checksum = new CRC32();
+      UserIdTable userIds = state.getUserIds() != null ? state.getUserIds() : new UserIdTable();
+      int[] ids;
+      try {
+        ids = readDictionary(window.block(dictionaryOffset, checksum), userIds);
+      } catch (BufferUnderflowException | IllegalArgumentException e) {
+        throw new SnapshotFormatException("invalid dictionary");
+      }
+      Set<String> names = new HashSet<>();
+      long position = HEADER_SIZE;
+      for (int i = 0; i < userCount; i++) {
+        ByteBuffer block = window.block(position, checksum);
+        User user;
+        try {
+          user = readUser(block.duplicate(), state, userIds, ids);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+          throw new SnapshotFormatException("invalid user block at offset " + position);
+        }
+        if (!names.add(user.getName())) {
+          throw new SnapshotFormatException("duplicate user at offset " + position);
+        }
+        state.mergeUser(user);
+        position += Integer.BYTES + block.remaining() + Integer.BYTES;
+      }
+      if (position != dictionaryOffset) {
+        throw new SnapshotFormatException("unexpected data before dictionary");
+      }
+    } catch (SnapshotFormatException e) {
+      throw new IOException("Snapshot is corrupted: " + file + ", " + e.getMessage());
+    }
+  }
+
+  /**
+   * Кодирует блок пользователя.
+   *
+   * @throws IOException если блок пользователя не помещается в массив
+   *                     (более {@link Integer#MAX_VALUE} байтов)
+   */
+  private static ByteBuffer encodeUser(User user, UserIdTable dictionary,
+                                       TransactionColumns columns) throws IOException {
+    byte[] balance = user.getBalance().toString().getBytes(StandardCharsets.US_ASCII);
+    List<byte[]> overflow = new ArrayList<>();
+    long overflowBytes = 0;
+    for (BigDecimal amount : columns.getOverflowAmounts()) {
+      byte[] bytes = amount.toString().getBytes(StandardCharsets.US_ASCII);
+      overflow.add(bytes);
+      overflowBytes += Integer.BYTES + bytes.length;
+    }
+    int count = columns.size();
+    long length = Integer.BYTES + 1 + Integer.BYTES + balance.length
+        + Integer.BYTES + (long) count * RECORD_SIZE + Integer.BYTES + overflowBytes;
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("User " + user.getName() + " has too many transactions ("
+          + count + ") for a snapshot block of " + length + " bytes");
+    }
+    ByteBuffer block = ByteBuffer.allocate((int) length);
+    block.putInt(dictionary.intern(user.getName()));
+    block.put((byte) (user.isBalanceInquired() ? 1 : 0));
+    putBytes(block, balance);
+    block.putInt(count);
+    block.asLongBuffer().put(columns.getEpochSeconds());
+    block.position(block.position() + count * Long.BYTES);
+    block.asLongBuffer().put(columns.getAmounts());
+    block.position(block.position() + count * Long.BYTES);
+    block.put(columns.getScales());
+    block.put(columns.getOperations());
+    block.asIntBuffer().put(columns.getRecipients());
+    block.position(block.position() + count * Integer.BYTES);
+    block.putInt(overflow.size());
+    for (byte[] bytes : overflow) {
+      putBytes(block, bytes);
+    }
+    block.flip();
+    return block;
+  }
+
+  private static ByteBuffer encodeDictionary(UserIdTable dictionary) {
+    int size = dictionary.size();
+    byte[][] names = new byte[size][];
+    int length = Integer.BYTES;
+    for (int i = 0; i < size; i++) {
+      names[i] = dictionary.name(i).getBytes(StandardCharsets.UTF_8);
+      length += Integer.BYTES + names[i].length;
+    }
+    ByteBuffer block = ByteBuffer.allocate(length);
+    block.putInt(size);
+    for (byte[] name : names) {
+      putBytes(block, name);
+    }
+    block.flip();
+    return block;
+  }
+
+  /**
+   * Записывает блок с длиной и контрольной суммой.
+   *
+   * @return количество записанных байтов
+   */
+  private static int writeBlock(DataOutputStream out, ByteBuffer block, CRC32 checksum)
+      throws IOException {
+    int length = block.remaining();
+    checksum.reset();
+    checksum.update(block.array(), block.arrayOffset(), length);
+    out.writeInt(length);
+    out.write(block.array(), block.arrayOffset(), length);
+    out.writeInt((int) checksum.getValue());
+    return Integer.BYTES + length + Integer.BYTES;
+  }
+
+  /**
+   * Читает словарь снимка и выдает его именам номера в таблице символов состояния.
+   *
+   * @return номера в таблице символов по номерам словаря снимка
+   */
+  private static int[] readDictionary(ByteBuffer block, UserIdTable userIds) {
+    int size = block.getInt();
+    if (size < 0 || size > block.remaining() / Integer.BYTES) {
+      throw new IllegalArgumentException("Invalid dictionary size: " + size);
+    }
+    int[] ids = new int[size];
+    Set<String> names = new HashSet<>();
+    for (int i = 0; i < size; i++) {
+      String name = getString(block, StandardCharsets.UTF_8);
+      if (!names.add(name)) {
+        throw new IllegalArgumentException("Duplicate name in dictionary");
+      }
+      ids[i] = userIds.intern(name);
+    }
+    return ids;
+  }
+
+  private static User readUser(ByteBuffer block, UserLogsAggregator state,
+                               UserIdTable userIds, int[] ids) {
+    String name = userIds.name(mapId(ids, block.getInt()));
+    boolean balanceInquired = block.get() != 0;
+    BigDecimal balance = new BigDecimal(getString(block, StandardCharsets.US_ASCII));
+    int count = block.getInt();
+    if (count < 0 || (long) count * RECORD_SIZE > block.remaining()) {
+      throw new IllegalArgumentException("Invalid transaction count: " + count);
+    }
+    TransactionColumns columns = new TransactionColumns(count);
+    block.asLongBuffer().get(columns.getEpochSeconds());
+    block.position(block.position() + count * Long.BYTES);
+    block.asLongBuffer().get(columns.getAmounts());
+    block.position(block.position() + count * Long.BYTES);
+    block.get(columns.getScales());
+    block.get(columns.getOperations());
+    block.asIntBuffer().get(columns.getRecipients());
+    block.position(block.position() + count * Integer.BYTES);
+    int overflow = block.getInt();
+    for (int i = 0; i < overflow; i++) {
+      columns.getOverflowAmounts().add(
+          new BigDecimal(getString(block, StandardCharsets.US_ASCII)));
+    }
+    int[] recipients = columns.getRecipients();
+    for (int i = 0; i < count; i++) {
+      if (recipients[i] != TransactionColumns.NO_RECIPIENT) {
+        recipients[i] = mapId(ids, recipients[i]);
+      }
+      if (columns.getScales()[i] == TransactionColumns.OVERFLOW_SCALE
+          && (columns.getAmounts()[i] < 0 || columns.getAmounts()[i] >= overflow)) {
+        throw new IllegalArgumentException("Invalid overflow amount index");
+      }
+    }
+    User user = state.newUser(name, balance, balanceInquired);
+    user.addTransactions(columns, userIds);
+    return user;
+  }
+
+  private static int mapId(int[] ids, int id) {
+    if (id < 0 || id >= ids.length) {
+      throw new IllegalArgumentException("Invalid user id: " + id);
+    }
+    return ids[id];
+  }
+
+  private static void putBytes(ByteBuffer block, byte[] bytes) {
+    block.putInt(bytes.length);
+    block.put(bytes);
+  }
+
+  private static String getString(ByteBuffer block, Charset charset) {
+    int length = block.getInt();
+    if (length < 0 || length > block.remaining()) {
+      throw new IllegalArgumentException("Invalid string length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    block.get(bytes);
+    return new String(bytes, charset);
+  }
+
+  /**
+   * Ошибка структуры снимка, преобразуемая в {@link IOException} с именем файла.
+   */
+  private static final class SnapshotFormatException extends IOException {
+    SnapshotFormatException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Окно отображения файла в память, сдвигаемое по мере чтения блоков.
+   */
+  private static final class Window {
+    private final FileChannel channel;
+    private final long limit;
+    private ByteBuffer buffer;
+    private long start;
+
+    Window(FileChannel channel, long limit) {
+      this.channel = channel;
+      this.limit = limit;
+    }
+
+    /**
+     * Возвращает содержимое блока, начинающегося с указанного смещения,
+     * проверив его контрольную сумму.
+     */
+    ByteBuffer block(long position, CRC32 checksum) throws IOException {
+      int length = slice(position, Integer.BYTES).getInt();
+      if (length < 0 || position + Integer.BYTES + length + Integer.BYTES > limit) {
+        throw new SnapshotFormatException("invalid block length at offset " + position);
+      }
+      ByteBuffer block = slice(position + Integer.BYTES, length + Integer.BYTES);
+      int expected = block.getInt(length);
+      block.limit(length);
+      checksum.reset();
+      checksum.update(block.duplicate());
+      if ((int) checksum.getValue() != expected) {
+        throw new SnapshotFormatException("checksum mismatch at offset " + position);
+      }
+      return block;
+    }
+
+    private ByteBuffer slice(long position, int length) throws IOException {
+      if (buffer == null || position < start || position + length > start + buffer.capacity()) {
+        long size = Math.min(limit - position, Math.max(WINDOW_SIZE, length));
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        start = position;
+      }
+      ByteBuffer slice = buffer.duplicate();
+      slice.position((int) (position - start));
+      slice.limit(slice.position() + length);
+      return slice.slice();
+    }
+  }
+}
@@ -0,0 +1,611 @@
+package org.webbee.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.webbee.metrics.AnalyzerMetrics;
+import org.webbee.metrics.QueueGauge;
+import org.webbee.model.Transaction;
+import org.webbee.model.User;
+
+/**
+ * Потоковая обработка логов конвейером этапов, связанных ограниченными очередями.
+ *
+ * <p>Этапы конвейера:
+ * <ol>
+ *   <li>обход - один поток перечисляет файлы и передает их в очередь {@code read};</li>
+ *   <li>чтение - потоки читают файлы блоками около {@value #CHUNK_SIZE} байтов,
+ *       заканчивающимися на границе строки (сжатые файлы - с распаковкой),
+ *       и передают их в очередь {@code parse};</li>
+ *   <li>разбор - потоки разбирают строки блоков в транзакции и передают их
+ *       в очередь {@code aggregate};</li>
+ *   <li>агрегация - один поток применяет транзакции в порядке файлов и строк,
+ *       как при последовательной обработке, и передает историю пользователей
+ *       в очереди {@code write-N};</li>
+ *   <li>запись - потоки дописывают логи пользователей. Пользователь всегда
+ *       обрабатывается одним потоком записи, поэтому его блоки не перемешиваются.</li>
+ * </ol>
+ * Заполненная очередь блокирует предыдущий этап, поэтому объем данных в пути
+ * ограничен емкостью очередей. Глубина очередей учитывается в {@link AnalyzerMetrics}.
+ * Блоки, прочитанные раньше очереди применения, ждут агрегации; их количество ограничено
+ * емкостью очереди, а сверх нее пропускаются только блоки файла, применяемого сейчас.
+ *
+ * <p>Если включен сброс по разделам, поддиректории первого уровня считаются разделами
+ * по времени (например, по дням): разделы обрабатываются в порядке имен, файлы корня -
+ * первыми. После раздела история затронутых им пользователей сортируется, дописывается
+ * в их логи и освобождается, в памяти остаются только балансы. Записи раздела не должны
+ * быть раньше записей предыдущих разделов, количество нарушений выводится в stderr.
+ * Без сброса по разделам история пишется после обработки всех файлов.
+ *
+ * <p>Строки итогового баланса дописываются после обработки всех файлов.
+ */
+public class StreamingPipeline {
+  /** Количество потоков чтения по умолчанию. */
+  public static final int DEFAULT_READ_WORKERS = 1;
+  /** Количество потоков записи по умолчанию. */
+  public static final int DEFAULT_WRITE_WORKERS = 2;
+  /** Емкость очередей между этапами по умолчанию. */
+  public static final int DEFAULT_QUEUE_CAPACITY = 64;
+  private static final int CHUNK_SIZE = 1 << 20;
+  private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+  private static final int ENCODE_BUFFER_SIZE = 1 << 16;
+
+  private final DirectoryReader reader;
+  private final Path outputDirectory;
+  private final int readWorkers;
+  private final int parseWorkers;
+  private final int writeWorkers;
+  private final int queueCapacity;
+  private final boolean flushPartitions;
+  private final DuplicateFilter duplicates;
+  private final UserShard shard;
+  private final List<Thread> threads = new ArrayList<>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private final AtomicLong lateRecords = new AtomicLong();
+
+  /**
+   * Создает конвейер.
+   *
+   * @param reader          источник списка лог-файлов
+   * @param outputDirectory директория вывода, файлы в которой не обрабатываются
+   * @param readWorkers     количество потоков чтения
+   * @param parseWorkers    количество потоков разбора
+   * @param writeWorkers    количество потоков записи
+   * @param queueCapacity   емкость каждой очереди между этапами
+   * @param flushPartitions признак сброса истории после каждого раздела
+   * @param duplicates      фильтр повторов или {@code null}
+   * @param shard           часть пользователей или {@code null} для всех
+   * @throws IllegalArgumentException если количество потоков или емкость неположительные
+   */
+  public StreamingPipeline(DirectoryReader reader, Path outputDirectory, int readWorkers,
+                           int parseWorkers, int writeWorkers, int queueCapacity,
+                           boolean flushPartitions, DuplicateFilter duplicates,
+                           UserShard shard) {
+    if (readWorkers <= 0 || parseWorkers <= 0 || writeWorkers <= 0 || queueCapacity <= 0) {
+      throw new IllegalArgumentException("Worker counts and queue capacity must be positive");
+    }
+    this.reader = reader;
+    this.outputDirectory = outputDirectory.toAbsolutePath();
+    this.readWorkers = readWorkers;
+    this.parseWorkers = parseWorkers;
+    this.writeWorkers = writeWorkers;
+    this.queueCapacity = queueCapacity;
+    this.flushPartitions = flushPartitions;
+    this.duplicates = duplicates;
+    this.shard = shard;
+  }
+
+  /**
+   * Обрабатывает все файлы и записывает логи пользователей.
+   *
+   * <p>При ошибке любого этапа остальные этапы прерываются, а ошибка
+   * пробрасывается после их завершения.
+   *
+   * @throws IOException если произошла ошибка чтения файлов или записи логов
+   */
+  public void run() throws IOException {
+    AnalyzerMetrics metrics = AnalyzerMetrics.get();
+    BlockingQueue<FileTask> files = new ArrayBlockingQueue<>(queueCapacity);
+    BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(queueCapacity);
+    BlockingQueue<ParsedChunk> parsed = new ArrayBlockingQueue<>(queueCapacity);
+    QueueGauge readGauge = metrics.registerQueue("read", files);
+    QueueGauge parseGauge = metrics.registerQueue("parse", chunks);
+    QueueGauge aggregateGauge = metrics.registerQueue("aggregate", parsed);
+    List<BlockingQueue<WriteTask>> writeQueues = new ArrayList<>();
+    List<QueueGauge> writeGauges = new ArrayList<>();
+    for (int i = 0; i < writeWorkers; i++) {
+      BlockingQueue<WriteTask> queue = new ArrayBlockingQueue<>(queueCapacity);
+      writeQueues.add(queue);
+      writeGauges.add(metrics.registerQueue("write-" + i, queue));
+    }
+
+    ChunkBudget budget = new ChunkBudget(queueCapacity);
+    stage("stream-walk", () -> walk(files, readGauge));
+    AtomicInteger activeReaders = new AtomicInteger(readWorkers);
+    for (int i = 0; i < readWorkers; i++) {
+      stage("stream-read-" + i, () -> {
+        read(files, chunks, budget, parseGauge);
+        if (activeReaders.decrementAndGet() == 0) {
+          for (int j = 0; j < parseWorkers; j++) {
+            put(chunks, Chunk.END, parseGauge);
+          }
+        }
+      });
+    }
+    AtomicInteger activeParsers = new AtomicInteger(parseWorkers);
+    for (int i = 0; i < parseWorkers; i++) {
+      stage("stream-parse-" + i, () -> {
+        parse(chunks, parsed, aggregateGauge);
+        if (activeParsers.decrementAndGet() == 0) {
+          put(parsed, ParsedChunk.END, aggregateGauge);
+        }
+      });
+    }
+    stage("stream-aggregate",
+        () -> new AggregateStage(writeQueues, writeGauges, budget).run(parsed));
+    for (int i = 0; i < writeWorkers; i++) {
+      BlockingQueue<WriteTask> queue = writeQueues.get(i);
+      stage("stream-write-" + i, () -> write(queue));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    awaitStages();
+
+    if (lateRecords.get() > 0) {
+      System.err.println(lateRecords.get() + " records were older than records of previous"
+          + " partitions, their user logs are not sorted");
+    }
+  }
+
+  /**
+   * Создает поток этапа. Потоки запускаются после создания всех этапов,
+   * чтобы ошибка первого этапа прерывала все остальные.
+   */
+  private void stage(String name, Stage stage) {
+    Thread thread = new Thread(() -> {
+      try {
+        stage.run();
+      } catch (InterruptedException e) {
+        // Остановка из-за ошибки другого этапа
+      } catch (Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+          interruptStages();
+        }
+      }
+    }, name);
+    thread.setDaemon(true);
+    threads.add(thread);
+  }
+
+  private void interruptStages() {
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+  }
+
+  private void awaitStages() throws IOException {
+    try {
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      interruptStages();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for pipeline stages", e);
+    }
+    Throwable error = failure.get();
+    if (error instanceof UncheckedIOException) {
+      throw ((UncheckedIOException) error).getCause();
+    }
+    if (error instanceof RuntimeException) {
+      throw (RuntimeException) error;
+    }
+    if (error instanceof Error) {
+      throw (Error) error;
+    }
+    if (error != null) {
+      throw new IOException(error);
+    }
+  }
+
+  private static <T> void put(BlockingQueue<T> queue, T item, QueueGauge gauge)
+      throws InterruptedException {
+    queue.put(item);
+    gauge.observe();
+  }
+
+  /**
+   * Перечисляет файлы и передает их потокам чтения по мере обхода. При сбросе
+   * по разделам файлы сначала группируются, чтобы передать их в порядке разделов.
+   */
+  private void walk(BlockingQueue<FileTask> files, QueueGauge gauge)
+      throws IOException, InterruptedException {
+    Path root = reader.getDirectory().toAbsolutePath();
+    Map<String, List<Path>> partitions = new TreeMap<>();
+    int sequence = 0;
+    try (Stream<Path> paths = reader.getFileStream()) {
+      for (Path path : (Iterable<Path>) paths.map(Path::toAbsolutePath)
+          .filter(path -> !path.startsWith(outputDirectory))::iterator) {
+        if (!flushPartitions) {
+          put(files, new FileTask(sequence++, path, false), gauge);
+          continue;
+        }
+        Path relative = root.relativize(path);
+        String partition = relative.getNameCount() > 1 ? relative.getName(0).toString() : "";
+        partitions.computeIfAbsent(partition, name -> new ArrayList<>()).add(path);
+      }
+    }
+    for (List<Path> partition : partitions.values()) {
+      for (int i = 0; i < partition.size(); i++) {
+        put(files, new FileTask(sequence++, partition.get(i), i == partition.size() - 1),
+            gauge);
+      }
+    }
+    for (int i = 0; i < readWorkers; i++) {
+      put(files, FileTask.END, gauge);
+    }
+  }
+
+  private void read(BlockingQueue<FileTask> files, BlockingQueue<Chunk> chunks,
+                    ChunkBudget budget, QueueGauge gauge)
+      throws IOException, InterruptedException {
+    AnalyzerMetrics metrics = AnalyzerMetrics.get();
+    for (FileTask task = files.take(); task != FileTask.END; task = files.take()) {
+      long started = System.nanoTime();
+      long bytes = readFile(task, chunks, budget, gauge);
+      metrics.recordFile(true, bytes, System.nanoTime() - started);
+    }
+  }
+
+  /**
+   * Читает файл блоками, заканчивающимися на границе строки.
+   *
+   * <p>Незавершенная строка в конце блока переносится в начало следующего;
+   * если строка не помещается в блок, блок увеличивается. Перед передачей блока
+   * занимается место в бюджете блоков, ожидающих агрегации.
+   *
+   * @return количество прочитанных байтов файла
+   */
+  private static long readFile(FileTask task, BlockingQueue<Chunk> chunks, ChunkBudget budget,
+                               QueueGauge gauge) throws IOException, InterruptedException {
+    long bytes = Files.size(task.path);
+    try (InputStream in = GzipLogReader.isCompressed(task.path)
+        ? new GZIPInputStream(Files.newInputStream(task.path), INPUT_BUFFER_SIZE)
+        : Files.newInputStream(task.path)) {
+      byte[] data = new byte[CHUNK_SIZE];
+      int length = 0;
+      int index = 0;
+      int read;
+      while ((read = in.read(data, length, data.length - length)) >= 0) {
+        length += read;
+        if (length < data.length) {
+          continue;
+        }
+        int cut = lastLineEnd(data, length);
+        if (cut == 0) {
+          data = Arrays.copyOf(data, data.length * 2);
+          continue;
+        }
+        byte[] next = new byte[Math.max(CHUNK_SIZE, (length - cut) * 2)];
+        System.arraycopy(data, cut, next, 0, length - cut);
+        budget.acquire(task.sequence);
+        put(chunks, new Chunk(task, index++, false, data, cut), gauge);
+        data = next;
+        length -= cut;
+      }
+      budget.acquire(task.sequence);
+      put(chunks, new Chunk(task, index, true, data, length), gauge);
+    }
+    return bytes;
+  }
+
+  private static int lastLineEnd(byte[] data, int length) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (data[i] == '\n' || data[i] == '\r') {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Разбирает блоки в транзакции. У каждого потока своя таблица имен пользователей.
+   */
+  private static void parse(BlockingQueue<Chunk> chunks, BlockingQueue<ParsedChunk> parsed,
+                            QueueGauge gauge) throws InterruptedException {
+    AnalyzerMetrics metrics = AnalyzerMetrics.get();
+    UserSymbolTable symbols = new UserSymbolTable();
+    for (Chunk chunk = chunks.take(); chunk != Chunk.END; chunk = chunks.take()) {
+      ChunkParser parser = new ChunkParser(symbols);
+      MappedLogReader.forEachLine(ByteBuffer.wrap(chunk.data), chunk.length, true, parser);
+      metrics.addLines(parser.lines, parser.rejected);
+      put(parsed, new ParsedChunk(chunk, parser.transactions), gauge);
+    }
+  }
+
+  /**
+   * Дописывает логи пользователей из очереди потока записи.
+   */
+  private void write(BlockingQueue<WriteTask> queue) throws IOException, InterruptedException {
+    AnalyzerMetrics metrics = AnalyzerMetrics.get();
+    PerUserFileLayout layout = new PerUserFileLayout(outputDirectory);
+    EncodeBuffer buffer = new EncodeBuffer(ENCODE_BUFFER_SIZE);
+    Set<String> started = new HashSet<>();
+    Map<String, LocalDateTime> lastWritten = new HashMap<>();
+    for (WriteTask task = queue.take(); task != WriteTask.END; task = queue.take()) {
+      long startedAt = System.nanoTime();
+      buffer.reset();
+      if (task.transactions != null) {
+        // Устойчивая сортировка: записи с одинаковым временем остаются в порядке обработки
+        task.transactions.sort(null);
+        LocalDateTime previous = lastWritten.get(task.userName);
+        for (Transaction transaction : task.transactions) {
+          if (previous != null && transaction.getTimestamp().isBefore(previous)) {
+            lateRecords.incrementAndGet();
+          }
+          TransactionEncoder.encode(transaction, buffer);
+        }
+        lastWritten.put(task.userName,
+            task.transactions.get(task.transactions.size() - 1).getTimestamp());
+      } else {
+        TransactionEncoder.encodeFinalBalance(task.userName, task.finalBalance,
+            LocalDateTime.now(), buffer);
+      }
+      layout.append(task.userName, buffer.asByteBuffer(), started.add(task.userName));
+      if (task.transactions == null) {
+        metrics.recordUserWrite(System.nanoTime() - startedAt);
+      }
+    }
+  }
+
+  /**
+   * Этап конвейера, выполняемый в собственном потоке.
+   */
+  @FunctionalInterface
+  private interface Stage {
+    void run() throws Exception;
+  }
+
+  /**
+   * Применяет разобранные блоки в исходном порядке и распределяет историю
+   * пользователей по потокам записи.
+   */
+  private final class AggregateStage {
+    private final List<BlockingQueue<WriteTask>> writeQueues;
+    private final List<QueueGauge> writeGauges;
+    private final Map<Long, ParsedChunk> reordered = new HashMap<>();
+    private final ChunkBudget budget;
+    private final UserLogsAggregator state;
+    private Map<String, List<Transaction>> pending = new HashMap<>();
+    private int nextFile;
+    private int nextChunk;
+
+    AggregateStage(List<BlockingQueue<WriteTask>> writeQueues, List<QueueGauge> writeGauges,
+                   ChunkBudget budget) {
+      this.writeQueues = writeQueues;
+      this.writeGauges = writeGauges;
+      this.budget = budget;
+      this.state = new UserLogsAggregator((user, transaction) -> pending
+          .computeIfAbsent(user.getName(), name -> new ArrayList<>()).add(transaction),
+          duplicates, shard);
+    }
+
+    void run(BlockingQueue<ParsedChunk> parsed) throws InterruptedException {
+      for (ParsedChunk chunk = parsed.take(); chunk != ParsedChunk.END;
+          chunk = parsed.take()) {
+        reordered.put(key(chunk.fileSequence, chunk.index), chunk);
+        applyReady();
+      }
+      if (!reordered.isEmpty()) {
+        throw new IllegalStateException("Pipeline lost " + reordered.size() + " chunks");
+      }
+      flushPending();
+      for (User user : state.getUsers().values()) {
+        send(new WriteTask(user.getName(), null, user.getBalance()));
+      }
+      for (int i = 0; i < writeQueues.size(); i++) {
+        put(writeQueues.get(i), WriteTask.END, writeGauges.get(i));
+      }
+    }
+
+    private void applyReady() throws InterruptedException {
+      ParsedChunk chunk;
+      while ((chunk = reordered.remove(key(nextFile, nextChunk))) != null) {
+        for (Transaction transaction : chunk.transactions) {
+          state.processTransaction(transaction);
+        }
+        state.flushMetrics();
+        if (!chunk.lastOfFile) {
+          nextChunk++;
+          budget.release(nextFile);
+          continue;
+        }
+        nextFile++;
+        nextChunk = 0;
+        budget.release(nextFile);
+        if (flushPartitions && chunk.lastInPartition) {
+          flushPending();
+        }
+      }
+    }
+
+    /**
+     * Передает накопленную историю на запись и освобождает ее.
+     */
+    private void flushPending() throws InterruptedException {
+      Map<String, List<Transaction>> batch = pending;
+      pending = new HashMap<>();
+      for (Map.Entry<String, List<Transaction>> entry : batch.entrySet()) {
+        send(new WriteTask(entry.getKey(), entry.getValue(), null));
+      }
+    }
+
+    private void send(WriteTask task) throws InterruptedException {
+      int writer = UserShard.indexOf(task.userName, writeQueues.size());
+      put(writeQueues.get(writer), task, writeGauges.get(writer));
+    }
+
+    private long key(int fileSequence, int index) {
+      return ((long) fileSequence << 32) | index;
+    }
+  }
+
+  /**
+   * Ограничение количества блоков, прочитанных, но еще не примененных агрегацией.
+   *
+   * <p>Блоки файла, который агрегация применяет сейчас, не ждут освобождения места:
+   * иначе при нескольких потоках чтения бюджет могли бы занять блоки следующих файлов,
+   * которые нельзя применить до текущего, и конвейер остановился бы.
+   */
+  private static final class ChunkBudget {
+    private final int limit;
+    private int inFlight;
+    private int currentFile;
+
+    ChunkBudget(int limit) {
+      this.limit = limit;
+    }
+
+    /**
+     * Занимает место для блока файла с указанным порядковым номером.
+     */
+    synchronized void acquire(int fileSequence) throws InterruptedException {
+      while (inFlight >= limit && fileSequence != currentFile) {
+        wait();
+      }
+      inFlight++;
+    }
+
+    /**
+     * Освобождает место примененного блока.
+     *
+     * @param nextFile порядковый номер файла, применяемого следующим
+     */
+    synchronized void release(int nextFile) {
+      inFlight--;
+      currentFile = nextFile;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Обработчик строк блока, накапливающий транзакции и счетчики строк.
+   */
+  private static final class ChunkParser implements MappedLogReader.LineHandler {
+    final List<Transaction> transactions = new ArrayList<>();
+    private final UserSymbolTable symbols;
+    long lines;
+    long rejected;
+
+    ChunkParser(UserSymbolTable symbols) {
+      this.symbols = symbols;
+    }
+
+    @Override
+    public void onLine(ByteBuffer buffer, int from, int to) {
+      if (from == to) {
+        return;
+      }
+      lines++;
+      Transaction transaction = LineParser.parseLine(buffer, from, to, symbols);
+      if (transaction == null) {
+        rejected++;
+      } else {
+        transactions.add(transaction);
+      }
+    }
+  }
+
+  /**
+   * Файл для чтения и его место в порядке обработки.
+   */
+  private static final class FileTask {
+    static final FileTask END = new FileTask(-1, null, false);
+    final int sequence;
+    final Path path;
+    final boolean lastInPartition;
+
+    FileTask(int sequence, Path path, boolean lastInPartition) {
+      this.sequence = sequence;
+      this.path = path;
+      this.lastInPartition = lastInPartition;
+    }
+  }
+
+  /**
+   * Блок файла, заканчивающийся на границе строки.
+   */
+  private static final class Chunk {
+    static final Chunk END = new Chunk(FileTask.END, -1, true, new byte[0], 0);
+    final FileTask file;
+    final int index;
+    final boolean lastOfFile;
+    final byte[] data;
+    final int length;
+
+    Chunk(FileTask file, int index, boolean lastOfFile, byte[] data, int length) {
+      this.file = file;
+      this.index = index;
+      this.lastOfFile = lastOfFile;
+      this.data = data;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Транзакции, разобранные из блока.
+   */
+  private static final class ParsedChunk {
+    static final ParsedChunk END = new ParsedChunk(Chunk.END, new ArrayList<>());
+    final int fileSequence;
+    final int index;
+    final boolean lastOfFile;
+    final boolean lastInPartition;
+    final List<Transaction> transactions;
+
+    ParsedChunk(Chunk chunk, List<Transaction> transactions) {
+      this.fileSequence = chunk.file.sequence;
+      this.index = chunk.index;
+      this.lastOfFile = chunk.lastOfFile;
+      this.lastInPartition = chunk.file.lastInPartition;
+      this.transactions = transactions;
+    }
+  }
+
+  /**
+   * Блок истории пользователя или, если история не задана, его итоговый баланс.
+   */
+  private static final class WriteTask {
+    static final WriteTask END = new WriteTask(null, null, null);
+    final String userName;
+    final List<Transaction> transactions;
+    final BigDecimal finalBalance;
+
+    WriteTask(String userName, List<Transaction> transactions, BigDecimal finalBalance) {
+      this.userName = userName;
+      this.transactions = transactions;
+      this.finalBalance = finalBalance;
+    }
+  }
+}
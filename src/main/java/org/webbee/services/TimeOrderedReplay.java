@@ -0,0 +1,401 @@
+package org.webbee.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.webbee.metrics.AnalyzerMetrics;
+import org.webbee.model.Transaction;
+
+/**
+ * Применение транзакций из всех файлов в порядке времени.
+ *
+ * <p>Каждый файл рассматривается как почти отсортированная по времени серия.
+ * Серии объединяются k-путевым слиянием: в куче хранится по одной серии на файл,
+ * упорядоченные по времени ближайшей транзакции. При равном времени первой
+ * применяется транзакция из файла, идущего раньше в порядке обхода, а внутри
+ * файла - записанная раньше.
+ *
+ * <p>Для каждого файла держится окно упреждающего чтения из {@code reorderWindow}
+ * транзакций, из которого выбирается самая ранняя, поэтому перестановки
+ * на расстоянии меньше окна исправляются. Транзакция, опоздавшая сильнее,
+ * применяется сразу при чтении, а их количество выводится в stderr.
+ *
+ * <p>Одновременно открыто не больше {@link #MAX_FAN_IN} файлов. Если файлов больше,
+ * они объединяются группами по порядку обхода во временные серии, которые затем
+ * объединяются следующими проходами. Слияние по ближайшей транзакции ассоциативно,
+ * поэтому порядок применения совпадает с однопроходным слиянием.
+ *
+ * <p>Память зависит от размера окна и {@link #MAX_FAN_IN}, но не от количества строк.
+ */
+public final class TimeOrderedReplay {
+  /** Размер окна упреждающего чтения по умолчанию. */
+  public static final int DEFAULT_REORDER_WINDOW = 1024;
+  /** Максимальное число файлов или серий, объединяемых за один проход слияния. */
+  static final int MAX_FAN_IN = 64;
+  private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+  private static final Comparator<Entry> ENTRY_ORDER =
+      Comparator.<Entry, LocalDateTime>comparing(entry -> entry.transaction.getTimestamp())
+          .thenComparingLong(entry -> entry.sequence);
+  private static final Comparator<Cursor> CURSOR_ORDER =
+      Comparator.<Cursor, LocalDateTime>comparing(cursor -> cursor.peek().getTimestamp())
+          .thenComparingInt(cursor -> cursor.index);
+
+  private TimeOrderedReplay() {
+  }
+
+  /**
+   * Агрегирует файлы, применяя транзакции в порядке времени.
+   *
+   * @param paths          поток путей к файлам с логами транзакций
+   * @param compactStorage признак компактного хранения транзакций
+   * @param reorderWindow  размер окна упреждающего чтения для каждого файла
+   * @param duplicates     фильтр повторов или {@code null}
+   * @param shard          часть пользователей или {@code null} для всех
+   * @return агрегатор с результатом
+   * @throws IllegalArgumentException если reorderWindow меньше 1
+   * @throws RuntimeException         если произошла ошибка чтения файлов
+   */
+  public static UserLogsAggregator aggregate(Stream<Path> paths, boolean compactStorage,
+                                             int reorderWindow, DuplicateFilter duplicates,
+                                             UserShard shard) {
+    UserLogsAggregator aggregator =
+        new UserLogsAggregator(compactStorage, duplicates, shard);
+    try {
+      long late = replay(paths.collect(Collectors.toList()), reorderWindow,
+          aggregator::processTransaction);
+      aggregator.flushMetrics();
+      if (late > 0) {
+        System.err.println(late + " transactions were out of order beyond the reorder window"
+            + " of " + reorderWindow + " and were applied late");
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return aggregator;
+  }
+
+  /**
+   * Передает транзакции всех файлов получателю в порядке времени.
+   *
+   * @param files         файлы в порядке обхода
+   * @param reorderWindow размер окна упреждающего чтения для каждого файла
+   * @param consumer      получатель транзакций
+   * @return количество транзакций, примененных позже транзакций с большим временем
+   * @throws IllegalArgumentException если reorderWindow меньше 1
+   * @throws IOException              если произошла ошибка чтения файлов
+   */
+  static long replay(List<Path> files, int reorderWindow, Consumer<Transaction> consumer)
+      throws IOException {
+    return replay(files, reorderWindow, MAX_FAN_IN, consumer);
+  }
+
+  /**
+   * Передает транзакции всех файлов получателю в порядке времени, открывая
+   * одновременно не больше fanIn файлов.
+   *
+   * @param files         файлы в порядке обхода
+   * @param reorderWindow размер окна упреждающего чтения для каждого файла
+   * @param fanIn         максимальное число файлов, объединяемых за один проход
+   * @param consumer      получатель транзакций
+   * @return количество транзакций, примененных позже транзакций с большим временем
+   * @throws IllegalArgumentException если reorderWindow меньше 1 или fanIn меньше 2
+   * @throws IOException              если произошла ошибка чтения файлов
+   */
+  static long replay(List<Path> files, int reorderWindow, int fanIn,
+                     Consumer<Transaction> consumer) throws IOException {
+    if (reorderWindow < 1) {
+      throw new IllegalArgumentException("Reorder window must be positive");
+    }
+    if (fanIn < 2) {
+      throw new IllegalArgumentException("Merge fan-in must be at least 2");
+    }
+    CursorFactory logCursors = (file, index) -> new RunCursor(file, index, reorderWindow);
+    if (files.size() <= fanIn) {
+      return merge(files, logCursors, consumer);
+    }
+    Path tempDirectory = Files.createTempDirectory("logs_analyzer_replay");
+    try {
+      List<Path> runs = mergeGroups(files, fanIn, logCursors, tempDirectory);
+      while (runs.size() > fanIn) {
+        List<Path> merged = mergeGroups(runs, fanIn, SpillCursor::new, tempDirectory);
+        for (Path run : runs) {
+          Files.delete(run);
+        }
+        runs = merged;
+      }
+      return merge(runs, SpillCursor::new, consumer);
+    } finally {
+      try (Stream<Path> runs = Files.list(tempDirectory)) {
+        for (Path run : (Iterable<Path>) runs::iterator) {
+          Files.deleteIfExists(run);
+        }
+      }
+      Files.deleteIfExists(tempDirectory);
+    }
+  }
+
+  /**
+   * Объединяет входы группами по fanIn подряд идущих во временные серии.
+   */
+  private static List<Path> mergeGroups(List<Path> inputs, int fanIn, CursorFactory cursors,
+                                        Path tempDirectory) throws IOException {
+    List<Path> runs = new ArrayList<>((inputs.size() + fanIn - 1) / fanIn);
+    for (int from = 0; from < inputs.size(); from += fanIn) {
+      List<Path> group = inputs.subList(from, Math.min(inputs.size(), from + fanIn));
+      Path run = Files.createTempFile(tempDirectory, "run", ".bin");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          Files.newOutputStream(run), READ_BUFFER_SIZE))) {
+        merge(group, cursors, transaction -> writeRecord(transaction, out));
+        out.writeBoolean(false);
+      }
+      runs.add(run);
+    }
+    return runs;
+  }
+
+  /**
+   * Объединяет входы одним проходом k-путевого слияния.
+   */
+  private static long merge(List<Path> inputs, CursorFactory factory,
+                            Consumer<Transaction> consumer) throws IOException {
+    List<Cursor> cursors = new ArrayList<>(inputs.size());
+    PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, inputs.size()),
+        CURSOR_ORDER);
+    long late = 0;
+    try {
+      for (int i = 0; i < inputs.size(); i++) {
+        Cursor cursor = factory.open(inputs.get(i), i);
+        cursors.add(cursor);
+        if (cursor.peek() != null) {
+          heap.add(cursor);
+        }
+      }
+      Transaction last = null;
+      while (!heap.isEmpty()) {
+        Cursor cursor = heap.poll();
+        Transaction transaction = cursor.poll();
+        if (last != null && transaction.getTimestamp().isBefore(last.getTimestamp())) {
+          late++;
+        } else {
+          last = transaction;
+        }
+        consumer.accept(transaction);
+        if (cursor.peek() != null) {
+          heap.add(cursor);
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      for (Cursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+    return late;
+  }
+
+  /**
+   * Записывает транзакцию во временную серию.
+   */
+  private static void writeRecord(Transaction transaction, DataOutputStream out) {
+    try {
+      out.writeBoolean(true);
+      out.writeByte(transaction.getOperationType().ordinal());
+      out.writeLong(transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+      out.writeInt(transaction.getTimestamp().getNano());
+      BinaryStrings.write(out, transaction.getSender());
+      BinaryStrings.write(out, transaction.getAmount().toString());
+      out.writeBoolean(transaction.getRecipient() != null);
+      if (transaction.getRecipient() != null) {
+        BinaryStrings.write(out, transaction.getRecipient());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Открывает вход слияния с заданным порядковым номером.
+   */
+  private interface CursorFactory {
+    Cursor open(Path file, int index) throws IOException;
+  }
+
+  /**
+   * Вход слияния: последовательность транзакций и ее номер для равного времени.
+   */
+  private abstract static class Cursor implements Closeable {
+    final int index;
+
+    Cursor(int index) {
+      this.index = index;
+    }
+
+    abstract Transaction peek();
+
+    abstract Transaction poll();
+  }
+
+  /**
+   * Транзакция с порядковым номером в файле.
+   */
+  private static final class Entry {
+    final Transaction transaction;
+    final long sequence;
+
+    Entry(Transaction transaction, long sequence) {
+      this.transaction = transaction;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * Серия транзакций одного файла с окном упреждающего чтения.
+   */
+  private static final class RunCursor extends Cursor {
+    private final Path file;
+    private final BufferedReader reader;
+    private final PriorityQueue<Entry> window;
+    private final int windowSize;
+    private long sequence;
+    private boolean exhausted;
+    private long rejected;
+    private long parseNanos;
+
+    RunCursor(Path file, int fileIndex, int windowSize) throws IOException {
+      super(fileIndex);
+      this.file = file;
+      this.windowSize = windowSize;
+      this.window = new PriorityQueue<>(Math.min(windowSize, 64), ENTRY_ORDER);
+      InputStream in = Files.newInputStream(file);
+      if (GzipLogReader.isCompressed(file)) {
+        in = new GZIPInputStream(in, READ_BUFFER_SIZE);
+      }
+      // Некорректные байты заменяются, как и при чтении через MappedLogReader
+      this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8),
+          READ_BUFFER_SIZE);
+      fill();
+    }
+
+    @Override
+    Transaction peek() {
+      Entry entry = window.peek();
+      return entry == null ? null : entry.transaction;
+    }
+
+    @Override
+    Transaction poll() {
+      Entry entry = window.poll();
+      fill();
+      return entry.transaction;
+    }
+
+    private void fill() {
+      if (exhausted) {
+        return;
+      }
+      long started = System.nanoTime();
+      try {
+        while (!exhausted && window.size() < windowSize) {
+          String line = reader.readLine();
+          if (line == null) {
+            exhausted = true;
+            reader.close();
+          } else if (!line.isEmpty()) {
+            Transaction transaction = LineParser.parseLine(line);
+            if (transaction != null) {
+              window.add(new Entry(transaction, sequence++));
+            } else {
+              rejected++;
+            }
+          }
+        }
+        parseNanos += System.nanoTime() - started;
+        if (exhausted) {
+          AnalyzerMetrics metrics = AnalyzerMetrics.get();
+          metrics.recordFile(true, Files.size(file), parseNanos);
+          metrics.addLines(sequence + rejected, rejected);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  /**
+   * Временная серия, уже упорядоченная предыдущим проходом слияния.
+   */
+  private static final class SpillCursor extends Cursor {
+    private final DataInputStream in;
+    private Transaction next;
+
+    SpillCursor(Path run, int index) throws IOException {
+      super(index);
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run),
+          READ_BUFFER_SIZE));
+      advance();
+    }
+
+    @Override
+    Transaction peek() {
+      return next;
+    }
+
+    @Override
+    Transaction poll() {
+      Transaction current = next;
+      advance();
+      return current;
+    }
+
+    private void advance() {
+      try {
+        if (!in.readBoolean()) {
+          next = null;
+          return;
+        }
+        Transaction.OperationType type = Transaction.OperationType.values()[in.readByte()];
+        LocalDateTime timestamp =
+            LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        String sender = BinaryStrings.read(in);
+        BigDecimal amount = new BigDecimal(BinaryStrings.read(in));
+        String recipient = in.readBoolean() ? BinaryStrings.read(in) : null;
+        next = new Transaction(type, timestamp, sender, amount, recipient);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
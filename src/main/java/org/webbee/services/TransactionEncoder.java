@@ -0,0 +1,150 @@
+package org.webbee.services;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Locale;
+import org.webbee.model.Transaction;
+
+/**
+ * Кодирование записей логов пользователя непосредственно в байты UTF-8.
+ *
+ * <p>Формат совпадает с {@link Transaction#toString()} и строкой итогового
+ * баланса, которую пишет {@link LogWriter}; строки разделяются
+ * системным разделителем, как у {@link java.io.BufferedWriter#newLine()}.
+ *
+ * <p>Время, суммы и итоговый баланс записываются цифрами прямо в буфер без
+ * {@link String#format} и промежуточных строк. Итоговый баланс форматируется так же,
+ * как {@code %f}: если локаль по умолчанию использует другие цифры или десятичный
+ * разделитель, используется {@link String#format}.
+ */
+final class TransactionEncoder {
+  private static final byte[] LINE_SEPARATOR =
+      System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+  private static final byte[] BALANCE_INQUIRY =
+      " balance inquiry ".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] TRANSFERRED = " transferred ".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] WITHDREW = " withdrew ".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] TO = " to ".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] FINAL_BALANCE = " final balance ".getBytes(StandardCharsets.UTF_8);
+  private static final DateTimeFormatter FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  /** Локаль, для которой последний раз проверялась совместимость с ASCII-форматом. */
+  private static volatile Locale checkedLocale;
+  private static volatile boolean asciiLocale;
+
+  private TransactionEncoder() {
+  }
+
+  /**
+   * Кодирует полный лог пользователя: транзакции и строку итогового баланса.
+   *
+   * @param userName     имя пользователя
+   * @param logs         транзакции в порядке записи
+   * @param finalBalance итоговый баланс
+   * @param now          время для строки итогового баланса
+   * @param out          буфер для записи
+   */
+  static void encodeUserLog(String userName, Collection<Transaction> logs,
+                            BigDecimal finalBalance, LocalDateTime now, EncodeBuffer out) {
+    for (Transaction transaction : logs) {
+      encode(transaction, out);
+    }
+    encodeFinalBalance(userName, finalBalance, now, out);
+  }
+
+  /**
+   * Кодирует одну транзакцию с разделителем строк.
+   */
+  static void encode(Transaction transaction, EncodeBuffer out) {
+    encodeTimestamp(transaction.getTimestamp(), out);
+    out.write(transaction.getSender());
+    switch (transaction.getOperationType()) {
+      case BALANCE_INQUIRY:
+        out.write(BALANCE_INQUIRY);
+        encodeAmount(transaction.getAmount(), out);
+        break;
+      case TRANSFERRED:
+        out.write(TRANSFERRED);
+        encodeAmount(transaction.getAmount(), out);
+        out.write(TO);
+        out.write(transaction.getRecipient());
+        break;
+      case WITHDREW:
+        out.write(WITHDREW);
+        encodeAmount(transaction.getAmount(), out);
+        break;
+      default:
+        throw new IllegalStateException("Unknown operation type");
+    }
+    out.write(LINE_SEPARATOR);
+  }
+
+  /**
+   * Кодирует строку итогового баланса с разделителем строк.
+   */
+  static void encodeFinalBalance(String userName, BigDecimal finalBalance, LocalDateTime now,
+                                 EncodeBuffer out) {
+    encodeTimestamp(now, out);
+    out.write(userName);
+    out.write(FINAL_BALANCE);
+    if (isAsciiLocale()) {
+      out.writeFixed(finalBalance);
+    } else {
+      out.write(String.format("%f", finalBalance));
+    }
+    out.write(LINE_SEPARATOR);
+  }
+
+  /**
+   * Форматирует итоговый баланс так же, как {@code String.format("%f", finalBalance)}.
+   *
+   * @param finalBalance итоговый баланс
+   * @return строка баланса
+   */
+  static String formatBalance(BigDecimal finalBalance) {
+    if (!isAsciiLocale()) {
+      return String.format("%f", finalBalance);
+    }
+    EncodeBuffer out = new EncodeBuffer(32);
+    out.writeFixed(finalBalance);
+    return new String(out.array(), 0, out.size(), StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Проверяет, что {@code %f} в локали по умолчанию записывает цифры ASCII
+   * и точку в качестве десятичного разделителя.
+   */
+  private static boolean isAsciiLocale() {
+    Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+    if (locale != checkedLocale) {
+      DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+      asciiLocale = symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.';
+      checkedLocale = locale;
+    }
+    return asciiLocale;
+  }
+
+  /**
+   * Кодирует префикс {@code [yyyy-MM-dd HH:mm:ss] }.
+   */
+  private static void encodeTimestamp(LocalDateTime timestamp, EncodeBuffer out) {
+    int year = timestamp.getYear();
+    if (year >= 1 && year <= 9999) {
+      out.writeTimestamp(year, timestamp.getMonthValue(), timestamp.getDayOfMonth(),
+          timestamp.getHour(), timestamp.getMinute(), timestamp.getSecond());
+    } else {
+      out.write((byte) '[');
+      out.write(timestamp.format(FORMATTER));
+      out.write((byte) ']');
+      out.write((byte) ' ');
+    }
+  }
+
+  private static void encodeAmount(BigDecimal amount, EncodeBuffer out) {
+    out.writePlain(amount);
+  }
+}
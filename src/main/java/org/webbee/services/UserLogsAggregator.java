@@ -1,15 +1,29 @@
 package org.webbee.services;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.webbee.metrics.AnalyzerMetrics;
 import org.webbee.model.Transaction;
 import org.webbee.model.User;
+import org.webbee.model.UserIdTable;
 
 /**
  * Класс для агрегации и обработки логов транзакций пользователей.
@@ -18,20 +32,204 @@ import org.webbee.model.User;
  * и вычисляет итоговые балансы. Поддерживает операции:
  */
 public class UserLogsAggregator {
+  /** Количество частей работы на один поток при параллельной обработке. */
+  private static final int BATCHES_PER_WORKER = 4;
+  /** Минимальный размер диапазона при делении одного файла между потоками. */
+  private static final long MIN_CHUNK_SIZE = 8L << 20;
+  
   private final Map<String, User> users;
+  /** Действие, сохраняющее примененную транзакцию в истории пользователя. */
+  private final BiConsumer<User, Transaction> recorder;
+  /** Таблица символов компактного хранения или {@code null} для хранения объектов. */
+  private final UserIdTable userIds;
+  /** Таблица символов идентификаторов пользователей, разбираемых этим агрегатором. */
+  private final UserSymbolTable symbols;
+  /** Признак хранения истории в {@link User}, а не передачи внешнему получателю. */
+  private final boolean retainsHistory;
+  /** Фильтр повторов транзакций или {@code null}, если повторы не отбрасываются. */
+  private final DuplicateFilter duplicates;
+  /** Часть пользователей, состояние которых вычисляется, или {@code null} для всех. */
+  private final UserShard shard;
+  /** Счетчики текущего файла, передаются в {@link AnalyzerMetrics} после его обработки. */
+  private long pendingLines;
+  private long pendingRejected;
+  private long pendingFailed;
+  private long pendingDuplicates;
+  private final long[] pendingApplied = new long[Transaction.OperationType.values().length];
+  /** Количество транзакций, сохраненных в истории пользователей. */
+  private long retainedTransactions;
   
   /**
-   * Создает агрегатор и сразу обрабатывает переданные файлы.
+   * Создает агрегатор и сразу обрабатывает переданные файлы в одном потоке.
    *
    * @param paths поток путей к файлам с логами транзакций
    * @throws RuntimeException если произошла ошибка чтения файлов
    */
   
   public UserLogsAggregator(Stream<Path> paths) {
+    this(paths, 1);
+  }
+  
+  /**
+   * Создает агрегатор и обрабатывает переданные файлы указанным числом потоков.
+   *
+   * <p>При {@code workers > 1} файлы, а большие файлы - по диапазонам строк,
+   * делятся на последовательные части, каждая часть агрегируется в собственное
+   * частичное состояние, после чего частичные состояния объединяются в порядке
+   * следования. Результат совпадает с однопоточной обработкой.
+   *
+   * @param paths   поток путей к файлам с логами транзакций
+   * @param workers количество потоков обработки
+   * @throws IllegalArgumentException если workers меньше 1
+   * @throws RuntimeException         если произошла ошибка чтения файлов
+   */
+  public UserLogsAggregator(Stream<Path> paths, int workers) {
+    this(paths, workers, false);
+  }
+  
+  /**
+   * Создает агрегатор с выбором способа хранения истории транзакций.
+   *
+   * <p>При компактном хранении история каждого пользователя хранится
+   * в {@link org.webbee.model.CompactTransactionLog}, а идентификаторы
+   * получателей - номерами в общей таблице символов.
+   *
+   * @param paths          поток путей к файлам с логами транзакций
+   * @param workers        количество потоков обработки
+   * @param compactStorage признак компактного хранения транзакций
+   * @throws IllegalArgumentException если workers меньше 1
+   * @throws RuntimeException         если произошла ошибка чтения файлов
+   */
+  public UserLogsAggregator(Stream<Path> paths, int workers, boolean compactStorage) {
+    this(paths, workers, compactStorage, null, null, null);
+  }
+  
+  /**
+   * Создает агрегатор, который при заданном режиме {@link VirtualThreads} читает
+   * файлы в виртуальных потоках вместо указанного числа потоков, при заданном
+   * фильтре отбрасывает повторы транзакций, а при заданной части вычисляет
+   * состояние только ее пользователей.
+   *
+   * @param paths          поток путей к файлам с логами транзакций
+   * @param workers        количество потоков обработки
+   * @param compactStorage признак компактного хранения транзакций
+   * @param virtualThreads режим виртуальных потоков или {@code null}
+   * @param duplicates     фильтр повторов или {@code null}
+   * @param shard          часть пользователей или {@code null} для всех
+   * @throws IllegalArgumentException если workers меньше 1 или задан фильтр повторов,
+   *                                  а обработка параллельная
+   * @throws RuntimeException         если произошла ошибка чтения файлов
+   */
+  public UserLogsAggregator(Stream<Path> paths, int workers, boolean compactStorage,
+                            VirtualThreads virtualThreads, DuplicateFilter duplicates,
+                            UserShard shard) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("Workers count must be positive");
+    }
+    if (duplicates != null && (workers > 1 || virtualThreads != null)) {
+      throw new IllegalArgumentException("Duplicate filtering requires sequential processing");
+    }
     this.users = new HashMap<String, User>();
+    this.recorder = User::addTransaction;
+    this.userIds = compactStorage ? new UserIdTable() : null;
+    this.symbols = new UserSymbolTable();
+    this.retainsHistory = true;
+    this.duplicates = duplicates;
+    this.shard = shard;
+    if (virtualThreads != null) {
+      aggregateOnVirtualThreads(paths.collect(Collectors.toList()), virtualThreads);
+    } else if (workers == 1) {
+      aggregateFromFileStream(paths);
+    } else {
+      aggregateInParallel(paths.collect(Collectors.toList()), workers);
+    }
+  }
+  
+  /**
+   * Создает пустой агрегатор для накопления частичного состояния.
+   *
+   * @param userIds таблица символов компактного хранения или {@code null}
+   * @param symbols    таблица символов разбора; не должна использоваться
+   *                   одновременно из нескольких потоков
+   * @param duplicates фильтр повторов или {@code null}
+   * @param shard      часть пользователей или {@code null} для всех
+   */
+  private UserLogsAggregator(UserIdTable userIds, UserSymbolTable symbols,
+                             DuplicateFilter duplicates, UserShard shard) {
+    this.users = new HashMap<String, User>();
+    this.recorder = User::addTransaction;
+    this.userIds = userIds;
+    this.symbols = symbols;
+    this.retainsHistory = true;
+    this.duplicates = duplicates;
+    this.shard = shard;
+  }
+  
+  /**
+   * Создает пустой агрегатор для пошагового накопления состояния.
+   *
+   * @param compactStorage признак компактного хранения транзакций
+   */
+  UserLogsAggregator(boolean compactStorage) {
+    this(compactStorage, null);
+  }
+  
+  /**
+   * Создает пустой агрегатор для пошагового накопления состояния с отбрасыванием
+   * повторов транзакций.
+   *
+   * @param compactStorage признак компактного хранения транзакций
+   * @param duplicates     фильтр повторов или {@code null}
+   */
+  UserLogsAggregator(boolean compactStorage, DuplicateFilter duplicates) {
+    this(compactStorage, duplicates, null);
+  }
+  
+  /**
+   * Создает пустой агрегатор для пошагового накопления состояния пользователей
+   * одной части.
+   *
+   * @param compactStorage признак компактного хранения транзакций
+   * @param duplicates     фильтр повторов или {@code null}
+   * @param shard          часть пользователей или {@code null} для всех
+   */
+  UserLogsAggregator(boolean compactStorage, DuplicateFilter duplicates, UserShard shard) {
+    this(compactStorage ? new UserIdTable() : null, new UserSymbolTable(), duplicates, shard);
+  }
+  
+  /**
+   * Создает агрегатор, который вычисляет балансы, а историю транзакций
+   * передает указанному получателю вместо хранения в {@link User}.
+   *
+   * @param paths      поток путей к файлам с логами транзакций
+   * @param recorder   получатель примененных транзакций и их инициаторов
+   * @param duplicates фильтр повторов или {@code null}
+   */
+  UserLogsAggregator(Stream<Path> paths, BiConsumer<User, Transaction> recorder,
+                     DuplicateFilter duplicates) {
+    this(recorder, duplicates, null);
     aggregateFromFileStream(paths);
   }
   
+  /**
+   * Создает пустой агрегатор, который вычисляет балансы, а историю транзакций
+   * передает указанному получателю.
+   *
+   * @param recorder   получатель примененных транзакций и их инициаторов
+   * @param duplicates фильтр повторов или {@code null}
+   * @param shard      часть пользователей или {@code null} для всех
+   */
+  UserLogsAggregator(BiConsumer<User, Transaction> recorder, DuplicateFilter duplicates,
+                     UserShard shard) {
+    this.users = new HashMap<String, User>();
+    this.recorder = Objects.requireNonNull(recorder, "Recorder cannot be null");
+    this.userIds = null;
+    this.symbols = new UserSymbolTable();
+    this.retainsHistory = false;
+    this.duplicates = duplicates;
+    this.shard = shard;
+  }
+  
   /**
    * Обрабатывает поток файлов, извлекая транзакции.
    *
@@ -49,17 +247,388 @@ public class UserLogsAggregator {
     
   }
   
+  /**
+   * Параллельно обрабатывает файлы и объединяет частичные состояния.
+   *
+   * <p>Файлы больше {@link #MIN_CHUNK_SIZE} делятся на диапазоны байтов,
+   * выровненные по границам строк, поэтому один большой файл тоже
+   * обрабатывается несколькими потоками. Последовательность диапазонов
+   * рекурсивно делится пополам в {@link ForkJoinPool}; каждая часть агрегируется
+   * в собственное частичное состояние, после чего состояния объединяются
+   * в исходном порядке. Результат совпадает с однопоточной обработкой.
+   *
+   * @param files   список файлов в порядке обхода
+   * @param workers количество потоков обработки
+   */
+  private void aggregateInParallel(List<Path> files, int workers) {
+    List<FileRange> ranges = new ArrayList<>();
+    try {
+      for (Path file : files) {
+        splitFile(file, workers * BATCHES_PER_WORKER, ranges);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (ranges.isEmpty()) {
+      return;
+    }
+    long[] offsets = new long[ranges.size() + 1];
+    for (int i = 0; i < ranges.size(); i++) {
+      offsets[i + 1] = offsets[i] + ranges.get(i).length();
+    }
+    long leafBytes = Math.max(1, offsets[ranges.size()] / (workers * BATCHES_PER_WORKER));
+    ForkJoinPool pool = new ForkJoinPool(workers);
+    try {
+      mergeFrom(pool.invoke(new RangeTask(ranges, offsets, 0, ranges.size(), leafBytes)));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+  
+  /**
+   * Обрабатывает файлы в виртуальных потоках и объединяет частичные состояния.
+   *
+   * <p>Файлы делятся на диапазоны так же, как в {@link #aggregateInParallel},
+   * каждый диапазон агрегируется в отдельном виртуальном потоке, количество
+   * одновременно читаемых диапазонов ограничено {@link VirtualThreads}.
+   * Частичные состояния объединяются в исходном порядке.
+   *
+   * @param files          список файлов в порядке обхода
+   * @param virtualThreads режим виртуальных потоков
+   */
+  private void aggregateOnVirtualThreads(List<Path> files, VirtualThreads virtualThreads) {
+    List<FileRange> ranges = new ArrayList<>();
+    try {
+      int pieces = Runtime.getRuntime().availableProcessors() * BATCHES_PER_WORKER;
+      for (Path file : files) {
+        splitFile(file, pieces, ranges);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    UserLogsAggregator[] partials = new UserLogsAggregator[ranges.size()];
+    VirtualThreads.TaskGroup group = virtualThreads.newGroup();
+    try {
+      for (int i = 0; i < ranges.size(); i++) {
+        FileRange range = ranges.get(i);
+        int index = i;
+        group.submit(() -> {
+          UserLogsAggregator partial =
+              new UserLogsAggregator(userIds, new UserSymbolTable(), null, shard);
+          try {
+            partial.processFile(range.file, range.start, range.end);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          partials[index] = partial;
+        });
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while reading files", e);
+    }
+    group.await();
+    for (UserLogsAggregator partial : partials) {
+      mergeFrom(partial);
+    }
+  }
+  
+  /**
+   * Делит файл на диапазоны, начинающиеся с границ строк.
+   *
+   * @param file   файл
+   * @param pieces желаемое количество частей для больших файлов
+   * @param ranges список, в который добавляются диапазоны
+   */
+  private static void splitFile(Path file, int pieces, List<FileRange> ranges)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (GzipLogReader.isCompressed(file)) {
+        // Сжатый поток нельзя начать читать с середины
+        ranges.add(new FileRange(file, 0, size));
+        return;
+      }
+      long chunkSize = Math.max(MIN_CHUNK_SIZE, (size + pieces - 1) / pieces);
+      long start = 0;
+      while (size - start > chunkSize) {
+        long end = alignToLineStart(channel, start + chunkSize, size);
+        if (end >= size) {
+          break;
+        }
+        ranges.add(new FileRange(file, start, end));
+        start = end;
+      }
+      ranges.add(new FileRange(file, start, size));
+    }
+  }
+  
+  /**
+   * Находит ближайшее начало строки не раньше указанной позиции.
+   *
+   * <p>Строки разделяются как в {@link MappedLogReader}: {@code \n}, {@code \r}
+   * или {@code \r\n}; пара {@code \r\n} не разрывается.
+   *
+   * @return смещение начала строки или {@code size}, если строк дальше нет
+   */
+  private static long alignToLineStart(FileChannel channel, long position, long size)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(8192);
+    long offset = position - 1;
+    boolean afterCarriageReturn = false;
+    while (offset < size) {
+      buffer.clear();
+      int read = channel.read(buffer, offset);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        byte b = buffer.get(i);
+        if (afterCarriageReturn) {
+          return b == '\n' ? offset + i + 1 : offset + i;
+        }
+        if (b == '\n') {
+          return offset + i + 1;
+        }
+        afterCarriageReturn = b == '\r';
+      }
+      offset += read;
+    }
+    return size;
+  }
+  
+  /**
+   * Агрегирует непрерывную последовательность диапазонов, деля ее пополам,
+   * пока объем части больше порога.
+   */
+  private final class RangeTask extends RecursiveTask<UserLogsAggregator> {
+    private final List<FileRange> ranges;
+    private final long[] offsets;
+    private final int from;
+    private final int to;
+    private final long leafBytes;
+    
+    RangeTask(List<FileRange> ranges, long[] offsets, int from, int to, long leafBytes) {
+      this.ranges = ranges;
+      this.offsets = offsets;
+      this.from = from;
+      this.to = to;
+      this.leafBytes = leafBytes;
+    }
+    
+    @Override
+    protected UserLogsAggregator compute() {
+      if (to - from == 1 || offsets[to] - offsets[from] <= leafBytes) {
+        UserLogsAggregator partial =
+            new UserLogsAggregator(userIds, new UserSymbolTable(), null, shard);
+        try {
+          for (FileRange range : ranges.subList(from, to)) {
+            partial.processFile(range.file, range.start, range.end);
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return partial;
+      }
+      int middle = (from + to) >>> 1;
+      RangeTask later = new RangeTask(ranges, offsets, middle, to, leafBytes);
+      later.fork();
+      UserLogsAggregator earlier =
+          new RangeTask(ranges, offsets, from, middle, leafBytes).compute();
+      earlier.mergeFrom(later.join());
+      return earlier;
+    }
+  }
+  
+  /**
+   * Диапазон байтов файла, начинающийся с начала строки.
+   */
+  private static final class FileRange {
+    final Path file;
+    final long start;
+    final long end;
+    
+    FileRange(Path file, long start, long end) {
+      this.file = file;
+      this.start = start;
+      this.end = end;
+    }
+    
+    long length() {
+      return end - start;
+    }
+  }
+  
+  /**
+   * Создает пустой агрегатор для частичного состояния с тем же способом хранения.
+   *
+   * <p>Частичное состояние использует ту же таблицу символов разбора и тот же
+   * фильтр повторов, поэтому должно обрабатываться в том же потоке, что и этот
+   * агрегатор, и объединяться до обработки следующего частичного состояния.
+   * Частичное состояние ограничено той же частью пользователей.
+   *
+   * @return новый пустой агрегатор
+   */
+  UserLogsAggregator newPartial() {
+    return new UserLogsAggregator(userIds, symbols, duplicates, shard);
+  }
+  
+  /**
+   * Объединяет состояние пользователя, накопленное после текущего состояния,
+   * например восстановленное из снимка.
+   *
+   * @param later пользователь, созданный через {@link #newUser(String, BigDecimal, boolean)}
+   */
+  void mergeUser(User later) {
+    User user = users.putIfAbsent(later.getName(), later);
+    if (user != null) {
+      user.mergeFrom(later);
+    }
+  }
+  
+  /**
+   * Возвращает таблицу символов компактного хранения.
+   *
+   * @return таблица символов или {@code null}, если транзакции хранятся объектами
+   */
+  UserIdTable getUserIds() {
+    return userIds;
+  }
+  
+  /**
+   * Объединяет частичное состояние, накопленное по последующим файлам.
+   *
+   * @param partial агрегатор с частичным состоянием
+   */
+  void mergeFrom(UserLogsAggregator partial) {
+    for (User later : partial.users.values()) {
+      users.computeIfAbsent(later.getName(), this::newUser).mergeFrom(later);
+    }
+    retainedTransactions += partial.retainedTransactions;
+    observeRetained();
+  }
+  
+  /**
+   * Создает пользователя с выбранным способом хранения транзакций.
+   *
+   * @param name имя пользователя
+   * @return новый пользователь
+   */
+  User newUser(String name) {
+    return new User(name, userIds);
+  }
+  
+  /**
+   * Создает пользователя с ранее вычисленным балансом и выбранным способом
+   * хранения транзакций.
+   *
+   * @param name            имя пользователя
+   * @param balance         баланс пользователя
+   * @param balanceInquired признак того, что баланс установлен операцией balance inquiry
+   * @return новый пользователь
+   */
+  User newUser(String name, BigDecimal balance, boolean balanceInquired) {
+    return new User(name, userIds, balance, balanceInquired);
+  }
+  
   /**
    * Обрабатывает отдельный файл с логами.
    *
+   * <p>Файл читается через {@link MappedLogReader}, строки разбираются
+   * непосредственно из байтов отображенного файла. Сжатые файлы
+   * распаковываются в отдельном потоке через {@link GzipLogReader}.
+   *
    * @param src путь к файлу для обработки
    * @throws IOException если произошла ошибка чтения файла
    */
   private void processFile(Path src) throws IOException {
-    Stream<String> lines = Files.lines(src);
-    lines.map(LineParser::parseLine)
-        .filter(Objects::nonNull)
-        .forEach(this::processTransaction);
+    long started = System.nanoTime();
+    if (GzipLogReader.isCompressed(src)) {
+      GzipLogReader.forEachLine(src, this::processLine);
+    } else {
+      MappedLogReader.forEachLine(src, this::processLine);
+    }
+    flushMetrics(true, Files.size(src), System.nanoTime() - started);
+  }
+  
+  /**
+   * Обрабатывает часть файла с логами в диапазоне байтов.
+   *
+   * @param src   путь к файлу для обработки
+   * @param start смещение начала строки, с которой начинается обработка
+   * @param end   смещение конца обрабатываемой части
+   * @throws IOException если произошла ошибка чтения файла или сжатый файл
+   *                     требуется читать не с начала
+   */
+  void processFile(Path src, long start, long end) throws IOException {
+    if (GzipLogReader.isCompressed(src)) {
+      if (start != 0) {
+        throw new IOException("Compressed log cannot be read from offset " + start + ": " + src);
+      }
+      processFile(src);
+      return;
+    }
+    long started = System.nanoTime();
+    long limit;
+    try (FileChannel channel = FileChannel.open(src, StandardOpenOption.READ)) {
+      limit = Math.min(end, channel.size());
+      MappedLogReader.forEachLine(channel, start, limit, this::processLine);
+    }
+    flushMetrics(start == 0, Math.max(0, limit - start), System.nanoTime() - started);
+  }
+  
+  private void processLine(ByteBuffer buffer, int from, int to) {
+    if (from == to) {
+      return;
+    }
+    pendingLines++;
+    Transaction transaction = LineParser.parseLine(buffer, from, to, symbols);
+    if (transaction != null) {
+      processTransaction(transaction);
+    } else {
+      pendingRejected++;
+    }
+  }
+  
+  /**
+   * Передает накопленные счетчики обработанного файла в {@link AnalyzerMetrics}.
+   *
+   * @param fileStart  признак обработки с начала файла
+   * @param bytes      количество прочитанных байтов
+   * @param parseNanos время обработки файла или его части
+   */
+  private void flushMetrics(boolean fileStart, long bytes, long parseNanos) {
+    AnalyzerMetrics.get().recordFile(fileStart, bytes, parseNanos);
+    flushMetrics();
+  }
+  
+  /**
+   * Передает накопленные счетчики строк и транзакций в {@link AnalyzerMetrics}.
+   */
+  void flushMetrics() {
+    AnalyzerMetrics metrics = AnalyzerMetrics.get();
+    metrics.addLines(pendingLines, pendingRejected);
+    metrics.addTransactions(pendingApplied, pendingFailed);
+    metrics.addDuplicates(pendingDuplicates);
+    pendingLines = 0;
+    pendingDuplicates = 0;
+    pendingRejected = 0;
+    pendingFailed = 0;
+    Arrays.fill(pendingApplied, 0);
+    observeRetained();
+  }
+  
+  private void observeRetained() {
+    AnalyzerMetrics.get().observeRetained(users.size(), retainsHistory ? retainedTransactions : 0);
+  }
+  
+  /**
+   * Учитывает успешно примененную транзакцию и сохраняет ее в истории.
+   */
+  private void record(User user, Transaction transaction) {
+    pendingApplied[transaction.getOperationType().ordinal()]++;
+    retainedTransactions++;
+    recorder.accept(user, transaction);
   }
   
   /**
@@ -70,13 +639,24 @@ public class UserLogsAggregator {
    * @throws NullPointerException     если транзакция равна null
    */
   
-  private void processTransaction(Transaction transaction)
+  void processTransaction(Transaction transaction)
       throws IllegalArgumentException, NullPointerException {
     Objects.requireNonNull(transaction, "Transaction cannot be null");
+    if (duplicates != null && duplicates.isDuplicate(transaction)) {
+      if (shard == null || shard.owns(transaction.getSender())) {
+        pendingDuplicates++;
+      }
+      return;
+    }
+    if (shard != null && !shard.owns(transaction.getSender())) {
+      if (transaction.getOperationType() == Transaction.OperationType.TRANSFERRED
+          && shard.owns(transaction.getRecipient())) {
+        handleIncomingTransfer(transaction);
+      }
+      return;
+    }
     
-    String senderId = transaction.getSender();
-    users.putIfAbsent(senderId, new User(senderId));
-    User sender = users.get(senderId);
+    User sender = getOrCreateUser(transaction.getSender());
     
     switch (transaction.getOperationType()) {
       case WITHDREW:
@@ -94,6 +674,18 @@ public class UserLogsAggregator {
     }
   }
   
+  /**
+   * Возвращает пользователя, создавая его только при отсутствии.
+   */
+  private User getOrCreateUser(String name) {
+    User user = users.get(name);
+    if (user == null) {
+      user = newUser(name);
+      users.put(name, user);
+    }
+    return user;
+  }
+  
   /**
    * Обрабатывает операцию снятия средств.
    *
@@ -104,8 +696,9 @@ public class UserLogsAggregator {
   private void handleWithdrawal(User user, Transaction transaction) {
     try {
       user.withdraw(transaction.getAmount());
-      user.addTransaction(transaction);
+      record(user, transaction);
     } catch (IllegalStateException e) {
+      pendingFailed++;
       System.err.println("Withdrawal failed for user " + user.getName()
           + ": " + e.getMessage());
     }
@@ -120,30 +713,43 @@ public class UserLogsAggregator {
   
   private void handleBalanceInquiry(User user, Transaction transaction) {
     user.balanceInquiry(transaction.getAmount());
-    user.addTransaction(transaction);
+    record(user, transaction);
   }
   
   /**
    * Обрабатывает операцию перевода средств.
    *
+   * <p>Получатель из другой части пользователей не сохраняется: его баланс
+   * вычисляет процесс его части.
+   *
    * @param transaction данные транзакции
    * @param sender      пользователь-отправитель
    */
   private void handleTransfer(Transaction transaction, User sender) {
-    String recipientId = transaction.getRecipient();
-    
-    users.putIfAbsent(recipientId, new User(recipientId));
-    User recipient = users.get(recipientId);
-    
     try {
-      sender.transfer(transaction.getAmount(), recipient);
-      sender.addTransaction(transaction);
+      if (shard == null || shard.owns(transaction.getRecipient())) {
+        sender.transfer(transaction.getAmount(), getOrCreateUser(transaction.getRecipient()));
+      } else {
+        sender.debit(transaction.getAmount());
+      }
+      record(sender, transaction);
     } catch (IllegalStateException e) {
+      pendingFailed++;
       System.err.println("Transfer failed from " + sender.getName()
-          + " to " + recipient.getName() + ": " + e.getMessage());
+          + " to " + transaction.getRecipient() + ": " + e.getMessage());
     }
   }
   
+  /**
+   * Зачисляет перевод получателю этой части от отправителя из другой части.
+   * Транзакция сохраняется в истории отправителя его частью.
+   *
+   * @param transaction данные транзакции
+   */
+  private void handleIncomingTransfer(Transaction transaction) {
+    getOrCreateUser(transaction.getRecipient()).credit(transaction.getAmount());
+  }
+  
   /**
    * Возвращает неизменяемое отображение пользователей и их данных.
    *
@@ -0,0 +1,69 @@
+package org.webbee.services;
+
+/**
+ * Часть пользователей, обрабатываемая одним процессом при распределенной обработке.
+ *
+ * <p>Пользователь относится к части по хешу имени. Хеш вычисляется через
+ * {@link String#hashCode()}, значение которого определено спецификацией языка,
+ * поэтому процессы на разных машинах и JVM разбивают пользователей одинаково.
+ *
+ * <p>Процесс части читает все файлы, но применяет только транзакции своих
+ * пользователей. Перевод между пользователями разных частей обрабатывается
+ * обеими: часть отправителя уменьшает его баланс и сохраняет транзакцию
+ * в истории, часть получателя увеличивает баланс получателя. Поэтому итоговые
+ * состояния пользователей совпадают с обработкой в одном процессе.
+ */
+public final class UserShard {
+  private final int index;
+  private final int count;
+
+  /**
+   * Создает часть.
+   *
+   * @param index номер части от {@code 0} до {@code count - 1}
+   * @param count количество частей
+   * @throws IllegalArgumentException если номер или количество вне допустимых значений
+   */
+  public UserShard(int index, int count) {
+    if (count < 1 || index < 0 || index >= count) {
+      throw new IllegalArgumentException("Shard index must be in [0, " + count + ")");
+    }
+    this.index = index;
+    this.count = count;
+  }
+
+  /**
+   * Возвращает номер части пользователя.
+   *
+   * @param userName имя пользователя
+   * @param count    количество частей
+   * @return номер части от {@code 0} до {@code count - 1}
+   */
+  public static int indexOf(String userName, int count) {
+    int hash = userName.hashCode();
+    return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % count;
+  }
+
+  /**
+   * Проверяет, относится ли пользователь к этой части.
+   *
+   * @param userName имя пользователя
+   * @return {@code true}, если пользователь обрабатывается этой частью
+   */
+  public boolean owns(String userName) {
+    return count == 1 || indexOf(userName, count) == index;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return index + "/" + count;
+  }
+}
@@ -0,0 +1,117 @@
+package org.webbee.services;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Таблица символов идентификаторов пользователей, заданных байтами строки лога.
+ *
+ * <p>Поиск выполняется открытой адресацией по хешу байтов и сравнением байтов
+ * непосредственно в буфере, поэтому для уже встречавшегося пользователя
+ * не создается ни массивов, ни строк, а возвращается один и тот же экземпляр
+ * String. Благодаря этому в Map пользователей хеш берется из кэша String,
+ * а ключи совпадают по ссылке.
+ *
+ * <p>Таблица не потокобезопасна: каждый поток разбора использует собственную.
+ * Поддерживаются только идентификаторы из символов ASCII.
+ */
+final class UserSymbolTable {
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int EMPTY = -1;
+
+  /** Номера символов по слотам или {@link #EMPTY}. Размер - степень двойки. */
+  private int[] slots = newSlots(INITIAL_CAPACITY);
+  private byte[][] keys = new byte[INITIAL_CAPACITY / 2][];
+  private int[] hashes = new int[INITIAL_CAPACITY / 2];
+  private String[] names = new String[INITIAL_CAPACITY / 2];
+  private int size;
+
+  /**
+   * Возвращает канонический идентификатор пользователя для диапазона байтов,
+   * регистрируя его при первом обращении.
+   *
+   * @param buffer буфер со строкой лога
+   * @param from   индекс первого байта идентификатора
+   * @param to     индекс байта после идентификатора
+   * @return канонический экземпляр идентификатора
+   */
+  String resolve(ByteBuffer buffer, int from, int to) {
+    int hash = hash(buffer, from, to);
+    int mask = slots.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int id = slots[slot];
+      if (id == EMPTY) {
+        return add(slot, hash, buffer, from, to);
+      }
+      if (hashes[id] == hash && matches(keys[id], buffer, from, to)) {
+        return names[id];
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  private String add(int slot, int hash, ByteBuffer buffer, int from, int to) {
+    byte[] key = new byte[to - from];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = buffer.get(from + i);
+    }
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      hashes = Arrays.copyOf(hashes, size * 2);
+      names = Arrays.copyOf(names, size * 2);
+    }
+    String name = new String(key, StandardCharsets.US_ASCII);
+    keys[size] = key;
+    hashes[size] = hash;
+    names[size] = name;
+    slots[slot] = size++;
+    if (size * 2 > slots.length) {
+      rehash(slots.length * 2);
+    }
+    return name;
+  }
+
+  private void rehash(int capacity) {
+    int[] rehashed = newSlots(capacity);
+    int mask = capacity - 1;
+    for (int id = 0; id < size; id++) {
+      int slot = hashes[id] & mask;
+      while (rehashed[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      rehashed[slot] = id;
+    }
+    slots = rehashed;
+  }
+
+  private static int[] newSlots(int capacity) {
+    int[] result = new int[capacity];
+    Arrays.fill(result, EMPTY);
+    return result;
+  }
+
+  private static int hash(ByteBuffer buffer, int from, int to) {
+    int hash = 0;
+    for (int i = from; i < to; i++) {
+      hash = 31 * hash + buffer.get(i);
+    }
+    // Перемешивание старших битов, так как номер слота берется из младших
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean matches(byte[] key, ByteBuffer buffer, int from, int to) {
+    if (key.length != to - from) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (key[i] != buffer.get(from + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,141 @@
+package org.webbee.services;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Выполнение блокирующего ввода-вывода в виртуальных потоках.
+ *
+ * <p>Виртуальные потоки доступны начиная с JDK 21, а проект собирается под Java 8,
+ * поэтому фабрика {@code Executors.newVirtualThreadPerTaskExecutor()} ищется через
+ * reflection при создании режима. На более старой JVM режим не включается,
+ * и чтение и запись выполняются потоками платформы, как без него.
+ *
+ * <p>Каждая задача выполняется в собственном виртуальном потоке, количество
+ * одновременно выполняемых задач ограничено семафором: отправка задачи
+ * блокируется, пока не освободится разрешение.
+ */
+public final class VirtualThreads {
+  /** Ограничение одновременных операций ввода-вывода по умолчанию. */
+  public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+  /**
+   * Наибольшее ограничение: {@link Phaser} допускает не больше 65535 участников,
+   * один из которых - поток, отправляющий задачи.
+   */
+  public static final int MAX_IN_FLIGHT_LIMIT = 65535 - 1;
+
+  private final Executor executor;
+  private final Semaphore permits;
+  private final int maxInFlight;
+
+  private VirtualThreads(Executor executor, int maxInFlight) {
+    this.executor = executor;
+    this.permits = new Semaphore(maxInFlight);
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Создает режим выполнения чтения файлов и записи логов в виртуальных потоках.
+   *
+   * @param maxInFlight наибольшее количество одновременно выполняемых операций
+   * @return режим или {@code null}, если JVM не поддерживает виртуальные потоки
+   * @throws IllegalArgumentException если ограничение вне диапазона
+   *                                  от 1 до {@value #MAX_IN_FLIGHT_LIMIT}
+   */
+  public static VirtualThreads create(int maxInFlight) {
+    if (maxInFlight < 1 || maxInFlight > MAX_IN_FLIGHT_LIMIT) {
+      throw new IllegalArgumentException(
+          "In-flight limit must be between 1 and " + MAX_IN_FLIGHT_LIMIT);
+    }
+    Executor executor = newVirtualThreadExecutor();
+    return executor == null ? null : new VirtualThreads(executor, maxInFlight);
+  }
+
+  int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * Создает группу задач, завершение которых ожидается вместе.
+   */
+  TaskGroup newGroup() {
+    return new TaskGroup();
+  }
+
+  private static Executor newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (Executor) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      // До JDK 19 метода нет, в JDK 19-20 без --enable-preview он выбрасывает
+      // UnsupportedOperationException
+      return null;
+    }
+  }
+
+  /**
+   * Задачи, отправленные одним потоком и ожидаемые вместе.
+   *
+   * <p>Первая ошибка задачи запоминается и выбрасывается из {@link #await()}
+   * после завершения всех задач группы.
+   */
+  final class TaskGroup {
+    private final Phaser pending = new Phaser(1);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Отправляет задачу, ожидая свободное разрешение семафора.
+     *
+     * <p>Задача снимается с учета в {@link Phaser} до возврата разрешения, поэтому
+     * участников не больше, чем разрешений, плюс отправляющий поток.
+     *
+     * @param task задача
+     * @throws InterruptedException если ожидание разрешения прервано
+     */
+    void submit(Runnable task) throws InterruptedException {
+      permits.acquire();
+      pending.register();
+      try {
+        executor.execute(() -> {
+          try {
+            if (failure.get() == null) {
+              task.run();
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          } finally {
+            pending.arriveAndDeregister();
+            permits.release();
+          }
+        });
+      } catch (RuntimeException e) {
+        pending.arriveAndDeregister();
+        permits.release();
+        throw e;
+      }
+    }
+
+    /**
+     * Ожидает завершения всех отправленных задач.
+     *
+     * @throws RuntimeException ошибка первой завершившейся с ошибкой задачи
+     */
+    void await() {
+      pending.arriveAndAwaitAdvance();
+      Throwable error = failure.get();
+      if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      }
+      if (error instanceof Error) {
+        throw (Error) error;
+      }
+      if (error != null) {
+        throw new RuntimeException(error);
+      }
+    }
+  }
+}
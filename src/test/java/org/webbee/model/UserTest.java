@@ -0,0 +1,102 @@
+package org.webbee.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Проверка истории транзакций {@link User} при хранении объектов и в
+ * {@link CompactTransactionLog}: записи с одинаковым временем не теряются
+ * и сохраняют порядок добавления.
+ */
+class UserTest {
+  private static final String NAME = "user001";
+  private static final LocalDateTime START = LocalDateTime.of(2025, 5, 10, 9, 0);
+
+  @Test
+  void keepsSameSecondRecordsInInputOrder() {
+    int[] seconds = {5, 5, 3, 5, 3, 7, 5, 1, 7, 3};
+    List<Transaction> input = new ArrayList<>();
+    for (int i = 0; i < seconds.length; i++) {
+      input.add(transaction(i % 3, seconds[i], BigDecimal.valueOf(i + 1)));
+    }
+    // одинаковые записи в одну секунду - разные операции, обе должны остаться
+    input.add(transaction(2, 5, BigDecimal.ONE));
+    input.add(transaction(2, 5, BigDecimal.ONE));
+    for (User user : users()) {
+      input.forEach(user::addTransaction);
+      assertEquals(stableSort(input), user.getTransactionLogs());
+    }
+  }
+
+  @Test
+  void keepsOrderWhenAppendingAfterRead() {
+    Random random = new Random(22);
+    for (User user : users()) {
+      List<Transaction> input = new ArrayList<>();
+      for (int batch = 0; batch < 20; batch++) {
+        for (int i = 0; i < 500; i++) {
+          Transaction transaction = transaction(random.nextInt(3), random.nextInt(30),
+              BigDecimal.valueOf(input.size() + 1, random.nextInt(3)));
+          input.add(transaction);
+          user.addTransaction(transaction);
+        }
+        assertEquals(stableSort(input), user.getTransactionLogs(), "batch " + batch);
+      }
+    }
+  }
+
+  @Test
+  void keepsOrderOfColumnsAndMergedState() {
+    UserIdTable userIds = new UserIdTable();
+    List<Transaction> first = new ArrayList<>();
+    List<Transaction> later = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      first.add(transaction(i % 3, 10 - i % 7, BigDecimal.valueOf(i + 1)));
+      later.add(transaction(i % 3, i % 5, BigDecimal.valueOf(100 + i)));
+    }
+    List<Transaction> expected = new ArrayList<>(first);
+    expected.addAll(later);
+    for (User user : new User[] {new User(NAME), new User(NAME, userIds)}) {
+      user.addTransactions(TransactionColumns.of(first, userIds), userIds);
+      User next = new User(NAME, userIds);
+      later.forEach(next::addTransaction);
+      user.mergeFrom(next);
+      assertEquals(stableSort(expected), user.getTransactionLogs());
+    }
+  }
+
+  private static User[] users() {
+    return new User[] {new User(NAME), new User(NAME, new UserIdTable())};
+  }
+
+  private static Transaction transaction(int kind, int second, BigDecimal amount) {
+    LocalDateTime timestamp = START.plusSeconds(second);
+    switch (kind) {
+      case 0:
+        return new Transaction(Transaction.OperationType.WITHDREW, timestamp, NAME, amount);
+      case 1:
+        return new Transaction(Transaction.OperationType.BALANCE_INQUIRY, timestamp, NAME,
+            amount);
+      default:
+        return new Transaction(Transaction.OperationType.TRANSFERRED, timestamp, NAME, amount,
+            "user002");
+    }
+  }
+
+  /**
+   * Эталон: устойчивая сортировка по времени, записи с одинаковым временем -
+   * в порядке добавления.
+   */
+  private static List<Transaction> stableSort(List<Transaction> input) {
+    List<Transaction> sorted = new ArrayList<>(input);
+    sorted.sort(Comparator.comparing(Transaction::getTimestamp));
+    return sorted;
+  }
+}
@@ -0,0 +1,175 @@
+package org.webbee.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import org.webbee.model.Transaction;
+import org.webbee.model.User;
+
+/**
+ * Многопоточная проверка {@link ConcurrentLedger}.
+ */
+class ConcurrentLedgerTest {
+  private static final int THREADS = 8;
+  private static final int OWN_USERS = 12;
+  private static final int SHARED_USERS = 6;
+  private static final int TRANSACTIONS_PER_THREAD = 40_000;
+  private static final int ROUNDS = 5;
+  private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2025, 5, 10, 9, 0);
+
+  /**
+   * Каждый поток владеет своими пользователями: все их операции, включая
+   * balance inquiry и входящие переводы, выполняет только он. Общие пользователи
+   * получают переводы из всех потоков, но не получают balance inquiry.
+   */
+  @Test
+  void matchesSequentialAggregationWithInquiries() throws Exception {
+    for (int round = 0; round < ROUNDS; round++) {
+      List<List<Transaction>> parts = new ArrayList<>(THREADS);
+      for (int thread = 0; thread < THREADS; thread++) {
+        parts.add(generate(new Random(31L * round + thread), thread));
+      }
+      ConcurrentLedger ledger = new ConcurrentLedger(4);
+      runConcurrently(parts, ledger::apply);
+
+      UserLogsAggregator sequential = new UserLogsAggregator(false);
+      for (List<Transaction> part : parts) {
+        part.forEach(sequential::processTransaction);
+      }
+      Map<String, User> expected = sequential.getUsers();
+      Map<String, BigDecimal> actual = ledger.snapshot();
+      assertEquals(expected.keySet(), actual.keySet());
+      for (User user : expected.values()) {
+        BigDecimal balance = actual.get(user.getName());
+        assertNotNull(balance, user.getName());
+        assertEquals(0, user.getBalance().compareTo(balance),
+            user.getName() + ": expected " + user.getBalance() + ", got " + balance);
+        assertEquals(user.isBalanceInquired(), ledger.isBalanceInquired(user.getName()),
+            user.getName());
+      }
+    }
+  }
+
+  @Test
+  void snapshotNeverSeesPartialTransfer() throws Exception {
+    ConcurrentLedger ledger = new ConcurrentLedger(4);
+    BigDecimal total = BigDecimal.ZERO;
+    for (int i = 0; i < SHARED_USERS; i++) {
+      BigDecimal initial = BigDecimal.valueOf(1000 + i);
+      ledger.balanceInquiry(sharedUser(i), initial);
+      total = total.add(initial);
+    }
+    List<List<Transaction>> parts = new ArrayList<>(THREADS);
+    for (int thread = 0; thread < THREADS; thread++) {
+      Random random = new Random(thread);
+      List<Transaction> part = new ArrayList<>(TRANSACTIONS_PER_THREAD);
+      for (int i = 0; i < TRANSACTIONS_PER_THREAD; i++) {
+        part.add(transfer(random, sharedUser(random.nextInt(SHARED_USERS)),
+            sharedUser(random.nextInt(SHARED_USERS))));
+      }
+      parts.add(part);
+    }
+    AtomicBoolean done = new AtomicBoolean();
+    ExecutorService observer = Executors.newSingleThreadExecutor();
+    BigDecimal expectedTotal = total;
+    Future<Integer> snapshots = observer.submit(() -> {
+      int taken = 0;
+      while (!done.get() || taken == 0) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (BigDecimal balance : ledger.snapshot().values()) {
+          sum = sum.add(balance);
+        }
+        assertEquals(0, expectedTotal.compareTo(sum), "total " + sum);
+        taken++;
+      }
+      return taken;
+    });
+    try {
+      runConcurrently(parts, ledger::apply);
+    } finally {
+      done.set(true);
+      observer.shutdown();
+    }
+    snapshots.get();
+  }
+
+  private static List<Transaction> generate(Random random, int thread) {
+    List<Transaction> transactions = new ArrayList<>(TRANSACTIONS_PER_THREAD);
+    for (int i = 0; i < TRANSACTIONS_PER_THREAD; i++) {
+      String own = ownUser(thread, random.nextInt(OWN_USERS));
+      int kind = random.nextInt(100);
+      if (kind < 35) {
+        transactions.add(transfer(random, own, ownUser(thread, random.nextInt(OWN_USERS))));
+      } else if (kind < 55) {
+        transactions.add(new Transaction(Transaction.OperationType.WITHDREW, TIMESTAMP, own,
+            amount(random)));
+      } else if (kind < 70) {
+        transactions.add(new Transaction(Transaction.OperationType.BALANCE_INQUIRY, TIMESTAMP,
+            own, amount(random)));
+      } else if (kind < 85) {
+        transactions.add(transfer(random, own, sharedUser(random.nextInt(SHARED_USERS))));
+      } else if (kind < 95) {
+        transactions.add(transfer(random, sharedUser(random.nextInt(SHARED_USERS)),
+            sharedUser(random.nextInt(SHARED_USERS))));
+      } else {
+        transactions.add(new Transaction(Transaction.OperationType.WITHDREW, TIMESTAMP,
+            sharedUser(random.nextInt(SHARED_USERS)), amount(random)));
+      }
+    }
+    return transactions;
+  }
+
+  private static Transaction transfer(Random random, String sender, String recipient) {
+    return new Transaction(Transaction.OperationType.TRANSFERRED, TIMESTAMP, sender,
+        amount(random), recipient);
+  }
+
+  private static BigDecimal amount(Random random) {
+    return BigDecimal.valueOf(1 + random.nextInt(100_000), random.nextInt(4));
+  }
+
+  private static String ownUser(int thread, int index) {
+    return "user" + thread + "_" + index;
+  }
+
+  private static String sharedUser(int index) {
+    return "shared" + index;
+  }
+
+  /**
+   * Запускает части одновременно, каждую в своем потоке, и дожидается завершения.
+   */
+  private static void runConcurrently(List<List<Transaction>> parts, Consumer<Transaction> apply)
+      throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(parts.size());
+    try {
+      CyclicBarrier start = new CyclicBarrier(parts.size());
+      List<Future<?>> futures = new ArrayList<>(parts.size());
+      for (List<Transaction> part : parts) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          part.forEach(apply);
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package org.webbee.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Test;
+import org.webbee.model.Transaction;
+
+/**
+ * Проверка отпечатков, окна и ограничения размера {@link DuplicateFilter}.
+ */
+class DuplicateFilterTest {
+  private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2025, 5, 10, 9, 0);
+
+  @Test
+  void distinguishesAmountsWithEqualHashCode() {
+    // одинаковые BigDecimal.hashCode() и precision()
+    assertEquals(new BigDecimal("85899345.92").hashCode(),
+        new BigDecimal("42949673.27").hashCode());
+    DuplicateFilter filter = new DuplicateFilter(0);
+    assertFalse(filter.isDuplicate(withdrawal("85899345.92")));
+    assertFalse(filter.isDuplicate(withdrawal("42949673.27")));
+    assertTrue(filter.isDuplicate(withdrawal("85899345.92")));
+    assertTrue(filter.isDuplicate(withdrawal("42949673.27")));
+  }
+
+  @Test
+  void distinguishesScaleAndLargeAmounts() {
+    DuplicateFilter filter = new DuplicateFilter(0);
+    String[] amounts = {"1", "1.0", "1.00", "10", "1E+1",
+        "123456789012345678901234567890.5", "123456789012345678901234567890.50",
+        "123456789012345678901234567891.5"};
+    for (String amount : amounts) {
+      assertFalse(filter.isDuplicate(withdrawal(amount)), amount);
+    }
+    for (String amount : amounts) {
+      assertTrue(filter.isDuplicate(withdrawal(amount)), amount);
+    }
+  }
+
+  @Test
+  void detectsDuplicatesOnlyWithinWindow() {
+    DuplicateFilter filter = new DuplicateFilter(60);
+    assertFalse(filter.isDuplicate(withdrawal(0, "5")));
+    assertFalse(filter.isDuplicate(withdrawal(60, "7")));
+    assertTrue(filter.isDuplicate(withdrawal(0, "5")));
+    assertFalse(filter.isDuplicate(withdrawal(61, "7")));
+    assertFalse(filter.isDuplicate(withdrawal(0, "5")));
+  }
+
+  @Test
+  void windowKeepsTableBounded() {
+    DuplicateFilter filter = new DuplicateFilter(10, 1 << 13);
+    for (int i = 0; i < 1_000_000; i++) {
+      assertFalse(filter.isDuplicate(withdrawal(i / 100, Integer.toString(i + 1))));
+    }
+    assertTrue(filter.size() <= 1 << 12);
+  }
+
+  @Test
+  void failsWhenWindowDoesNotFit() {
+    DuplicateFilter filter = new DuplicateFilter(0, 1 << 13);
+    for (int i = 0; i < 1 << 12; i++) {
+      assertFalse(filter.isDuplicate(withdrawal(i, "1")));
+    }
+    assertThrows(IllegalStateException.class,
+        () -> filter.isDuplicate(withdrawal(1 << 12, "1")));
+    assertTrue(filter.isDuplicate(withdrawal(0, "1")));
+  }
+
+  private static Transaction withdrawal(String amount) {
+    return withdrawal(0, amount);
+  }
+
+  private static Transaction withdrawal(long second, String amount) {
+    return new Transaction(Transaction.OperationType.WITHDREW, TIMESTAMP.plusSeconds(second),
+        "user001", new BigDecimal(amount));
+  }
+}
@@ -0,0 +1,83 @@
+package org.webbee.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.webbee.model.User;
+
+/**
+ * Проверка отбрасывания повторов между запусками {@link IncrementalAggregator}.
+ */
+class IncrementalAggregatorTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void dropsDuplicatesOfPreviousRuns() throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      lines.add(String.format("[2025-05-10 09:%02d:%02d] user%d withdrew %d.5",
+          i / 60, i % 60, i % 7, i + 1));
+    }
+    // второй файл начинается с последней трети первого
+    Path firstFile = write("first.log", lines.subList(0, 150));
+    Path output = directory.resolve("out");
+
+    IncrementalAggregator initial =
+        new IncrementalAggregator(directory, output, false, new DuplicateFilter(0));
+    initial.aggregate(Stream.of(firstFile));
+    initial.saveCheckpoint();
+
+    Path secondFile = write("second.log", lines.subList(100, 200));
+    IncrementalAggregator next =
+        new IncrementalAggregator(directory, output, false, new DuplicateFilter(0));
+    next.aggregate(Stream.of(firstFile, secondFile));
+    assertFalse(next.isFullRebuild());
+
+    Map<String, User> expected = new UserLogsAggregator(Stream.of(firstFile, secondFile), 1,
+        false, null, new DuplicateFilter(0), null).getUsers();
+    Map<String, User> actual = next.getUsers();
+    // каждая из 200 различных строк применена один раз
+    assertEquals(0, actual.values().stream().map(User::getBalance)
+        .reduce(BigDecimal.ZERO, BigDecimal::add).compareTo(new BigDecimal("-20200")));
+    assertEquals(expected.keySet(), actual.keySet());
+    for (User user : expected.values()) {
+      User other = actual.get(user.getName());
+      assertEquals(0, user.getBalance().compareTo(other.getBalance()),
+          user.getName() + ": expected " + user.getBalance() + ", got " + other.getBalance());
+      assertEquals(user.getTransactionLogs(), other.getTransactionLogs(), user.getName());
+    }
+  }
+
+  @Test
+  void rebuildsCheckpointWithoutFingerprints() throws IOException {
+    Path file = write("first.log", Arrays.asList("[2025-05-10 09:00:00] user1 withdrew 5"));
+    Path output = directory.resolve("out");
+    IncrementalAggregator initial = new IncrementalAggregator(directory, output, false, null);
+    initial.aggregate(Stream.of(file));
+    initial.saveCheckpoint();
+
+    IncrementalAggregator next =
+        new IncrementalAggregator(directory, output, false, new DuplicateFilter(0));
+    next.aggregate(Stream.of(file));
+    assertTrue(next.isFullRebuild());
+    assertEquals(0, next.getUsers().get("user1").getBalance().compareTo(BigDecimal.valueOf(-5)));
+  }
+
+  private Path write(String name, List<String> lines) throws IOException {
+    return Files.write(directory.resolve(name), lines, StandardCharsets.UTF_8);
+  }
+}
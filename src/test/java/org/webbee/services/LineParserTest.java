@@ -0,0 +1,129 @@
+package org.webbee.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.webbee.model.Transaction;
+
+/**
+ * Сравнение позиционного разбора строк с эталонным разбором регулярным выражением.
+ */
+class LineParserTest {
+  private static final int FUZZED_LINES = 200_000;
+  private static final String[] TIMESTAMPS = {
+      "2025-05-10 09:00:00", "2025-12-31 23:59:59", "0001-01-01 00:00:00",
+      "2024-02-29 12:30:45", "2025-02-29 12:30:45", "2025-13-01 00:00:00",
+      "2025-05-10 24:00:00", "2025-05-10T09:00:00", "2025-5-10 09:00:00",
+      "2025-05-10 09:00", " 2025-05-10 09:00:00", "abcd-ef-gh ij:kl:mn", ""
+  };
+  private static final String[] USERS = {
+      "user001", "u", "user 42", "пользователь", "user_x", "a-b.c", "to", "",
+      "useré", "transferred", "balance"
+  };
+  private static final String[] OPERATIONS = {
+      "balance inquiry", "transferred", "withdrew", "deposited", "balance  inquiry",
+      "Transferred"
+  };
+  private static final String[] AMOUNTS = {
+      "0", "100", "100.5", "100.50", "0.000001", "007", "1.", ".5", "1e5", "-5",
+      "123456789012345678", "1234567890123456789", "99999999999999999999999.123456",
+      "12.345678901234567890", "1,5", ""
+  };
+
+  @Test
+  void canonicalLinesMatchRegexParser() {
+    for (String timestamp : TIMESTAMPS) {
+      for (String user : USERS) {
+        for (String operation : OPERATIONS) {
+          for (String amount : AMOUNTS) {
+            String line = "[" + timestamp + "] " + user + " " + operation + " " + amount;
+            assertSameResult(line);
+            assertSameResult(line + " to user002");
+            assertSameResult(line + " to ");
+            assertSameResult(line + " ");
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void mutatedLinesMatchRegexParser() {
+    Random random = new Random(42);
+    String alphabet = "[] 0123456789.:-tobalncequirysfdwxеé";
+    for (int i = 0; i < FUZZED_LINES; i++) {
+      StringBuilder line = new StringBuilder()
+          .append('[').append(pick(random, TIMESTAMPS)).append("] ")
+          .append(pick(random, USERS)).append(' ')
+          .append(pick(random, OPERATIONS)).append(' ')
+          .append(pick(random, AMOUNTS));
+      if (random.nextBoolean()) {
+        line.append(" to ").append(pick(random, USERS));
+      }
+      int mutations = random.nextInt(3);
+      for (int m = 0; m < mutations && line.length() > 0; m++) {
+        int position = random.nextInt(line.length());
+        switch (random.nextInt(3)) {
+          case 0:
+            line.deleteCharAt(position);
+            break;
+          case 1:
+            line.insert(position, alphabet.charAt(random.nextInt(alphabet.length())));
+            break;
+          default:
+            line.setCharAt(position, alphabet.charAt(random.nextInt(alphabet.length())));
+            break;
+        }
+      }
+      assertSameResult(line.toString());
+    }
+  }
+
+  @Test
+  void keepsAmountScale() {
+    Transaction transaction =
+        LineParser.parseLine("[2025-05-10 09:00:00] user001 withdrew 100.50");
+    assertNotNull(transaction);
+    assertEquals(2, transaction.getAmount().scale());
+  }
+
+  private static String pick(Random random, String[] values) {
+    return values[random.nextInt(values.length)];
+  }
+
+  private static void assertSameResult(String line) {
+    String expected = describe(() -> LineParser.parseLineWithPattern(line));
+    assertEquals(expected, describe(() -> LineParser.parseLine(line)), line);
+    byte[] bytes = ("\n" + line + "\n").getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    assertEquals(expected,
+        describe(() -> LineParser.parseLine(buffer, 1, bytes.length - 1)), line);
+    assertEquals(expected, describe(() -> LineParser.parseLine(buffer, 1, bytes.length - 1,
+        new UserSymbolTable())), line);
+  }
+
+  /**
+   * Описывает результат разбора вместе с масштабом суммы или класс исключения.
+   */
+  private static String describe(Parse parse) {
+    try {
+      Transaction transaction = parse.run();
+      if (transaction == null) {
+        return "null";
+      }
+      return transaction.getOperationType() + "|" + transaction.getTimestamp() + "|"
+          + transaction.getSender() + "|" + transaction.getAmount() + "|"
+          + transaction.getAmount().scale() + "|" + transaction.getRecipient();
+    } catch (RuntimeException e) {
+      return e.getClass().getName();
+    }
+  }
+
+  private interface Parse {
+    Transaction run();
+  }
+}
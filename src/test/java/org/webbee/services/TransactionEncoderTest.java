@@ -0,0 +1,199 @@
+package org.webbee.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.webbee.model.Transaction;
+
+/**
+ * Побайтовое сравнение {@link TransactionEncoder} с прежним форматированием через
+ * {@link String#format} и {@link BigDecimal#toPlainString()}.
+ */
+class TransactionEncoderTest {
+  private static final DateTimeFormatter FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  private static final String[] AMOUNTS = {
+      "1", "100", "7000000", "100.5", "100.50", "100.500000", "0.000001", "0.1000",
+      "1E+3", "1.0E+10", "0.000000000000000000000000000001", "1.234567890123456789012345",
+      "123456789012345678", "999999999999999999", "1234567890123456789",
+      "9223372036854775807", "9223372036854775808", "99999999999999999999999.123456",
+      "123456789012345678901234567890"
+  };
+  private static final String[] BALANCES = {
+      "0", "0.00", "-0", "1", "-1", "100.5", "-100.5", "0.0000005", "-0.0000005",
+      "0.00000049", "0.0000015", "2.5E-7", "999999.9999995", "-999999.9999995",
+      "1E+3", "1E+12", "1E-30", "123456789012.123456789", "9223372036854.775807",
+      "9223372036854775807", "-9223372036854775808", "99999999999999999999999.1234565",
+      "1.00000000000000000000000000000000005"
+  };
+
+  @Test
+  void encodesTransactionsAcrossTimestampBoundaries() {
+    LocalDateTime[] timestamps = {
+        LocalDateTime.of(2025, 5, 10, 9, 0, 58),
+        LocalDateTime.of(2025, 5, 10, 9, 0, 58),
+        LocalDateTime.of(2025, 5, 10, 9, 0, 59),
+        LocalDateTime.of(2025, 5, 10, 9, 1, 0),
+        LocalDateTime.of(2025, 5, 10, 9, 59, 59),
+        LocalDateTime.of(2025, 5, 10, 10, 0, 0),
+        LocalDateTime.of(2025, 5, 10, 23, 59, 59),
+        LocalDateTime.of(2025, 5, 11, 0, 0, 0),
+        LocalDateTime.of(2025, 5, 31, 23, 59, 59),
+        LocalDateTime.of(2025, 6, 1, 0, 0, 0),
+        LocalDateTime.of(2025, 12, 31, 23, 59, 59),
+        LocalDateTime.of(2026, 1, 1, 0, 0, 0),
+        LocalDateTime.of(2024, 2, 29, 12, 30, 45),
+        LocalDateTime.of(2025, 5, 10, 9, 0, 58),
+        LocalDateTime.of(2025, 5, 10, 9, 1, 58),
+        LocalDateTime.of(2025, 5, 11, 9, 1, 58),
+        LocalDateTime.of(1, 1, 1, 0, 0, 0),
+        LocalDateTime.of(9999, 12, 31, 23, 59, 59),
+        LocalDateTime.of(10000, 1, 1, 0, 0, 0),
+        LocalDateTime.of(9999, 12, 31, 23, 59, 59),
+        LocalDateTime.of(0, 6, 15, 8, 5, 3)
+    };
+    List<Transaction> transactions = new ArrayList<>();
+    for (LocalDateTime timestamp : timestamps) {
+      for (String amount : AMOUNTS) {
+        transactions.addAll(allOperations(timestamp, new BigDecimal(amount)));
+      }
+    }
+    assertEncodedLikeReference(transactions);
+  }
+
+  @Test
+  void encodesRandomTransactions() {
+    Random random = new Random(19);
+    LocalDateTime timestamp = LocalDateTime.of(2025, 1, 1, 0, 0, 0);
+    List<Transaction> transactions = new ArrayList<>();
+    for (int i = 0; i < 100_000; i++) {
+      switch (random.nextInt(4)) {
+        case 0:
+          break;
+        case 1:
+          timestamp = timestamp.plusSeconds(random.nextInt(3));
+          break;
+        case 2:
+          timestamp = timestamp.plusSeconds(random.nextInt(200_000));
+          break;
+        default:
+          timestamp = timestamp.minusSeconds(random.nextInt(200_000));
+          break;
+      }
+      BigDecimal amount = randomAmount(random);
+      if (amount.signum() <= 0) {
+        amount = amount.negate().add(BigDecimal.ONE);
+      }
+      List<Transaction> operations = allOperations(timestamp, amount);
+      transactions.add(operations.get(random.nextInt(operations.size())));
+    }
+    assertEncodedLikeReference(transactions);
+  }
+
+  @Test
+  void formatsBalanceLikeStringFormat() {
+    Locale previous = Locale.getDefault(Locale.Category.FORMAT);
+    try {
+      for (Locale locale : new Locale[] {Locale.ROOT, Locale.US, Locale.GERMANY,
+          Locale.forLanguageTag("ru-RU"), Locale.forLanguageTag("hi-IN-u-nu-deva")}) {
+        Locale.setDefault(Locale.Category.FORMAT, locale);
+        List<BigDecimal> balances = new ArrayList<>();
+        for (String balance : BALANCES) {
+          balances.add(new BigDecimal(balance));
+        }
+        Random random = new Random(locale.toLanguageTag().hashCode());
+        for (int i = 0; i < 20_000; i++) {
+          balances.add(randomAmount(random));
+        }
+        LocalDateTime now = LocalDateTime.of(2025, 5, 10, 23, 59, 59);
+        for (BigDecimal balance : balances) {
+          String expected = String.format("%f", balance);
+          assertEquals(expected, TransactionEncoder.formatBalance(balance),
+              locale + " " + balance);
+          EncodeBuffer out = new EncodeBuffer(16);
+          TransactionEncoder.encodeFinalBalance("пользователь", balance, now, out);
+          assertArrayEquals(bytes(String.format("[%s] %s final balance %f",
+              now.format(FORMATTER), "пользователь", balance) + System.lineSeparator()),
+              Arrays.copyOf(out.array(), out.size()), locale + " " + balance);
+        }
+      }
+    } finally {
+      Locale.setDefault(Locale.Category.FORMAT, previous);
+    }
+  }
+
+  /**
+   * Кодирует транзакции в один буфер, чтобы проверить кэш префикса времени
+   * между соседними записями, и сравнивает с прежним форматированием.
+   */
+  private static void assertEncodedLikeReference(List<Transaction> transactions) {
+    EncodeBuffer out = new EncodeBuffer(64);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    for (Transaction transaction : transactions) {
+      int start = out.size();
+      TransactionEncoder.encode(transaction, out);
+      byte[] line = bytes(reference(transaction) + System.lineSeparator());
+      assertArrayEquals(line, Arrays.copyOfRange(out.array(), start, out.size()),
+          reference(transaction));
+      expected.write(line, 0, line.length);
+    }
+    assertArrayEquals(expected.toByteArray(), Arrays.copyOf(out.array(), out.size()));
+  }
+
+  /**
+   * Форматирование записи до перехода на {@link EncodeBuffer}.
+   */
+  private static String reference(Transaction transaction) {
+    String formattedTime = transaction.getTimestamp().format(FORMATTER);
+    String amount = transaction.getAmount().stripTrailingZeros().toPlainString();
+    switch (transaction.getOperationType()) {
+      case BALANCE_INQUIRY:
+        return String.format("[%s] %s balance inquiry %s", formattedTime,
+            transaction.getSender(), amount);
+      case TRANSFERRED:
+        return String.format("[%s] %s transferred %s to %s", formattedTime,
+            transaction.getSender(), amount, transaction.getRecipient());
+      case WITHDREW:
+        return String.format("[%s] %s withdrew %s", formattedTime,
+            transaction.getSender(), amount);
+      default:
+        throw new IllegalStateException("Unknown operation type");
+    }
+  }
+
+  private static List<Transaction> allOperations(LocalDateTime timestamp, BigDecimal amount) {
+    return Arrays.asList(
+        new Transaction(Transaction.OperationType.WITHDREW, timestamp, "user001", amount),
+        new Transaction(Transaction.OperationType.BALANCE_INQUIRY, timestamp, "пользователь",
+            amount),
+        new Transaction(Transaction.OperationType.TRANSFERRED, timestamp, "user001", amount,
+            "user002"));
+  }
+
+  /**
+   * Сумма со случайным знаком, числом значащих битов от 0 до 100 и масштабом от -8 до 30.
+   */
+  private static BigDecimal randomAmount(Random random) {
+    BigInteger unscaled = new BigInteger(random.nextInt(101), random);
+    if (random.nextBoolean()) {
+      unscaled = unscaled.negate();
+    }
+    return new BigDecimal(unscaled, random.nextInt(39) - 8);
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+}
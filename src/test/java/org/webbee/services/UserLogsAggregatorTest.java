@@ -0,0 +1,110 @@
+package org.webbee.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.webbee.model.User;
+
+/**
+ * Сравнение параллельной агрегации с однопоточной на нескольких файлах,
+ * в том числе на файле, который делится на диапазоны строк.
+ */
+class UserLogsAggregatorTest {
+  private static final long SPLIT_SIZE = 8L << 20;
+  private static final String[] LINE_ENDINGS = {"\n", "\r\n", "\r"};
+  private static final int USERS = 40;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void parallelAggregationMatchesSequential() throws IOException {
+    Random random = new Random(15);
+    List<Path> files = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      files.add(writeLog(directory.resolve("small" + i + ".log"), random, 2_000 + i * 500,
+          -1));
+    }
+    // больше трех диапазонов; на первой границе деления разрывается пара \r\n
+    Path large = writeLog(directory.resolve("large.log"), random, Long.MAX_VALUE,
+        SPLIT_SIZE);
+    assertTrue(Files.size(large) > 3 * SPLIT_SIZE);
+    files.add(2, large);
+
+    for (boolean compactStorage : new boolean[] {false, true}) {
+      Map<String, User> expected =
+          new UserLogsAggregator(files.stream(), 1, compactStorage).getUsers();
+      Map<String, User> actual =
+          new UserLogsAggregator(files.stream(), 4, compactStorage).getUsers();
+      assertEquals(expected.keySet(), actual.keySet());
+      for (User user : expected.values()) {
+        User other = actual.get(user.getName());
+        assertEquals(0, user.getBalance().compareTo(other.getBalance()),
+            user.getName() + ": expected " + user.getBalance() + ", got " + other.getBalance());
+        assertEquals(user.isBalanceInquired(), other.isBalanceInquired(), user.getName());
+        assertEquals(user.getTransactionLogs(), other.getTransactionLogs(), user.getName());
+      }
+    }
+  }
+
+  /**
+   * Пишет лог со случайными операциями и окончаниями строк.
+   *
+   * @param lines   количество строк
+   * @param splitAt смещение, перед которым должен стоять {@code \r}, а с которого -
+   *                {@code \n}, или -1; если задано, файл пишется до четырехкратного
+   *                смещения
+   */
+  private static Path writeLog(Path file, Random random, long lines, long splitAt)
+      throws IOException {
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+      long written = 0;
+      for (long i = 0; i < lines && (splitAt < 0 || written < 4 * splitAt); i++) {
+        byte[] line = line(random).getBytes(StandardCharsets.UTF_8);
+        String ending = LINE_ENDINGS[random.nextInt(LINE_ENDINGS.length)];
+        if (splitAt > 0 && written < splitAt && written + line.length + 2 > splitAt) {
+          // дополняем строку пробелами так, чтобы \r был последним байтом перед границей
+          byte[] padded = new byte[(int) (splitAt - 1 - written)];
+          Arrays.fill(padded, (byte) ' ');
+          System.arraycopy(line, 0, padded, 0, Math.min(line.length, padded.length));
+          line = padded;
+          ending = "\r\n";
+        }
+        out.write(line);
+        out.write(ending.getBytes(StandardCharsets.US_ASCII));
+        written += line.length + ending.length();
+      }
+    }
+    return file;
+  }
+
+  private static String line(Random random) {
+    String timestamp = String.format("[2025-05-%02d %02d:%02d:%02d]", 1 + random.nextInt(28),
+        random.nextInt(24), random.nextInt(60), random.nextInt(60));
+    String user = "user" + random.nextInt(USERS);
+    String amount = (1 + random.nextInt(10_000)) + "." + random.nextInt(100);
+    int kind = random.nextInt(100);
+    if (kind < 50) {
+      return timestamp + " " + user + " transferred " + amount + " to user"
+          + random.nextInt(USERS);
+    } else if (kind < 80) {
+      return timestamp + " " + user + " withdrew " + amount;
+    } else if (kind < 98) {
+      return timestamp + " " + user + " balance inquiry " + amount;
+    }
+    return timestamp + " " + user + " deposited " + amount;
+  }
+}